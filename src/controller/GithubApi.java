@@ -1,9 +1,19 @@
 package controller;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.RepositoryCommit;
@@ -14,22 +24,30 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
+import model.AsyncLogSink;
 import model.AttendanceEventModel;
+import model.GithubCommentModel;
 import model.LogDataModel;
-import model.MySqlDbImports;
-import model.MySqlDbLogging;
 import model.StudentNameModel;
 
 public class GithubApi {
-	private MySqlDbImports sqlDbImports;
+	private static final int NUM_GITHUB_THREADS = 4;
+
 	private RepositoryService repoService;
 	private CommitService commitService;
+	private GithubResponseCache cache;
+
+	public GithubApi(String githubToken) {
+		this(githubToken, null);
+	}
 
-	public GithubApi(MySqlDbImports sqlDbImports, String githubToken) {
-		this.sqlDbImports = sqlDbImports;
+	public GithubApi(String githubToken, String cacheFileName) {
+		// Repo lists and commit pages are cached between runs, so unchanged ones cost a 304
+		if (cacheFileName != null && !cacheFileName.equals(""))
+			cache = new GithubResponseCache(new File(cacheFileName));
 
-		// OAuth2 token authentication
-		GitHubClient client = new GitHubClient();
+		// OAuth2 token authentication; requests are paced and retried under the rate limit
+		GitHubClient client = new RateLimitedGitHubClient(cache);
 		client.setOAuth2Token(githubToken);
 
 		// Get Repo and Commit services
@@ -37,66 +55,135 @@ public class GithubApi {
 		commitService = new CommitService(client);
 	}
 
-	public boolean importGitComments(String startDate, ArrayList<AttendanceEventModel> eventList) {
-		// eventList contains all attendance since 'startDate' with null comments
-		String lastGithubUser = "";
-		List<Repository> repoList = null;
+	public ArrayList<GithubCommentModel> fetchGitComments(String startDate, ArrayList<AttendanceEventModel> eventList) {
+		// Only talks to Github; the caller writes the returned comment updates to the database
+		ArrayList<GithubCommentModel> updates = new ArrayList<GithubCommentModel>();
+		fetchGitCommentsByUser(startDate, eventList, updates);
+		if (cache != null) {
+			cache.save();
+			System.out.println(cache.getSummary());
+		}
+		return updates;
+	}
 
-		for (int i = 0; i < eventList.size(); i++) {
-			// Get commit info from DB for each student/date combo
-			AttendanceEventModel event = eventList.get(i);
-			if (event.getGithubComments() != null && !event.getGithubComments().trim().equals(""))
-				// Skip non-empty comments
-				continue;
+	private boolean fetchGitCommentsByUser(String startDate, ArrayList<AttendanceEventModel> eventList,
+			ArrayList<GithubCommentModel> updates) {
+		// eventList contains all attendance since 'startDate' with null comments.
+		// Group events by github user and then by service date, so each commit is a single lookup.
+		HashMap<String, HashMap<String, ArrayList<AttendanceEventModel>>> eventsByUser = new HashMap<String, HashMap<String, ArrayList<AttendanceEventModel>>>();
+		LinkedHashMap<String, AttendanceEventModel> usersToImport = new LinkedHashMap<String, AttendanceEventModel>();
 
+		for (AttendanceEventModel event : eventList) {
 			String gitUser = event.getGithubName().toLowerCase();
+			HashMap<String, ArrayList<AttendanceEventModel>> eventsByDate = eventsByUser.get(gitUser);
+			if (eventsByDate == null) {
+				eventsByDate = new HashMap<String, ArrayList<AttendanceEventModel>>();
+				eventsByUser.put(gitUser, eventsByDate);
+			}
+			ArrayList<AttendanceEventModel> dateEvents = eventsByDate.get(event.getServiceDateString());
+			if (dateEvents == null) {
+				dateEvents = new ArrayList<AttendanceEventModel>();
+				eventsByDate.put(event.getServiceDateString(), dateEvents);
+			}
+			dateEvents.add(event);
 
-			try {
-				if (!gitUser.equals(lastGithubUser)) {
-					// New github user, need to get new repo array
-					lastGithubUser = gitUser;
-					repoList = repoService.getRepositories(gitUser);
-
-					// Loop through all repos to check for updates
-					for (int j = 0; j < repoList.size(); j++) {
-						Repository repo = repoList.get(j);
+			// Only users with empty comments need to be imported; keep first event for error logging
+			if ((event.getGithubComments() == null || event.getGithubComments().trim().equals(""))
+					&& !usersToImport.containsKey(gitUser))
+				usersToImport.put(gitUser, event);
+		}
 
-						// Update all user comments in this repo list
-						updateUserGithubComments(gitUser, startDate, eventList, repo);
-					}
+		// Users are imported in parallel, sharing the client rate limit. Comment updates are
+		// collected and returned once all users are done.
+		LinkedBlockingQueue<GithubCommentModel> updateQueue = new LinkedBlockingQueue<GithubCommentModel>();
+		ConcurrentLinkedQueue<UserImportError> errors = new ConcurrentLinkedQueue<UserImportError>();
+		AtomicBoolean rateLimitExceeded = new AtomicBoolean(false);
+
+		ExecutorService pool = Executors.newFixedThreadPool(NUM_GITHUB_THREADS);
+		for (String gitUser : usersToImport.keySet()) {
+			AttendanceEventModel firstEvent = usersToImport.get(gitUser);
+			HashMap<String, ArrayList<AttendanceEventModel>> eventsByDate = eventsByUser.get(gitUser);
+
+			pool.submit(() -> {
+				if (rateLimitExceeded.get())
+					return;
+				try {
+					importUserComments(gitUser, startDate, eventsByDate, updateQueue);
+
+				} catch (IOException e) {
+					if (isRateLimitError(e))
+						rateLimitExceeded.set(true);
+					else
+						errors.add(new UserImportError(gitUser, firstEvent, e.getMessage()));
+
+				} catch (RuntimeException e) {
+					errors.add(new UserImportError(gitUser, firstEvent, e.toString()));
 				}
+			});
+		}
+		pool.shutdown();
 
-			} catch (IOException e) {
-				if (e.getMessage().startsWith("API rate limit exceeded")) {
-					// Rate limit exceeded, so abort
-					MySqlDbLogging.insertLogData(LogDataModel.GITHUB_IMPORT_ABORTED,
-							new StudentNameModel("", "", false), 0, ": Github API rate limit exceeded ***");
-					return false;
+		try {
+			// Waits through any rate limit resets; no database lock is held here
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
-				} else {
-					MySqlDbLogging.insertLogData(LogDataModel.GITHUB_IMPORT_FAILURE, event.getStudentNameModel(),
-							event.getClientID(), " for gitUser '" + gitUser + "': " + e.getMessage());
-				}
-			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		updateQueue.drainTo(updates);
+
+		for (UserImportError error : errors)
+			AsyncLogSink.insertLogData(LogDataModel.GITHUB_IMPORT_FAILURE, error.event.getStudentNameModel(),
+					error.event.getClientID(), " for gitUser '" + error.gitUser + "': " + error.message);
+
+		if (rateLimitExceeded.get()) {
+			// Rate limit still exceeded after waiting for reset, so abort
+			AsyncLogSink.insertLogData(LogDataModel.GITHUB_IMPORT_ABORTED, new StudentNameModel("", "", false), 0,
+					": Github API rate limit exceeded ***");
+			return false;
 		}
 		return true;
 	}
 
-	public void updateEmptyGithubComments(ArrayList<AttendanceEventModel> eventList) {
+	public ArrayList<GithubCommentModel> getEmptyCommentUpdates(ArrayList<AttendanceEventModel> eventList) {
 		String today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd");
+		ArrayList<GithubCommentModel> updates = new ArrayList<GithubCommentModel>();
 
 		for (int i = 0; i < eventList.size(); i++) {
 			// Update events with null github comments to avoid repeated searches
 			AttendanceEventModel event = eventList.get(i);
 			if (event.getGithubComments().equals("") && event.getServiceDateString().compareTo(today) < 0) {
-				sqlDbImports.updateAttendance(event.getClientID(), event.getStudentNameModel(),
-						event.getServiceDateString(), event.getEventName(), null, "", "");
+				updates.add(new GithubCommentModel(event.getClientID(), event.getStudentNameModel(),
+						event.getServiceDateString(), event.getEventName(), null, "", ""));
 			}
 		}
+		return updates;
+	}
+
+	private void importUserComments(String gitUser, String startDate,
+			HashMap<String, ArrayList<AttendanceEventModel>> eventsByDate, Queue<GithubCommentModel> updateQueue)
+			throws IOException {
+		List<Repository> repoList = repoService.getRepositories(gitUser);
+
+		// Loop through all repos to check for updates
+		for (int j = 0; j < repoList.size(); j++) {
+			Repository repo = repoList.get(j);
+
+			// No commits since start date if the repo has not been pushed to since then
+			if (repo.getPushedAt() != null && new DateTime(repo.getPushedAt().getTime())
+					.withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd")
+					.compareTo(startDate) < 0)
+				continue;
+
+			// Update all user comments in this repo list
+			updateUserGithubComments(startDate, eventsByDate, repo, updateQueue);
+		}
 	}
 
-	private void updateUserGithubComments(String githubUser, String startDate, List<AttendanceEventModel> eventList,
-			Repository repo) {
+	private void updateUserGithubComments(String startDate,
+			HashMap<String, ArrayList<AttendanceEventModel>> eventsByDate, Repository repo,
+			Queue<GithubCommentModel> updateQueue) throws IOException {
 		// Get all the commits for this repo within date range
 		try {
 			for (Collection<RepositoryCommit> commitPage : commitService.pageCommits(repo, 20)) {
@@ -111,26 +198,44 @@ public class GithubApi {
 					if (commitDate.compareTo(startDate) < 0)
 						return;
 
-					// Find gituser & date match in event list; append multiple comments
-					for (int k = 0; k < eventList.size(); k++) {
-						AttendanceEventModel event = eventList.get(k);
-						if (commitDate.equals(event.getServiceDateString())
-								&& githubUser.equals(event.getGithubName().toLowerCase())) {
-							// Update comments & repo name, continue to next commit
-							String message = commit.getCommit().getMessage();
-							if (!message.equals("")) {
-								event.setGithubComments(message);
-								sqlDbImports.updateAttendance(event.getClientID(), event.getStudentNameModel(),
-										commitDate, event.getEventName(), repo.getName(), event.getGithubComments(),
-										event.getGitDescription());
-							}
-						}
+					// Find this user's events on the commit date; append multiple comments
+					ArrayList<AttendanceEventModel> dateEvents = eventsByDate.get(commitDate);
+					if (dateEvents == null)
+						continue;
+
+					String message = commit.getCommit().getMessage();
+					if (message.equals(""))
+						continue;
+
+					for (AttendanceEventModel event : dateEvents) {
+						// Commit message is appended to the comments in the database; continue to next commit
+						event.setGithubComments(message);
+						updateQueue.add(new GithubCommentModel(event.getClientID(), event.getStudentNameModel(),
+								commitDate, event.getEventName(), repo.getName(), message, null));
 					}
 				}
 			}
 
 		} catch (NoSuchPageException e) {
-			// Repo is empty, so just return
+			// Repo is empty, so just return; but don't hide running out of rate limit
+			if (e.getCause() != null && isRateLimitError(e.getCause()))
+				throw e.getCause();
+		}
+	}
+
+	private boolean isRateLimitError(IOException e) {
+		return e.getMessage() != null && e.getMessage().startsWith("API rate limit exceeded");
+	}
+
+	private static class UserImportError {
+		private String gitUser;
+		private AttendanceEventModel event;
+		private String message;
+
+		private UserImportError(String gitUser, AttendanceEventModel event, String message) {
+			this.gitUser = gitUser;
+			this.event = event;
+			this.message = message;
 		}
 	}
 }
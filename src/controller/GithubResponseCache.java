@@ -0,0 +1,166 @@
+package controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GithubResponseCache: GitHub response bodies keyed by request URI, along with
+ * the ETag/Last-Modified validators used to make the next request for the same
+ * URI conditional. Saved to a gzip'd file between runs; entries not used during
+ * a run are dropped when the cache is saved.
+ *
+ * @author wavis
+ *
+ */
+public class GithubResponseCache {
+	private static final int FILE_VERSION = 1;
+
+	private File file;
+	private HashMap<String, CachedResponse> responses = new HashMap<String, CachedResponse>();
+	private int numHits = 0, numMisses = 0;
+
+	public GithubResponseCache(File file) {
+		this.file = file;
+		load();
+	}
+
+	public synchronized CachedResponse get(String uri) {
+		CachedResponse response = responses.get(uri);
+		if (response != null)
+			response.used = true;
+		return response;
+	}
+
+	public synchronized void put(String uri, String etag, String lastModified, String link, byte[] body) {
+		CachedResponse response = new CachedResponse(etag, lastModified, link, body);
+		response.used = true;
+		responses.put(uri, response);
+	}
+
+	public synchronized void addResult(boolean notModified) {
+		if (notModified)
+			numHits++;
+		else
+			numMisses++;
+	}
+
+	public synchronized String getSummary() {
+		return "Github cache: " + numHits + " not modified, " + numMisses + " fetched, " + responses.size()
+				+ " entries";
+	}
+
+	public synchronized void save() {
+		// Write to temp file first so a failed save leaves the old cache intact
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+			int numUsed = 0;
+			for (CachedResponse response : responses.values())
+				if (response.used)
+					numUsed++;
+
+			out.writeInt(FILE_VERSION);
+			out.writeInt(numUsed);
+			for (String uri : responses.keySet()) {
+				CachedResponse response = responses.get(uri);
+				if (!response.used)
+					continue;
+
+				out.writeUTF(uri);
+				writeString(out, response.etag);
+				writeString(out, response.lastModified);
+				writeString(out, response.link);
+				out.writeInt(response.body.length);
+				out.write(response.body);
+			}
+
+		} catch (IOException e) {
+			System.out.println("Failed to save Github cache '" + file.getPath() + "': " + e.getMessage());
+			tempFile.delete();
+			return;
+		}
+
+		file.delete();
+		if (!tempFile.renameTo(file))
+			System.out.println("Failed to save Github cache '" + file.getPath() + "'");
+	}
+
+	private void load() {
+		if (!file.exists())
+			return;
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != FILE_VERSION)
+				return;
+
+			int numResponses = in.readInt();
+			for (int i = 0; i < numResponses; i++) {
+				String uri = in.readUTF();
+				String etag = readString(in);
+				String lastModified = readString(in);
+				String link = readString(in);
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+				responses.put(uri, new CachedResponse(etag, lastModified, link, body));
+			}
+
+		} catch (IOException e) {
+			// Start with an empty cache; it will be rebuilt during this run
+			System.out.println("Failed to read Github cache '" + file.getPath() + "': " + e.getMessage());
+			responses.clear();
+		}
+	}
+
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		if (in.readBoolean())
+			return in.readUTF();
+		return null;
+	}
+
+	public static class CachedResponse {
+		private String etag;
+		private String lastModified;
+		private String link;
+		private byte[] body;
+		private boolean used = false;
+
+		private CachedResponse(String etag, String lastModified, String link, byte[] body) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.link = link;
+			this.body = body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public String getLink() {
+			return link;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+	}
+}
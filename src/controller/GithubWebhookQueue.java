@@ -0,0 +1,102 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonException;
+
+import model.PendingGithubModel;
+
+/**
+ * GithubWebhookQueue: Append-only file of webhook commits that have not yet
+ * been stored in the database, one JSON object per line. Commits are synced to
+ * disk before the webhook is acknowledged and removed from the front of the
+ * queue only after they have been stored, so a database outage or restart does
+ * not lose any.
+ *
+ * @author wavis
+ *
+ */
+public class GithubWebhookQueue {
+	private File file;
+
+	public GithubWebhookQueue(File file) {
+		this.file = file;
+	}
+
+	public synchronized void append(List<PendingGithubModel> commits) throws IOException {
+		StringBuilder lines = new StringBuilder();
+		for (PendingGithubModel commit : commits) {
+			lines.append(Json.createObjectBuilder().add("gitUser", commit.getGitUser())
+					.add("repoName", commit.getRepoName()).add("serviceDate", commit.getServiceDate())
+					.add("comments", commit.getComments()).build().toString()).append("\n");
+		}
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+			out.getChannel().force(true);
+		}
+	}
+
+	public synchronized ArrayList<PendingGithubModel> getAll() throws IOException {
+		ArrayList<PendingGithubModel> commits = new ArrayList<PendingGithubModel>();
+		for (String line : readLines()) {
+			try (JsonReader reader = Json.createReader(new StringReader(line))) {
+				JsonObject object = reader.readObject();
+				commits.add(new PendingGithubModel(0, object.getString("gitUser"), object.getString("repoName"),
+						object.getString("serviceDate"), object.getString("comments")));
+
+			} catch (JsonException | ClassCastException | NullPointerException e) {
+				// Partial line from a crash during append; it was never acknowledged
+				System.out.println("Skipping bad webhook queue entry: " + line);
+				commits.add(null);
+			}
+		}
+		return commits;
+	}
+
+	public synchronized void removeFirst(int numCommits) throws IOException {
+		// Anything appended since getAll() stays in the queue
+		ArrayList<String> lines = readLines();
+		StringBuilder remaining = new StringBuilder();
+		for (int i = numCommits; i < lines.size(); i++)
+			remaining.append(lines.get(i)).append("\n");
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tempFile)) {
+			out.write(remaining.toString().getBytes(StandardCharsets.UTF_8));
+			out.getChannel().force(true);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private ArrayList<String> readLines() throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		if (!file.exists())
+			return lines;
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().equals(""))
+					lines.add(line);
+			}
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,294 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import model.MySqlDatabase;
+import model.MySqlDbImports;
+import model.MySqlDbLogging;
+import model.PendingGithubModel;
+
+/**
+ * GithubWebhookServer: Receives GitHub push webhooks so that commit comments
+ * reach the tracker within seconds instead of waiting for the nightly import.
+ *
+ * Each delivery is checked against its X-Hub-Signature-256 HMAC, and the
+ * commits are appended to a GithubWebhookQueue before GitHub gets its 202.
+ * A single applier thread then stores queued commits in the PendingGithub
+ * table and matches them to attendance with the same rules as the nightly
+ * import; commits whose attendance is not in yet stay pending for that import.
+ * The attendance and students used for matching are re-read every 10 minutes
+ * rather than on every delivery, and comments are appended in the database so
+ * the nightly import's comments are never overwritten.
+ * If the database is down the commits stay queued and are retried.
+ *
+ * @author wavis
+ *
+ */
+public class GithubWebhookServer {
+	public static final String WEBHOOK_PATH = "/github/webhook";
+	public static final int DEFAULT_PORT = 8090;
+	private static final int MAX_PAYLOAD_BYTES = 5 * 1024 * 1024;
+	private static final int APPLY_INTERVAL_SEC = 30;
+	private static final int NUM_SERVER_THREADS = 4;
+
+	private HttpServer server;
+	private byte[] secret;
+	private GithubWebhookQueue queue;
+	private MySqlDbImports sqlImportDb;
+	private ScheduledExecutorService applier = Executors.newSingleThreadScheduledExecutor();
+
+	public GithubWebhookServer(int port, String secret, GithubWebhookQueue queue, MySqlDbImports sqlImportDb)
+			throws IOException {
+		this.secret = secret.trim().getBytes(StandardCharsets.UTF_8);
+		this.queue = queue;
+		this.sqlImportDb = sqlImportDb;
+
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.setExecutor(Executors.newFixedThreadPool(NUM_SERVER_THREADS));
+		server.createContext(WEBHOOK_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleWebhook(exchange);
+			}
+		});
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Retrieve secrets the same way as the nightly import
+		Preferences prefs = Preferences.userRoot();
+		String webhookSecret = prefs.get("GithubWebhookSecret", "");
+		if (webhookSecret.equals(""))
+			webhookSecret = StudentDataImport.readFile("./githubWebhookSecret.txt");
+		String awsPassword = prefs.get("AWSPassword", "");
+		if (awsPassword.equals(""))
+			awsPassword = StudentDataImport.readFile("./awsPassword.txt");
+		int port = prefs.getInt("GithubWebhookPort", DEFAULT_PORT);
+		String queueFile = prefs.get("GithubWebhookQueueFile", "./githubWebhookQueue.dat");
+
+		if (webhookSecret.trim().equals("")) {
+			// Never accept unsigned payloads
+			System.out.println("Github webhook secret is not set");
+			System.exit(0);
+		}
+
+		// Runs next to the database, so no SSH tunnel; commits queue up until the DB is reachable
+		MySqlDatabase sqlDb = new MySqlDatabase(awsPassword, MySqlDatabase.STUDENT_IMPORT_NO_SSH);
+		if (!sqlDb.connectDatabase())
+			System.out.println("Failed to connect to MySql database, webhook commits will be queued");
+		new MySqlDbLogging(sqlDb);
+
+		GithubWebhookServer webhookServer = new GithubWebhookServer(port, webhookSecret,
+				new GithubWebhookQueue(new File(queueFile)), new MySqlDbImports(sqlDb));
+		webhookServer.start();
+		System.out.println("Github webhook listening on port " + port + WEBHOOK_PATH);
+	}
+
+	public void start() {
+		server.start();
+
+		// Also picks up anything left in the queue from the last run
+		applier.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				applyQueuedCommits();
+			}
+		}, 0, APPLY_INTERVAL_SEC, TimeUnit.SECONDS);
+	}
+
+	public void stop() {
+		server.stop(0);
+		((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+		applier.shutdown();
+	}
+
+	private void handleWebhook(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				sendResponse(exchange, 405, "POST only");
+				return;
+			}
+
+			byte[] payload = readPayload(exchange.getRequestBody());
+			if (payload == null) {
+				sendResponse(exchange, 413, "Payload too large");
+				return;
+			}
+
+			if (!isValidSignature(exchange.getRequestHeaders().getFirst("X-Hub-Signature-256"), payload)) {
+				sendResponse(exchange, 401, "Bad signature");
+				return;
+			}
+
+			String event = exchange.getRequestHeaders().getFirst("X-GitHub-Event");
+			if ("ping".equals(event)) {
+				sendResponse(exchange, 200, "pong");
+				return;
+			}
+			if (!"push".equals(event)) {
+				sendResponse(exchange, 202, "Ignored");
+				return;
+			}
+
+			ArrayList<PendingGithubModel> commits;
+			try {
+				commits = parsePushEvent(payload);
+			} catch (JsonException | ClassCastException | NullPointerException e) {
+				sendResponse(exchange, 400, "Bad push payload");
+				return;
+			}
+
+			if (commits.size() > 0) {
+				// Acknowledge only once the commits are safely on disk; otherwise GitHub can redeliver
+				try {
+					queue.append(commits);
+				} catch (IOException e) {
+					System.out.println("Failed to queue webhook commits: " + e.getMessage());
+					sendResponse(exchange, 500, "Failed to queue commits");
+					return;
+				}
+				applier.execute(new Runnable() {
+					public void run() {
+						applyQueuedCommits();
+					}
+				});
+			}
+			sendResponse(exchange, 202, commits.size() + " commits queued");
+
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private byte[] readPayload(InputStream inputStream) throws IOException {
+		// Returns null if the payload is larger than GitHub ever sends
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int numRead;
+		while ((numRead = inputStream.read(buffer)) != -1) {
+			payload.write(buffer, 0, numRead);
+			if (payload.size() > MAX_PAYLOAD_BYTES)
+				return null;
+		}
+		return payload.toByteArray();
+	}
+
+	private boolean isValidSignature(String signature, byte[] payload) {
+		// Signature header is "sha256=" followed by the hex HMAC of the raw payload
+		if (signature == null || !signature.startsWith("sha256="))
+			return false;
+
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+			byte[] digest = mac.doFinal(payload);
+
+			StringBuilder expected = new StringBuilder("sha256=");
+			for (byte b : digest)
+				expected.append(String.format("%02x", b));
+
+			// Constant time compare
+			return MessageDigest.isEqual(expected.toString().getBytes(StandardCharsets.UTF_8),
+					signature.toLowerCase().getBytes(StandardCharsets.UTF_8));
+
+		} catch (GeneralSecurityException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private ArrayList<PendingGithubModel> parsePushEvent(byte[] payload) {
+		// Same fields as the classroom hook: user who pushed, repo, commit time (Pacific) and message
+		ArrayList<PendingGithubModel> commits = new ArrayList<PendingGithubModel>();
+		JsonObject push;
+		try (JsonReader reader = Json.createReader(new StringReader(new String(payload, StandardCharsets.UTF_8)))) {
+			push = reader.readObject();
+		}
+
+		String gitUser;
+		if (push.containsKey("sender") && !push.isNull("sender"))
+			gitUser = push.getJsonObject("sender").getString("login");
+		else
+			gitUser = push.getJsonObject("pusher").getString("name");
+		String repoName = push.getJsonObject("repository").getString("name");
+
+		JsonArray commitArray = push.getJsonArray("commits");
+		if (commitArray == null)
+			return commits;
+
+		for (JsonValue value : commitArray) {
+			JsonObject commit = (JsonObject) value;
+			String message = commit.getString("message", "").trim();
+			if (message.equals(""))
+				continue;
+
+			String serviceDate = new DateTime(commit.getString("timestamp"))
+					.withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd HH:mm:ss");
+			commits.add(new PendingGithubModel(0, gitUser, repoName, serviceDate, message));
+		}
+		return commits;
+	}
+
+	private void applyQueuedCommits() {
+		// Runs on the single applier thread, so queue entries are stored exactly once
+		try {
+			ArrayList<PendingGithubModel> queued = queue.getAll();
+			if (queued.size() == 0)
+				return;
+
+			ArrayList<PendingGithubModel> commits = new ArrayList<PendingGithubModel>();
+			for (PendingGithubModel commit : queued) {
+				if (commit != null)
+					commits.add(commit);
+			}
+
+			String startDate = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"))
+					.minusDays(StudentDataImport.ATTEND_NUM_DAYS_IN_PAST).toString("yyyy-MM-dd");
+			if (commits.size() == 0 || sqlImportDb.addPendingGithubEvents(commits, startDate)) {
+				queue.removeFirst(queued.size());
+				System.out.println(commits.size() + " webhook commits stored");
+			} else
+				System.out.println(commits.size() + " webhook commits not stored, will retry");
+
+		} catch (Exception e) {
+			// Keep the applier running; the commits are still in the queue
+			e.printStackTrace();
+		}
+	}
+
+	private void sendResponse(HttpExchange exchange, int responseCode, String message) throws IOException {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(responseCode, body.length);
+		OutputStream outputStream = exchange.getResponseBody();
+		outputStream.write(body);
+		outputStream.close();
+	}
+}
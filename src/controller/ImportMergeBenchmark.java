@@ -0,0 +1,233 @@
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import model.AsyncLogSink;
+import model.AttendanceEventModel;
+import model.CoursesModel;
+import model.InMemoryTrackerStore;
+import model.LocationLookup;
+import model.MySqlDbImports;
+import model.ScheduleModel;
+import model.StudentImportModel;
+import model.StudentIndex;
+import model.StudentModel;
+
+/**
+ * The Import Merge Benchmark class times the sorted-merge diffs in
+ * MySqlDbImports (importStudents, importAttendance, importSchedule and
+ * importCourses) against an InMemoryTrackerStore. Each run loads a generated
+ * dataset into a new store, then times the merge of the same dataset with a
+ * percentage of its records changed, as in a nightly import. Store writes are
+ * included in the times. Results are records per second and bytes allocated
+ * per record on the merge thread.
+ *
+ * Usage: ImportMergeBenchmark [numStudents] [visitsPerStudent] [changePercent] [numRuns]
+ *
+ * @author wavis
+ *
+ */
+public class ImportMergeBenchmark {
+	private static final int WARMUP_RUNS = 3;
+	private static final int NUM_SCHEDULE_CLASSES = 200;
+	private static final int NUM_COURSES = 100;
+	private static final String[] CLASS_NAMES = Pike13StubServer.CLASS_NAMES;
+	private static final String[] LOCATION_NAMES = Pike13StubServer.LOCATION_NAMES;
+
+	private int numStudents;
+	private int visitsPerStudent;
+	private int changePercent;
+	private String startDate;
+	private DateTime today;
+	private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private long startBytes;
+
+	public static void main(String[] args) {
+		int numStudents = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int visitsPerStudent = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int changePercent = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		int numRuns = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		// No database: log messages go to the console, locations match the generated students
+		AsyncLogSink.startConsole();
+		LocationLookup.setLocationData(Pike13StubServer.getSyntheticLocations());
+
+		new ImportMergeBenchmark(numStudents, visitsPerStudent, changePercent).runBenchmarks(numRuns);
+
+		AsyncLogSink.shutdown();
+		System.exit(0);
+	}
+
+	public ImportMergeBenchmark(int numStudents, int visitsPerStudent, int changePercent) {
+		this.numStudents = numStudents;
+		this.visitsPerStudent = visitsPerStudent;
+		this.changePercent = changePercent;
+		this.today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+		this.startDate = today.minusDays(StudentDataImport.ATTEND_NUM_DAYS_IN_PAST).toString("yyyy-MM-dd");
+	}
+
+	public void runBenchmarks(int numRuns) {
+		System.out.println("Import merge benchmark: " + numStudents + " students, " + visitsPerStudent
+				+ " visits per student, " + changePercent + "% changed, " + numRuns + " runs");
+
+		BenchmarkResult students = new BenchmarkResult("importStudents");
+		BenchmarkResult attendance = new BenchmarkResult("importAttendance");
+		BenchmarkResult schedule = new BenchmarkResult("importSchedule");
+		BenchmarkResult courses = new BenchmarkResult("importCourses");
+
+		for (int run = 0; run < WARMUP_RUNS + numRuns; run++) {
+			boolean warmup = run < WARMUP_RUNS;
+			MySqlDbImports sqlImportDb = new MySqlDbImports(new InMemoryTrackerStore());
+
+			// Students
+			sqlImportDb.importStudents(createStudents(false));
+			ArrayList<StudentImportModel> changedStudents = createStudents(true);
+			long startNanos = startTimer();
+			sqlImportDb.importStudents(changedStudents);
+			students.addRun(warmup, changedStudents.size(), startNanos, startBytes);
+
+			// Attendance
+			StudentIndex<StudentModel> studentIndex = StudentIndex.ofStudents(sqlImportDb.getActiveStudents());
+			sqlImportDb.importAttendance(startDate, createAttendance(false), studentIndex, true);
+			ArrayList<AttendanceEventModel> changedAttendance = createAttendance(true);
+			startNanos = startTimer();
+			sqlImportDb.importAttendance(startDate, changedAttendance, studentIndex, true);
+			attendance.addRun(warmup, changedAttendance.size(), startNanos, startBytes);
+
+			// Class schedule
+			sqlImportDb.importSchedule(createSchedule(false));
+			ArrayList<ScheduleModel> changedSchedule = createSchedule(true);
+			startNanos = startTimer();
+			sqlImportDb.importSchedule(changedSchedule);
+			schedule.addRun(warmup, changedSchedule.size(), startNanos, startBytes);
+
+			// Courses
+			sqlImportDb.importCourses(createCourses(false));
+			ArrayList<CoursesModel> changedCourses = createCourses(true);
+			startNanos = startTimer();
+			sqlImportDb.importCourses(changedCourses);
+			courses.addRun(warmup, changedCourses.size(), startNanos, startBytes);
+		}
+
+		System.out.println(students.getSummary());
+		System.out.println(attendance.getSummary());
+		System.out.println(schedule.getSummary());
+		System.out.println(courses.getSummary());
+	}
+
+	/*
+	 * ------- Timing -------
+	 */
+	private long startTimer() {
+		startBytes = getAllocatedBytes();
+		return System.nanoTime();
+	}
+
+	private long getAllocatedBytes() {
+		// HotSpot only; -1 if allocation is not measured on this JVM
+		if (threadBean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private class BenchmarkResult {
+		private String name;
+		private int numRuns = 0;
+		private long numRecords = 0;
+		private long totalNanos = 0;
+		private long totalBytes = 0;
+
+		private BenchmarkResult(String name) {
+			this.name = name;
+		}
+
+		private void addRun(boolean warmup, int records, long startNanos, long startBytes) {
+			long elapsedNanos = System.nanoTime() - startNanos;
+			long bytes = startBytes < 0 ? -1 : getAllocatedBytes() - startBytes;
+			if (warmup)
+				return;
+
+			numRuns++;
+			numRecords += records;
+			totalNanos += elapsedNanos;
+			totalBytes = (bytes < 0 || totalBytes < 0) ? -1 : totalBytes + bytes;
+		}
+
+		private String getSummary() {
+			if (numRuns == 0 || numRecords == 0)
+				return name + ": no runs";
+
+			String summary = String.format("%-17s %8d records, %12.0f records/sec, %8.3f msecs/run", name + ":",
+					numRecords / numRuns, numRecords * 1e9 / Math.max(1, totalNanos), totalNanos / 1e6 / numRuns);
+			if (totalBytes >= 0)
+				summary += String.format(", %8.0f bytes/record", (double) totalBytes / numRecords);
+			return summary;
+		}
+	}
+
+	/*
+	 * ------- Generated datasets -------
+	 */
+	private boolean isChanged(int recordNum, boolean changed) {
+		// The same records change on every run, spread evenly over the list
+		return changed && changePercent > 0 && (recordNum * changePercent) % 100 < changePercent;
+	}
+
+	private ArrayList<StudentImportModel> createStudents(boolean changed) {
+		ArrayList<StudentImportModel> students = new ArrayList<StudentImportModel>(numStudents);
+		for (int student = 1; student <= numStudents; student++) {
+			int classIdx = student % CLASS_NAMES.length;
+			String email = isChanged(student, changed) ? "new" + student + "@example.com"
+					: "student" + student + "@example.com";
+
+			students.add(new StudentImportModel(Pike13StubServer.FIRST_CLIENT_ID - 1 + student, String.valueOf(student),
+					"Student", "student" + student, student % 2 == 0 ? "Female" : "Male",
+					"2017-09-" + (10 + student % 20), LOCATION_NAMES[classIdx == 2 ? 1 : 0],
+					String.valueOf(2025 + student % 8), email, "parent" + student + "@example.com", "",
+					"(858) 555-0100", "(858) 555-0101", "", "", "2008-05-" + (10 + student % 18),
+					String.valueOf(classIdx + 1), 4, ""));
+		}
+		return students;
+	}
+
+	private ArrayList<AttendanceEventModel> createAttendance(boolean changed) {
+		ArrayList<AttendanceEventModel> attendance = new ArrayList<AttendanceEventModel>(numStudents * visitsPerStudent);
+		int visitID = 1;
+		for (int student = 1; student <= numStudents; student++) {
+			for (int visit = 0; visit < visitsPerStudent; visit++) {
+				String teacher = isChanged(visitID, changed) ? "Teacher " + (student % 7 + 1) : "Teacher " + (student % 7);
+				attendance.add(new AttendanceEventModel(Pike13StubServer.FIRST_CLIENT_ID - 1 + student, visitID++,
+						"Student " + student, today.minusDays(1 + visit % 20).toString("yyyy-MM-dd"), "16:00",
+						CLASS_NAMES[student % CLASS_NAMES.length], teacher, "class java", "completed", null));
+			}
+		}
+		return attendance;
+	}
+
+	private ArrayList<ScheduleModel> createSchedule(boolean changed) {
+		ArrayList<ScheduleModel> scheduleList = new ArrayList<ScheduleModel>(NUM_SCHEDULE_CLASSES);
+		for (int i = 0; i < NUM_SCHEDULE_CLASSES; i++) {
+			// The import engine always fills in the attendance & age fields
+			ScheduleModel sched = new ScheduleModel(5000 + i, i % 7, String.format("%02d:00", 9 + i % 10), 90,
+					CLASS_NAMES[i % CLASS_NAMES.length] + " #" + i);
+			sched.setMiscSchedFields(isChanged(i, changed) ? 11 : 10, "10.2", "14.7", "12.1", "", "Room " + (i % 4),
+					false);
+			scheduleList.add(sched);
+		}
+		return scheduleList;
+	}
+
+	private ArrayList<CoursesModel> createCourses(boolean changed) {
+		ArrayList<CoursesModel> coursesList = new ArrayList<CoursesModel>(NUM_COURSES);
+		for (int i = 0; i < NUM_COURSES; i++) {
+			int enrollment = isChanged(i, changed) ? 15 : 10;
+			coursesList.add(new CoursesModel(7000 + i, "Workshop " + i, enrollment));
+		}
+		return coursesList;
+	}
+}
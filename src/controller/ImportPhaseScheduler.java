@@ -0,0 +1,145 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.joda.time.DateTime;
+
+import model.ImportMetrics;
+
+/**
+ * ImportPhaseScheduler: Runs the nightly import phases as a dependency graph.
+ * Each phase declares the named data it needs (inputs) and the named data it
+ * produces (outputs). A phase starts as soon as all of its inputs have been
+ * produced, so independent Pike13 fetches run in parallel. Phases that use
+ * the database share a single lock and never overlap.
+ *
+ * @author wavis
+ *
+ */
+public class ImportPhaseScheduler {
+	private ArrayList<ImportPhase> phases = new ArrayList<ImportPhase>();
+	private final Object dbWriteLock = new Object();
+	private int numThreads;
+
+	public ImportPhaseScheduler(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public void addPhase(String name, String[] inputs, String[] outputs, boolean dbWrite, Runnable task) {
+		phases.add(new ImportPhase(name, inputs, outputs, dbWrite, task));
+	}
+
+	public void runPhases() {
+		// Make sure every input is produced by some phase
+		HashMap<String, ImportPhase> producers = new HashMap<String, ImportPhase>();
+		for (ImportPhase phase : phases) {
+			for (String output : phase.outputs)
+				producers.put(output, phase);
+		}
+		for (ImportPhase phase : phases) {
+			for (String input : phase.inputs) {
+				if (!producers.containsKey(input))
+					System.out.println("Import phase '" + phase.name + "' has no producer for '" + input + "'");
+			}
+		}
+
+		ArrayList<ImportPhase> pending = new ArrayList<ImportPhase>(phases);
+		HashSet<String> available = new HashSet<String>();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		CompletionService<ImportPhase> completed = new ExecutorCompletionService<ImportPhase>(pool);
+		int numRunning = 0;
+
+		try {
+			while (true) {
+				// Start every phase whose inputs are now available
+				for (int i = 0; i < pending.size(); i++) {
+					ImportPhase phase = pending.get(i);
+					if (phase.isReady(available)) {
+						completed.submit(() -> runPhase(phase), phase);
+						pending.remove(i);
+						i--;
+						numRunning++;
+					}
+				}
+				if (numRunning == 0)
+					break;
+
+				// Wait for next phase to finish, then publish its outputs
+				ImportPhase done = completed.take().get();
+				numRunning--;
+				if (done.success) {
+					for (String output : done.outputs)
+						available.add(output);
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
+
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+
+		} finally {
+			pool.shutdown();
+		}
+
+		// Report any phases that never ran because a dependency failed
+		for (ImportPhase phase : pending)
+			System.out.println("Import phase '" + phase.name + "' skipped: missing input");
+	}
+
+	private void runPhase(ImportPhase phase) {
+		long startTime = new DateTime().getMillis();
+		long startNanos = System.nanoTime();
+
+		try {
+			if (phase.dbWrite) {
+				synchronized (dbWriteLock) {
+					phase.task.run();
+				}
+			} else
+				phase.task.run();
+			phase.success = true;
+
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			System.out.println("Import phase '" + phase.name + "' failed: " + e.getMessage());
+		}
+
+		ImportMetrics.addTime("phase:" + phase.name, startNanos);
+		System.out.println("Import phase '" + phase.name + "': " + (new DateTime().getMillis() - startTime) + " msecs");
+	}
+
+	private static class ImportPhase {
+		private String name;
+		private String[] inputs;
+		private String[] outputs;
+		private boolean dbWrite;
+		private Runnable task;
+		private volatile boolean success;
+
+		private ImportPhase(String name, String[] inputs, String[] outputs, boolean dbWrite, Runnable task) {
+			this.name = name;
+			this.inputs = inputs;
+			this.outputs = outputs;
+			this.dbWrite = dbWrite;
+			this.task = task;
+		}
+
+		private boolean isReady(HashSet<String> available) {
+			for (String input : inputs) {
+				if (!available.contains(input))
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -1,25 +1,70 @@
 package controller;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
 
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
 
+import model.AsyncLogSink;
+import model.ImportMetrics;
 import model.LogDataModel;
-import model.MySqlDbLogging;
 import model.StudentNameModel;
 
 public class Pike13Connect {
+	public static final String DEFAULT_BASE_URL = "https://jtl.pike13.com";
+	private static final int MAX_IDLE_CONNECTIONS = 8;
+	private static final int MAX_ATTEMPTS = 6;
+	private static final int RATE_LIMIT_BURST = 8;
+	private static final double RATE_LIMIT_PER_SECOND = 10.0;
 	private final String USER_AGENT = "Mozilla/5.0";
 	private String pike13Token;
+	private String baseUrl;
+	private Pike13HttpMetrics metrics = new Pike13HttpMetrics();
+	private RateLimiter rateLimiter = new RateLimiter(RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND);
+
+	// Requests in flight across all fetch phases and shards. A thread holds its permit
+	// from sending a request until the response has been read.
+	private Semaphore requestPermits;
+	private ThreadLocal<Boolean> holdsPermit = new ThreadLocal<Boolean>();
+
+	static {
+		// Idle keep-alive connections kept per host (JDK default is 5); must be set before first request
+		if (System.getProperty("http.maxConnections") == null)
+			System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+	}
 	
 	public Pike13Connect(String pike13Token) {
+		this(pike13Token, DEFAULT_BASE_URL, Pike13PageFetcher.DEFAULT_CONCURRENT_QUERIES);
+	}
+
+	public Pike13Connect(String pike13Token, String baseUrl, int maxConcurrentRequests) {
+		// Base URL can point at a local stub server for offline testing
 		this.pike13Token = pike13Token;
+		if (baseUrl.endsWith("/"))
+			baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+		this.baseUrl = baseUrl;
+
+		// Clamp concurrency to Pike13 limit
+		if (maxConcurrentRequests < 1)
+			maxConcurrentRequests = 1;
+		else if (maxConcurrentRequests > Pike13PageFetcher.MAX_CONCURRENT_QUERIES)
+			maxConcurrentRequests = Pike13PageFetcher.MAX_CONCURRENT_QUERIES;
+		this.requestPermits = new Semaphore(maxConcurrentRequests, true);
+	}
+
+	public Pike13HttpMetrics getMetrics() {
+		return metrics;
 	}
 
 	private HttpURLConnection connectUrl(String endPoint, boolean coreApi) {
@@ -29,22 +74,23 @@ public class Pike13Connect {
 		// Typically the 'reporting' API is used; occasionally fields are not available
 		// in the reporting API so the core API must be used instead.
 		if (coreApi)
-			urlString = "https://jtl.pike13.com/api/v2/desk/" + endPoint;
+			urlString = baseUrl + "/api/v2/desk/" + endPoint;
 		else
-			urlString = "https://jtl.pike13.com/desk/api/v3/reports/" + endPoint + "/queries";
+			urlString = baseUrl + "/desk/api/v3/reports/" + endPoint + "/queries";
 
 		try {
 			// Get URL connection with authorization
 			URL url = new URL(urlString);
 			conn = (HttpURLConnection) url.openConnection();
 			if (conn == null) {
-				MySqlDbLogging.insertLogData(LogDataModel.PIKE13_CONNECTION_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.PIKE13_CONNECTION_ERROR, new StudentNameModel("", "", false), 0,
 						": Failed to open connection for endpoint '" + endPoint + "'");
 				return null;
 			}
 			String basicAuth = "Bearer " + pike13Token;
 			conn.setRequestProperty("Authorization", basicAuth);
 			conn.setRequestProperty("User-Agent", USER_AGENT);
+			conn.setRequestProperty("Accept-Encoding", "gzip");
 
 			if (coreApi)
 				conn.setRequestMethod("GET");
@@ -56,7 +102,7 @@ public class Pike13Connect {
 			return conn;
 
 		} catch (Exception e) {
-			MySqlDbLogging.insertLogData(LogDataModel.PIKE13_CONNECTION_ERROR, new StudentNameModel("", "", false), 0,
+			AsyncLogSink.insertLogData(LogDataModel.PIKE13_CONNECTION_ERROR, new StudentNameModel("", "", false), 0,
 					": " + e.getMessage());
 			e.printStackTrace();
 		
@@ -67,14 +113,29 @@ public class Pike13Connect {
 	}
 
 	public HttpURLConnection sendQueryToUrl(String connName, String getCommand, boolean coreApi) {
-		try {
-			// If necessary, try twice to send query
-			for (int i = 0; i < 2; i++) {
-				// Get URL connection with authorization
-				HttpURLConnection conn = connectUrl(connName, coreApi);
-				if (conn == null)
-					continue;
+		// Throttling (429) and server errors are retried with backoff; other errors are tried twice
+		for (int i = 0; i < MAX_ATTEMPTS; i++) {
+			// Wait for a free request slot, then a turn under the rate limit shared by all fetch threads
+			if (!acquirePermit())
+				return null;
+			if (!rateLimiter.acquire()) {
+				releasePermit();
+				return null;
+			}
 
+			// Get URL connection with authorization
+			long startTime = System.nanoTime();
+			HttpURLConnection conn = connectUrl(connName, coreApi);
+			if (conn == null) {
+				releasePermit();
+				return null;
+			}
+			metrics.addRequest(getEndpointName(conn));
+
+			String error;
+			boolean retryable;
+			int responseCode = 0;
+			try {
 				// Send the query
 				if (!coreApi) {
 					OutputStream outputStream = conn.getOutputStream();
@@ -84,68 +145,323 @@ public class Pike13Connect {
 				}
 
 				// Check result
-				int responseCode = conn.getResponseCode();
+				responseCode = conn.getResponseCode();
+				ImportMetrics.addTime("pike13.request:" + getEndpointName(conn), startTime);
+				rateLimiter.updateFromResponse(conn);
 				if (responseCode == HttpURLConnection.HTTP_OK)
-					return conn;
-				else {
-					MySqlDbLogging.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
-							" " + responseCode + " for '" + connName + "' (attempt #" + (i + 1) + "): " + conn.getResponseMessage());
-					conn.disconnect();
-				}
+					return conn; // Permit is released once the response has been read
+
+				error = " " + responseCode + " for '" + connName + "' (attempt #" + (i + 1) + "): "
+						+ conn.getResponseMessage();
+				retryable = RateLimiter.isRetryable(responseCode);
+				metrics.addError(getEndpointName(conn));
+				discardErrorResponse(conn);
+
+			} catch (IOException e) {
+				// Connection reset, timeout, etc.
+				error = " for '" + connName + "' (attempt #" + (i + 1) + "): " + e.getMessage();
+				retryable = true;
+				metrics.addError(getEndpointName(conn));
+				conn.disconnect();
 			}
 
-		} catch (IOException e) {
-			e.printStackTrace();
-			MySqlDbLogging.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0, 
-					": " + e.getMessage());
+			// Don't hold a request slot while backing off
+			releasePermit();
+			if (i == MAX_ATTEMPTS - 1 || (!retryable && i > 0)) {
+				AsyncLogSink.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
+						error);
+				break;
+			}
+			System.out.println("Pike13" + error + ", retrying");
+
+			// Throttled requests already wait on the shared rate limiter
+			if (responseCode != 429 && !rateLimiter.backoff(i))
+				break;
 		}
 
 		return null;
 	}
 
-	public JsonObject readInputStream(HttpURLConnection conn) {
+	public String readRowStream(HttpURLConnection conn, Pike13RowHandler handler) {
+		// Stream the report page, handing each row to the handler as it is parsed.
+		// Returns the key for the next page, or null if this is the last page;
+		// throws Pike13FetchException if the page cannot be read.
+		long startTime = System.nanoTime();
+		int[] numRows = { 0 };
+		Pike13RowHandler countingHandler = (row) -> {
+			numRows[0]++;
+			handler.processRow(row);
+		};
+
+		boolean released = false;
 		try {
-			// Get input stream and read data
-			InputStream inputStream = conn.getInputStream();
-			JsonReader repoReader = Json.createReader(inputStream);
-			JsonObject object = ((JsonObject) repoReader.read()).getJsonObject("data").getJsonObject("attributes");
+			CountingInputStream wireStream = new CountingInputStream(conn.getInputStream());
+			CountingInputStream inputStream = openResponseStream(conn, wireStream);
+			JsonParser parser = Json.createParser(inputStream);
+			String lastKey = null;
 
-			repoReader.close();
-			inputStream.close();
-			return object;
+			// Rows are found in {"data":{"attributes":{"rows":[...],"has_more":..,"last_key":..}}}
+			if (parser.hasNext() && parser.next() == Event.START_OBJECT) {
+				while (parser.next() == Event.KEY_NAME) {
+					String key = parser.getString();
+					Event event = parser.next();
+					if (!key.equals("data") || event != Event.START_OBJECT) {
+						skipValue(parser, event);
+						continue;
+					}
 
-		} catch (IOException e) {
+					while (parser.next() == Event.KEY_NAME) {
+						key = parser.getString();
+						event = parser.next();
+						if (key.equals("attributes") && event == Event.START_OBJECT)
+							lastKey = readAttributes(parser, countingHandler);
+						else
+							skipValue(parser, event);
+					}
+				}
+			}
+
+			releaseResponse(conn, wireStream, inputStream);
+			released = true;
+			parser.close();
+
+			// Page time covers reading, parsing and the handler for each row
+			ImportMetrics.addTime("pike13.page:" + getEndpointName(conn), startTime);
+			ImportMetrics.addCount("pike13.rows:" + getEndpointName(conn), numRows[0]);
+			return lastKey;
+
+		} catch (Pike13FetchException e) {
+			// Already the failure type callers expect
+			metrics.addError(getEndpointName(conn));
+			throw e;
+
+		} catch (IOException | RuntimeException e) {
+			// Parse errors and row handler failures (e.g. a bad number cell) fail the page the same way.
+			// Must not look like the last page, or the rows after it would be silently missing.
 			e.printStackTrace();
-			MySqlDbLogging.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
+			AsyncLogSink.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
 					": " + e.getMessage());
+			metrics.addError(getEndpointName(conn));
+			throw new Pike13FetchException("Pike13 '" + getEndpointName(conn) + "' page failed: " + e.getMessage(), e);
+
+		} finally {
+			// A page that was not read to the end can't go back to the keep-alive cache
+			if (!released)
+				conn.disconnect();
+			releasePermit();
+		}
+	}
+
+	private String readAttributes(JsonParser parser, Pike13RowHandler handler) {
+		boolean hasMore = false;
+		String lastKey = null;
+
+		while (parser.next() == Event.KEY_NAME) {
+			String key = parser.getString();
+			Event event = parser.next();
+
+			if (key.equals("rows") && event == Event.START_ARRAY)
+				readRows(parser, handler);
+			else if (key.equals("has_more"))
+				hasMore = (event == Event.VALUE_TRUE);
+			else if (key.equals("last_key") && event == Event.VALUE_STRING)
+				lastKey = parser.getString();
+			else
+				skipValue(parser, event);
 		}
+
+		if (hasMore)
+			return lastKey;
 		return null;
 	}
-	
+
+	private void readRows(JsonParser parser, Pike13RowHandler handler) {
+		Pike13Row row = new Pike13Row();
+
+		Event event;
+		while ((event = parser.next()) != Event.END_ARRAY) {
+			if (event != Event.START_ARRAY) {
+				skipValue(parser, event);
+				continue;
+			}
+
+			// Fill in cells for this row, then pass it on
+			row.clear();
+			while ((event = parser.next()) != Event.END_ARRAY) {
+				switch (event) {
+				case VALUE_STRING:
+					row.addString(parser.getString());
+					break;
+				case VALUE_NUMBER:
+					if (parser.isIntegralNumber()) {
+						long value = parser.getLong();
+						if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+							row.addInt((int) value);
+							break;
+						}
+					}
+					row.addNumber(parser.getString());
+					break;
+				case VALUE_TRUE:
+					row.addString("true");
+					break;
+				case VALUE_FALSE:
+					row.addString("false");
+					break;
+				default:
+					// Nested values are not used by any report
+					skipValue(parser, event);
+					row.addNull();
+					break;
+				}
+			}
+			handler.processRow(row);
+		}
+	}
+
+	private void skipValue(JsonParser parser, Event event) {
+		// Skip over next value, including any nested arrays or objects
+		if (event == null)
+			event = parser.next();
+
+		int depth = 0;
+		do {
+			if (event == Event.START_ARRAY || event == Event.START_OBJECT)
+				depth++;
+			else if (event == Event.END_ARRAY || event == Event.END_OBJECT)
+				depth--;
+
+			if (depth > 0)
+				event = parser.next();
+		} while (depth > 0);
+	}
+
 	public JsonObject readCoreInputStream(HttpURLConnection conn) {
+		long startTime = System.nanoTime();
+		boolean released = false;
 		try {
 			// Get input stream and read data
-			InputStream inputStream = conn.getInputStream();
+			CountingInputStream wireStream = new CountingInputStream(conn.getInputStream());
+			CountingInputStream inputStream = openResponseStream(conn, wireStream);
 			JsonReader repoReader = Json.createReader(inputStream);
 			JsonObject object = ((JsonObject) repoReader.read());
 
+			releaseResponse(conn, wireStream, inputStream);
+			released = true;
 			repoReader.close();
-			inputStream.close();
+			ImportMetrics.addTime("pike13.parse:" + getEndpointName(conn), startTime);
 			return object;
 
-		} catch (IOException e) {
+		} catch (IOException | JsonParsingException | ClassCastException e) {
 			e.printStackTrace();
-			MySqlDbLogging.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
+			AsyncLogSink.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
 					" for Core API: " + e.getMessage());
+			metrics.addError(getEndpointName(conn));
+
+		} finally {
+			if (!released)
+				conn.disconnect();
+			releasePermit();
 		}
 		return null;
 	}
 
-	public String stripQuotes(String fieldData) {
-		// Strip off quotes around field string
-		if (fieldData.equals("\"\"") || fieldData.startsWith("null"))
-			return "";
-		else
-			return fieldData.substring(1, fieldData.length() - 1);
+	private boolean acquirePermit() {
+		// A thread only ever has one request open, so it never needs a second permit
+		if (holdsPermit.get() != null)
+			return true;
+
+		try {
+			requestPermits.acquire();
+			holdsPermit.set(Boolean.TRUE);
+			return true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void releasePermit() {
+		if (holdsPermit.get() != null) {
+			holdsPermit.remove();
+			requestPermits.release();
+		}
+	}
+
+	private CountingInputStream openResponseStream(HttpURLConnection conn, CountingInputStream wireStream)
+			throws IOException {
+		// Count bytes both as sent (possibly gzip'd) and as parsed
+		if ("gzip".equalsIgnoreCase(conn.getContentEncoding()))
+			return new CountingInputStream(new GZIPInputStream(wireStream));
+		return new CountingInputStream(wireStream);
+	}
+
+	private void releaseResponse(HttpURLConnection conn, CountingInputStream wireStream,
+			CountingInputStream inputStream) throws IOException {
+		// Read to the end (gzip trailer, trailing whitespace) and close without disconnecting,
+		// so the JDK returns the socket to its keep-alive cache for the next page.
+		byte[] buffer = new byte[1024];
+		while (inputStream.read(buffer) != -1)
+			;
+		inputStream.close();
+		metrics.addResponse(getEndpointName(conn), wireStream.getCount(), inputStream.getCount());
+	}
+
+	private void discardErrorResponse(HttpURLConnection conn) {
+		// Error body must also be read to the end for the connection to be reused
+		try {
+			InputStream errorStream = conn.getErrorStream();
+			if (errorStream != null) {
+				byte[] buffer = new byte[1024];
+				while (errorStream.read(buffer) != -1)
+					;
+				errorStream.close();
+			}
+		} catch (IOException e) {
+			conn.disconnect();
+		}
+	}
+
+	private String getEndpointName(HttpURLConnection conn) {
+		// Report path ends in /reports/[name]/queries, core path in /desk/[name]
+		String path = conn.getURL().getPath();
+		boolean coreApi = !path.endsWith("/queries");
+		if (!coreApi)
+			path = path.substring(0, path.length() - "/queries".length());
+		path = path.substring(path.lastIndexOf('/') + 1);
+		return coreApi ? path + " (core)" : path;
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				count++;
+			return b;
+		}
+
+		public int read(byte[] buffer, int offset, int len) throws IOException {
+			int numRead = super.read(buffer, offset, len);
+			if (numRead > 0)
+				count += numRead;
+			return numRead;
+		}
+
+		public long skip(long n) throws IOException {
+			long numSkipped = super.skip(n);
+			count += numSkipped;
+			return numSkipped;
+		}
+
+		private long getCount() {
+			return count;
+		}
 	}
 }
@@ -2,6 +2,11 @@ package controller;
 
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.json.JsonArray;
 import javax.json.JsonObject;
@@ -11,13 +16,20 @@ import org.joda.time.DateTimeZone;
 
 import model.AttendanceEventModel;
 import model.CoursesModel;
+import model.IntKeyMap;
 import model.MySqlDatabase;
-import model.MySqlDbImports;
 import model.ScheduleModel;
 import model.StudentImportModel;
+import model.StudentIndex;
 import model.StudentModel;
 
 public class Pike13DbImport {
+	// Max event occurrence ID's in a single room lookup
+	private static final int ROOM_IDS_PER_QUERY = 50;
+
+	// Max client ID's in a single catch-up attendance query
+	private static final int CATCHUP_IDS_PER_QUERY = 100;
+
 	// Custom field names for client data
 	private final String GENDER_FIELD = "custom_field_106320";
 	private final String GITHUB_FIELD = "custom_field_127885";
@@ -119,12 +131,12 @@ public class Pike13DbImport {
 			+ "                              [\"btw\",\"service_date\",[\"2222-22-22\",\"3333-33-33\"]],"
 			+ "                              [\"starts\",\"service_category\",\"class\"]]]]]}}}";
 
-	private final String getEnrollmentStudentTracker2WithName = "},"
-			// Filter on State completed, since date and student name
+	private final String getEnrollmentStudentTracker2WithClients = "},"
+			// Filter on State completed, since date and set of client ID's
 			+ "\"filter\":[\"and\",[[\"eq\",\"state\",\"completed\"],"
 			+ "                     [\"btw\",\"service_date\",[\"0000-00-00\",\"1111-11-11\"]],"
 			+ "                     [\"starts\",\"service_category\",\"Class\"],"
-			+ "                     [\"eq\",\"full_name\",\"NNNNNN\"]]]}}}";
+			+ "                     [\"or\",[NNNNNN]]]]}}}";
 
 	private final String getEnrollmentStudentTracker2NotComplete = "},"
 			// Filter on State completed and since date OR make-up class for this week
@@ -178,24 +190,50 @@ public class Pike13DbImport {
 			+ "                     [\"eq\",\"" + STAFF_CATEGORY_FIELD + "\",\"Student TA\"],"
 			+ "                     [\"starts\",\"full_name\",\"TA-\"]]]}}}";
 
-	private MySqlDbImports mySqlDbImports;
 	private Pike13Connect pike13Conn;
+	private Pike13PageFetcher pageFetcher;
+	private HashMap<Integer, String> roomCache = new HashMap<Integer, String>(); // Rooms looked up this run
 
-	public Pike13DbImport(MySqlDbImports mySqlDbImports, Pike13Connect pike13Conn) {
-		this.mySqlDbImports = mySqlDbImports;
+	public Pike13DbImport(Pike13Connect pike13Conn, int maxConcurrentQueries) {
 		this.pike13Conn = pike13Conn;
+		this.pageFetcher = new Pike13PageFetcher(maxConcurrentQueries);
 	}
 
-	public ArrayList<StudentImportModel> getClients() {
-		ArrayList<StudentImportModel> studentList = new ArrayList<StudentImportModel>();
-		boolean hasMore = false;
-		String lastKey = "";
-
+	public ArrayList<StudentImportModel> getClients(int maxClientID) {
 		// Insert since date for completed visit (in last 30 days)
 		String clients2 = getClientData2.replaceFirst("0000-00-00",
 				new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).
 					minusDays(MySqlDatabase.CLASS_ATTEND_NUM_DAYS_TO_KEEP).toString("yyyy-MM-dd"));
 
+		// Split into client ID ranges using the largest client ID already in the DB.
+		// The last range is open-ended so that new clients are always included.
+		int numShards = pageFetcher.getConcurrency();
+		if (maxClientID <= 0 || numShards == 1)
+			return getClientsByCmdString(clients2);
+
+		ArrayList<Callable<ArrayList<StudentImportModel>>> shards = new ArrayList<Callable<ArrayList<StudentImportModel>>>();
+		int idsPerShard = (maxClientID / numShards) + 1;
+		for (int i = 0; i < numShards; i++) {
+			String idFilter;
+			if (i == 0)
+				idFilter = "[\"lt\",\"person_id\"," + idsPerShard + "]";
+			else if (i == numShards - 1)
+				idFilter = "[\"gte\",\"person_id\"," + (i * idsPerShard) + "]";
+			else
+				idFilter = "[\"gte\",\"person_id\"," + (i * idsPerShard) + "],"
+						+ "[\"lt\",\"person_id\"," + ((i + 1) * idsPerShard) + "]";
+
+			String shardCmd = addFilter(clients2, idFilter);
+			shards.add(() -> getClientsByCmdString(shardCmd));
+		}
+		return pageFetcher.fetchShards("clients", shards);
+	}
+
+	private ArrayList<StudentImportModel> getClientsByCmdString(String clients2) {
+		ArrayList<StudentImportModel> studentList = new ArrayList<StudentImportModel>();
+		boolean hasMore = false;
+		String lastKey = "";
+
 		do {
 			// Get URL connection with authorization
 			HttpURLConnection conn;
@@ -207,55 +245,40 @@ public class Pike13DbImport {
 				conn = pike13Conn.sendQueryToUrl("clients", getClientData + clients2, false);
 
 			if (conn == null)
-				return studentList;
+				throw new Pike13FetchException("Pike13 'clients' query failed");
 
-			// Get input stream and read data
-			JsonObject jsonObj = pike13Conn.readInputStream(conn);
-			if (jsonObj == null) {
-				conn.disconnect();
-				return studentList;
-			}
-			JsonArray jsonArray = jsonObj.getJsonArray("rows");
-
-			for (int i = 0; i < jsonArray.size(); i++) {
+			// Stream rows into student list; returns key for the next page
+			lastKey = pike13Conn.readRowStream(conn, (personArray) -> {
 				// Get fields for each person
-				JsonArray personArray = (JsonArray) jsonArray.get(i);
-				String firstName = pike13Conn.stripQuotes(personArray.get(FIRST_NAME_IDX).toString());
-				
-				String birthday = null;
-				if (personArray.get(BIRTHDATE_IDX) != null)
-					birthday = pike13Conn.stripQuotes(personArray.get(BIRTHDATE_IDX).toString());
+				String firstName = personArray.getString(FIRST_NAME_IDX);
+				String birthday = personArray.getString(BIRTHDATE_IDX);
 
 				if (!firstName.startsWith("Guest") && !firstName.toLowerCase().equals("test") && !firstName.startsWith("TestChild")) {
 					// Get fields for this Json array entry
 					StudentImportModel model = new StudentImportModel(personArray.getInt(CLIENT_ID_IDX),
-							pike13Conn.stripQuotes(personArray.get(LAST_NAME_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(FIRST_NAME_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(GITHUB_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(GENDER_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(FIRST_VISIT_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(HOME_LOC_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(GRAD_YEAR_IDX).toString().trim()),
-							pike13Conn.stripQuotes(personArray.get(EMAIL_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(ACCT_MGR_EMAIL_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(EMERG_EMAIL_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(MOBILE_PHONE_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(ACCT_MGR_PHONE_IDX).toString()),
-							"", //pike13Conn.stripQuotes(personArray.get(HOME_PHONE_IDX).toString()),
-							pike13Conn.stripQuotes(personArray.get(EMERG_PHONE_IDX).toString()),
-							birthday, pike13Conn.stripQuotes(personArray.get(CURRENT_LEVEL_IDX).toString()),
+							personArray.getString(LAST_NAME_IDX),
+							firstName,
+							personArray.getString(GITHUB_IDX),
+							personArray.getString(GENDER_IDX),
+							personArray.getString(FIRST_VISIT_IDX),
+							personArray.getString(HOME_LOC_IDX),
+							personArray.getString(GRAD_YEAR_IDX).trim(),
+							personArray.getString(EMAIL_IDX),
+							personArray.getString(ACCT_MGR_EMAIL_IDX),
+							personArray.getString(EMERG_EMAIL_IDX),
+							personArray.getString(MOBILE_PHONE_IDX),
+							personArray.getString(ACCT_MGR_PHONE_IDX),
+							"", //personArray.getString(HOME_PHONE_IDX),
+							personArray.getString(EMERG_PHONE_IDX),
+							birthday, personArray.getString(CURRENT_LEVEL_IDX),
 							personArray.getInt(FUTURE_VISITS_IDX), 
-							pike13Conn.stripQuotes(personArray.get(LAST_EXAM_SCORE_IDX).toString()));
+							personArray.getString(LAST_EXAM_SCORE_IDX));
 					studentList.add(model);
 				}
-			}
+			});
 
 			// Check to see if there are more pages
-			hasMore = jsonObj.getBoolean("has_more");
-			if (hasMore)
-				lastKey = jsonObj.getString("last_key");
-
-			conn.disconnect();
+			hasMore = (lastKey != null);
 
 		} while (hasMore);
 
@@ -271,7 +294,7 @@ public class Pike13DbImport {
 		enroll2 = enroll2.replaceFirst("3333-33-33", today.plusDays(6).toString("yyyy-MM-dd"));
 
 		// Get attendance for all students
-		return getEnrollmentByCmdString(getEnrollmentStudentTracker, enroll2);
+		return getEnrollmentByDateShards(enroll2, startDate, today.plusDays(6).toString("yyyy-MM-dd"));
 	}
 	
 	public ArrayList<AttendanceEventModel> getIncompleteAttend(String startDate) {
@@ -281,7 +304,30 @@ public class Pike13DbImport {
 		enroll2 = enroll2.replaceFirst("1111-11-11", today.toString("yyyy-MM-dd"));
 
 		// Get attendance for all students
-		return getEnrollmentByCmdString(getEnrollmentStudentTracker, enroll2);
+		return getEnrollmentByDateShards(enroll2, startDate, today.toString("yyyy-MM-dd"));
+	}
+
+	private ArrayList<AttendanceEventModel> getEnrollmentByDateShards(String cmdString2, String startDate,
+			String endDate) {
+		// Split the service date range so that the shards can be fetched in parallel
+		ArrayList<String[]> dateRanges = pageFetcher.splitDateRange(startDate, endDate);
+		if (dateRanges.size() == 1)
+			return getEnrollmentByCmdString(getEnrollmentStudentTracker, cmdString2);
+
+		ArrayList<Callable<ArrayList<AttendanceEventModel>>> shards = new ArrayList<Callable<ArrayList<AttendanceEventModel>>>();
+		for (String[] range : dateRanges) {
+			String shardCmd = addFilter(cmdString2,
+					"[\"btw\",\"service_date\",[\"" + range[0] + "\",\"" + range[1] + "\"]]");
+			shards.add(() -> getEnrollmentByCmdString(getEnrollmentStudentTracker, shardCmd));
+		}
+		return pageFetcher.fetchShards("enrollments", shards);
+	}
+
+	private String addFilter(String cmdString2, String extraFilter) {
+		// 'And' the extra filter condition(s) with the original query filter
+		int filterIdx = cmdString2.indexOf("\"filter\":") + 9;
+		String filter = cmdString2.substring(filterIdx, cmdString2.length() - 3);
+		return cmdString2.substring(0, filterIdx) + "[\"and\",[" + extraFilter + "," + filter + "]]}}}";
 	}
 
 	private ArrayList<AttendanceEventModel> getEnrollmentByCmdString(String cmdString1, String cmdString2) {
@@ -298,79 +344,97 @@ public class Pike13DbImport {
 				conn = pike13Conn.sendQueryToUrl("enrollments", cmdString1 + cmdString2, false);
 
 			if (conn == null)
-				return eventList;
+				throw new Pike13FetchException("Pike13 'enrollments' query failed");
 
-			// Get input stream and read data
-			JsonObject jsonObj = pike13Conn.readInputStream(conn);
-			if (jsonObj == null) {
-				conn.disconnect();
-				return eventList;
-			}
-			JsonArray jsonArray = jsonObj.getJsonArray("rows");
-
-			for (int i = 0; i < jsonArray.size(); i++) {
+			// Stream rows into event list; returns key for the next page
+			lastKey = pike13Conn.readRowStream(conn, (eventArray) -> {
 				// Get fields for each event
-				JsonArray eventArray = (JsonArray) jsonArray.get(i);
-				String eventName = pike13Conn.stripQuotes(eventArray.get(ENROLL_EVENT_NAME_IDX).toString());
-				String serviceDate = pike13Conn.stripQuotes(eventArray.get(ENROLL_SERVICE_DATE_IDX).toString());
+				String eventName = eventArray.getString(ENROLL_EVENT_NAME_IDX);
+				String serviceDate = eventArray.getString(ENROLL_SERVICE_DATE_IDX);
 				int visitID = 0;
-				if (eventArray.get(ENROLL_VISIT_ID_IDX) != null && eventArray.get(ENROLL_VISIT_ID_IDX).toString().matches("\\d+"))
+				if (eventArray.isInt(ENROLL_VISIT_ID_IDX) && eventArray.getInt(ENROLL_VISIT_ID_IDX) >= 0)
 					visitID = eventArray.getInt(ENROLL_VISIT_ID_IDX);
 
 				// Add event to list
 				if (!eventName.equals("") && !eventName.equals("\"\"") && !serviceDate.equals("")) {
 					eventList.add(new AttendanceEventModel(eventArray.getInt(ENROLL_CLIENT_ID_IDX),
 							visitID,
-							pike13Conn.stripQuotes(eventArray.get(ENROLL_FULL_NAME_IDX).toString()), serviceDate, 
-							pike13Conn.stripQuotes(eventArray.get(ENROLL_SERVICE_TIME_IDX).toString()), eventName,
-							pike13Conn.stripQuotes(eventArray.get(ENROLL_TEACHER_NAMES_IDX).toString()),
-							pike13Conn.stripQuotes(eventArray.get(ENROLL_SERVICE_CATEGORY_IDX).toString()),
-							pike13Conn.stripQuotes(eventArray.get(ENROLL_STATE_IDX).toString()), null));
+							eventArray.getString(ENROLL_FULL_NAME_IDX), serviceDate, 
+							eventArray.getString(ENROLL_SERVICE_TIME_IDX), eventName,
+							eventArray.getString(ENROLL_TEACHER_NAMES_IDX),
+							eventArray.getString(ENROLL_SERVICE_CATEGORY_IDX),
+							eventArray.getString(ENROLL_STATE_IDX), null));
 				}
-			}
+			});
 
 			// Check to see if there are more pages
-			hasMore = jsonObj.getBoolean("has_more");
-			if (hasMore)
-				lastKey = jsonObj.getString("last_key");
-
-			conn.disconnect();
+			hasMore = (lastKey != null);
 
 		} while (hasMore && cmdString2 != "");
 
 		return eventList;
 	}
 
-	public ArrayList<AttendanceEventModel> getMissingAttendance(String endDate, ArrayList<StudentModel> studentList) {
+	public ArrayList<AttendanceEventModel> getMissingAttendance(String endDate, ArrayList<StudentModel> studentList,
+			ArrayList<StudentModel> caughtUpStudents) {
+		// Students whose attendance was fetched are added to caughtUpStudents; their
+		// 'NewStudent' flag is cleared by the database phase once the rows are stored.
 		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
 
-		// Insert end date into enrollment command string
-		String enroll2 = getEnrollmentStudentTracker2WithName.replaceFirst("1111-11-11", endDate);
+		// Catch up only as far back as 3 months ago
+		String earliestDate = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).minusMonths(3)
+				.toString("yyyy-MM-dd");
 
-		for (int i = 0; i < studentList.size(); i++) {
-			StudentModel student = studentList.get(i);
+		// Get catch-up start date for each student
+		IntKeyMap<String> catchupDates = new IntKeyMap<String>(studentList.size());
+		ArrayList<StudentModel> catchupStudents = new ArrayList<StudentModel>();
+		for (StudentModel student : studentList) {
 			if (student.getStartDate() != null) {
 				// Get student start date and ignore if date is beyond end date
 				String catchupStartDate = student.getStartDate().toString();
 				if (catchupStartDate.compareTo(endDate) >= 0)
 					continue;
 
-				// Catch up only as far back as 3 months ago
-				String earliestDate = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).minusMonths(3)
-						.toString("yyyy-MM-dd");
 				if (catchupStartDate.compareTo(earliestDate) < 0)
 					catchupStartDate = earliestDate;
 
-				// Get attendance for this student
-				String enrollTemp = enroll2.replaceFirst("0000-00-00", catchupStartDate);
-				enrollTemp = enrollTemp.replaceFirst("NNNNNN", student.getFirstName() + " " + student.getLastName());
-				eventList.addAll(getEnrollmentByCmdString(getEnrollmentStudentTracker, enrollTemp));
-
-				// Set student 'NewStudent' flag back to false
-				mySqlDbImports.updateStudentFlags(student, "NewStudent", 0);
+				catchupDates.put(student.getClientID(), catchupStartDate);
+				catchupStudents.add(student);
 			}
 		}
+		if (catchupStudents.size() == 0)
+			return eventList;
+
+		// Query students in chunks of client ID's, each chunk starting at its earliest catch-up date
+		String enroll2 = getEnrollmentStudentTracker2WithClients.replaceFirst("1111-11-11", endDate);
+		ArrayList<Callable<ArrayList<AttendanceEventModel>>> shards = new ArrayList<Callable<ArrayList<AttendanceEventModel>>>();
+
+		for (int i = 0; i < catchupStudents.size(); i += CATCHUP_IDS_PER_QUERY) {
+			String chunkStartDate = endDate;
+			String idFilter = "";
+			for (StudentModel student : catchupStudents.subList(i,
+					Math.min(i + CATCHUP_IDS_PER_QUERY, catchupStudents.size()))) {
+				String catchupStartDate = catchupDates.get(student.getClientID());
+				if (catchupStartDate.compareTo(chunkStartDate) < 0)
+					chunkStartDate = catchupStartDate;
+
+				if (!idFilter.equals(""))
+					idFilter += ",";
+				idFilter += "[\"eq\",\"person_id\"," + student.getClientID() + "]";
+			}
+
+			String enrollTemp = enroll2.replaceFirst("0000-00-00", chunkStartDate).replaceFirst("NNNNNN", idFilter);
+			shards.add(() -> getEnrollmentByCmdString(getEnrollmentStudentTracker, enrollTemp));
+		}
+
+		// Trim each student's rows back to their own catch-up start date
+		for (AttendanceEventModel event : pageFetcher.fetchShards("enrollments", shards)) {
+			String catchupStartDate = catchupDates.get(event.getClientID());
+			if (catchupStartDate != null && event.getServiceDateString().compareTo(catchupStartDate) >= 0)
+				eventList.add(event);
+		}
 
+		caughtUpStudents.addAll(catchupStudents);
 		return eventList;
 	}
 
@@ -385,72 +449,100 @@ public class Pike13DbImport {
 		// Get URL connection with authorization and send query
 		HttpURLConnection conn = pike13Conn.sendQueryToUrl("event_occurrences", scheduleString, false);
 		if (conn == null)
-			return scheduleList;
-
-		// Get input stream and read data
-		JsonObject jsonObj = pike13Conn.readInputStream(conn);
-		if (jsonObj == null) {
-			conn.disconnect();
-			return scheduleList;
-		}
-		JsonArray jsonArray = jsonObj.getJsonArray("rows");
-
-		for (int i = 0; i < jsonArray.size(); i++) {
-			// Get fields for each event in the schedule
-			JsonArray scheduleArray = (JsonArray) jsonArray.get(i);
+			throw new Pike13FetchException("Pike13 'event_occurrences' query failed");
 
+		// Stream rows into schedule list
+		pike13Conn.readRowStream(conn, (scheduleArray) -> {
 			// Get event name, day-of-week and duration
-			String eventName = pike13Conn.stripQuotes(scheduleArray.get(SCHED_WKLY_EVENT_NAME_IDX).toString());
-			String serviceDayString = pike13Conn.stripQuotes(scheduleArray.get(SCHED_SERVICE_DAY_IDX).toString());
-			int serviceDay = Integer.parseInt(serviceDayString);
-			String startTime = pike13Conn.stripQuotes(scheduleArray.get(SCHED_SERVICE_TIME_IDX).toString());
+			String eventName = scheduleArray.getString(SCHED_WKLY_EVENT_NAME_IDX);
+			int serviceDay = scheduleArray.getInt(SCHED_SERVICE_DAY_IDX);
+			String startTime = scheduleArray.getString(SCHED_SERVICE_TIME_IDX);
 			int duration = scheduleArray.getInt(SCHED_DURATION_MINS_IDX);
 
 			// Add event to list
 			scheduleList.add(new ScheduleModel(scheduleArray.getInt(SCHED_ID_IDX), serviceDay, startTime, duration, eventName));
-		}
+		});
 
-		conn.disconnect();
 		return scheduleList;
 	}
 
 	public String getRoomField(int scheduleId) {
+		// Use room from bulk lookup if available
+		String roomName = roomCache.get(scheduleId);
+		if (roomName != null)
+			return roomName;
+
+		// Not found in bulk lookup, so query this event by itself
+		ArrayList<Integer> scheduleIds = new ArrayList<Integer>();
+		scheduleIds.add(scheduleId);
+		queryRoomFields(scheduleIds);
+
+		roomName = roomCache.get(scheduleId);
+		if (roomName == null) {
+			roomName = "";
+			roomCache.put(scheduleId, roomName);
+		}
+		return roomName;
+	}
+
+	public Map<Integer, String> getRoomFields(List<Integer> scheduleIds) {
+		// Only query the events not already looked up during this run
+		ArrayList<Integer> newIds = new ArrayList<Integer>(new LinkedHashSet<Integer>(scheduleIds));
+		newIds.removeAll(roomCache.keySet());
+
+		// Pike13 core API accepts a comma-separated list of event occurrence ID's
+		for (int i = 0; i < newIds.size(); i += ROOM_IDS_PER_QUERY)
+			queryRoomFields(newIds.subList(i, Math.min(i + ROOM_IDS_PER_QUERY, newIds.size())));
+
+		HashMap<Integer, String> roomMap = new HashMap<Integer, String>();
+		for (Integer id : scheduleIds) {
+			if (roomCache.containsKey(id))
+				roomMap.put(id, roomCache.get(id));
+		}
+		return roomMap;
+	}
+
+	private void queryRoomFields(List<Integer> scheduleIds) {
+		String idList = "";
+		for (Integer id : scheduleIds) {
+			if (!idList.equals(""))
+				idList += ",";
+			idList += id;
+		}
+
 		// Get URL connection with authorization and send query
-		HttpURLConnection conn = pike13Conn.sendQueryToUrl("event_occurrences?ids=" + scheduleId, "", true);
+		HttpURLConnection conn = pike13Conn.sendQueryToUrl("event_occurrences?ids=" + idList, "", true);
 		if (conn == null)
-			return "";
+			return;
 
 		// Get input stream and read data
 		JsonObject jsonObj = pike13Conn.readCoreInputStream(conn);
 		if (jsonObj == null) {
 			conn.disconnect();
-			return "";
+			return;
 		}
 
 		// Get all scheduled events using Pike13 CORE API
 		JsonArray jsonArray = jsonObj.getJsonArray("event_occurrences");
-		if (jsonArray != null && jsonArray.size() > 0) {
+		for (int i = 0; jsonArray != null && i < jsonArray.size(); i++) {
 			// Get fields for this event in the schedule
-			JsonObject event = jsonArray.getJsonObject(0);
+			JsonObject event = jsonArray.getJsonObject(i);
 			JsonArray resources = event.getJsonArray("resources");
 			String eventName = event.get("name").toString();
 
 			/* Get fields for each scheduled event */
-			if (resources.size() > 0 && eventName.contains("Java@CV")) {
+			String roomName = "";
+			if (resources != null && resources.size() > 0 && eventName.contains("Java@CV")) {
 				// Process resources field by extracting the ROOM field
-				String roomName = "";
-				for (int i = 0; i < resources.size(); i++) {
-					JsonObject res = resources.getJsonObject(i);
+				for (int j = 0; j < resources.size(); j++) {
+					JsonObject res = resources.getJsonObject(j);
 					if (!roomName.equals(""))
 						roomName += ", ";
 					roomName += res.getString("name");
 				}
-				return roomName;
 			}
+			roomCache.put(event.getInt("id"), roomName);
 		}
-
-		conn.disconnect();
-		return "";
 	}
 
 	public ArrayList<CoursesModel> getCourses(String startDate, String endDate) {
@@ -463,27 +555,16 @@ public class Pike13DbImport {
 		// Get URL connection with authorization and send query
 		HttpURLConnection conn = pike13Conn.sendQueryToUrl("event_occurrences", coursesString, false);
 		if (conn == null)
-			return coursesList;
-
-		// Get input stream and read data
-		JsonObject jsonObj = pike13Conn.readInputStream(conn);
-		if (jsonObj == null) {
-			conn.disconnect();
-			return coursesList;
-		}
-		JsonArray jsonArray = jsonObj.getJsonArray("rows");
-
-		for (int i = 0; i < jsonArray.size(); i++) {
-			// Get fields for each event in the schedule
-			JsonArray coursesArray = (JsonArray) jsonArray.get(i);
+			throw new Pike13FetchException("Pike13 'event_occurrences' query failed");
 
+		// Stream rows into courses list
+		pike13Conn.readRowStream(conn, (coursesArray) -> {
 			// Add event to list
 			coursesList.add(new CoursesModel(coursesArray.getInt(COURSES_SCHEDULE_ID_IDX),
-					pike13Conn.stripQuotes(coursesArray.get(COURSES_EVENT_NAME_IDX).toString()),
+					coursesArray.getString(COURSES_EVENT_NAME_IDX),
 					coursesArray.getInt(COURSE_ENROLLMENT_IDX)));
-		}
+		});
 
-		conn.disconnect();
 		return coursesList;
 	}
 
@@ -493,57 +574,43 @@ public class Pike13DbImport {
 		enroll2 = enroll2.replaceFirst("1111-11-11", endDate);
 
 		// Get attendance for all students
-		return getEnrollmentByCmdString(getEnrollmentStudentTracker, enroll2);
+		return getEnrollmentByDateShards(enroll2, startDate, endDate);
 	}
 
 	public void updateStudentTAData(ArrayList<StudentImportModel> students) {
 		// Get URL connection and send the query
 		HttpURLConnection conn = pike13Conn.sendQueryToUrl("staff_members", getStudentTAData, false);
 		if (conn == null)
-			return;
+			throw new Pike13FetchException("Pike13 'staff_members' query failed");
 
-		// Get input stream and read data
-		JsonObject jsonObj = pike13Conn.readInputStream(conn);
-		if (jsonObj == null) {
-			conn.disconnect();
-			return;
-		}
-		JsonArray jsonArray = jsonObj.getJsonArray("rows");
-		int taCount = 0;
+		// Stream rows and update each TA found in the student list
+		StudentIndex<StudentImportModel> studentIndex = StudentIndex.ofImportStudents(students);
+		int[] counts = new int[2]; // Num staff rows, num TA's updated
 
-		for (int i = 0; i < jsonArray.size(); i++) {
+		pike13Conn.readRowStream(conn, (staffArray) -> {
 			// Get fields for each TA. Ignore all TA's without Client ID or not in student list
-			JsonArray staffArray = (JsonArray) jsonArray.get(i);
-			if (staffArray.get(STUDENT_TA_CLIENT_ID_IDX) == null)
-				continue;
+			counts[0]++;
+			if (staffArray.isNull(STUDENT_TA_CLIENT_ID_IDX))
+				return;
 			
-			String clientID = pike13Conn.stripQuotes(staffArray.get(STUDENT_TA_CLIENT_ID_IDX).toString());
-			StudentImportModel ta = findClientID(clientID, students);
+			String clientID = staffArray.getString(STUDENT_TA_CLIENT_ID_IDX);
+			StudentImportModel ta = findClientID(clientID, studentIndex);
 			if (ta == null)
-				continue;
+				return;
 			
-			ta.setStaffData(pike13Conn.stripQuotes(staffArray.get(STUDENT_TA_STAFF_SINCE_DATE_IDX).toString()), 
+			ta.setStaffData(staffArray.getString(STUDENT_TA_STAFF_SINCE_DATE_IDX), 
 					staffArray.getInt(STUDENT_TA_NUM_PAST_EVENTS_IDX));
-			taCount++;
-		}
+			counts[1]++;
+		});
 
-		conn.disconnect();
-		System.out.println("Num Student TA's: " + jsonArray.size() + " (" + taCount + ")");
+		System.out.println("Num Student TA's: " + counts[0] + " (" + counts[1] + ")");
 	}
 
-	private StudentImportModel findClientID(String clientID, ArrayList<StudentImportModel> students) {
+	private StudentImportModel findClientID(String clientID, StudentIndex<StudentImportModel> studentIndex) {
 		if (!clientID.matches("\\d+"))
 			// Old client ID's were not numbers!
 			return null;
 		
-		int s_id = Integer.parseInt(clientID);
-		
-		for (StudentImportModel s : students) {
-			if (s_id == s.getClientID()) {
-				return s;
-			}
-		}
-		return null;
+		return studentIndex.getByClientID(Integer.parseInt(clientID));
 	}
 }
-
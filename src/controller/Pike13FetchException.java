@@ -0,0 +1,21 @@
+package controller;
+
+/**
+ * Pike13FetchException: Thrown when a Pike13 query cannot be completed, so
+ * that the import phase fails as a whole instead of passing a partial row list
+ * on to the database merges (which would treat the missing rows as deleted).
+ *
+ * @author wavis
+ *
+ */
+public class Pike13FetchException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public Pike13FetchException(String message) {
+		super(message);
+	}
+
+	public Pike13FetchException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,72 @@
+package controller;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pike13HttpMetrics: Per-endpoint counters for Pike13 HTTP traffic: requests,
+ * error responses, successful responses read to the end and closed (which
+ * makes their socket eligible for keep-alive), and bytes on the wire vs. bytes
+ * after gzip decoding. HttpURLConnection does not report whether a socket was
+ * actually reused; Pike13StubServer counts client connections for that.
+ *
+ * @author wavis
+ *
+ */
+public class Pike13HttpMetrics {
+	private ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<String, EndpointStats>();
+
+	public void addRequest(String endPoint) {
+		getStats(endPoint).requests.incrementAndGet();
+	}
+
+	public void addError(String endPoint) {
+		getStats(endPoint).errors.incrementAndGet();
+	}
+
+	public void addResponse(String endPoint, long wireBytes, long decodedBytes) {
+		EndpointStats stats = getStats(endPoint);
+		stats.wireBytes.addAndGet(wireBytes);
+		stats.decodedBytes.addAndGet(decodedBytes);
+		stats.readToEnd.incrementAndGet();
+	}
+
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		for (EndpointStats stats : new TreeMap<String, EndpointStats>(endpoints).values()) {
+			long wire = stats.wireBytes.get();
+			long decoded = stats.decodedBytes.get();
+			summary.append("Pike13 ").append(stats.endPoint).append(": ").append(stats.requests.get())
+					.append(" requests, ").append(stats.errors.get()).append(" errors, ").append(stats.readToEnd.get())
+					.append(" read to end, ").append(wire / 1024).append(" KB on wire");
+			if (decoded > 0)
+				summary.append(" (").append(decoded / 1024).append(" KB decoded, ")
+						.append(Math.round(100.0 * wire / decoded)).append("%)");
+			summary.append("\n");
+		}
+		return summary.toString();
+	}
+
+	private EndpointStats getStats(String endPoint) {
+		EndpointStats stats = endpoints.get(endPoint);
+		if (stats == null) {
+			endpoints.putIfAbsent(endPoint, new EndpointStats(endPoint));
+			stats = endpoints.get(endPoint);
+		}
+		return stats;
+	}
+
+	private static class EndpointStats {
+		private String endPoint;
+		private AtomicLong requests = new AtomicLong();
+		private AtomicLong errors = new AtomicLong();
+		private AtomicLong readToEnd = new AtomicLong();
+		private AtomicLong wireBytes = new AtomicLong();
+		private AtomicLong decodedBytes = new AtomicLong();
+
+		private EndpointStats(String endPoint) {
+			this.endPoint = endPoint;
+		}
+	}
+}
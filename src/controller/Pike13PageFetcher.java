@@ -0,0 +1,122 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import model.AsyncLogSink;
+import model.LogDataModel;
+import model.StudentNameModel;
+
+/**
+ * Pike13PageFetcher: Runs independent shards of a Pike13 reporting query on a
+ * bounded thread pool and merges the resulting rows in shard order. Each shard
+ * still walks its own has_more/last_key pages one at a time. If any shard
+ * fails, the whole fetch fails with a Pike13FetchException.
+ *
+ * @author wavis
+ *
+ */
+public class Pike13PageFetcher {
+	// Pike13 throttles API clients with too many simultaneous requests. The number of
+	// requests in flight is capped in Pike13Connect; this only sets the number of shards.
+	public static final int MAX_CONCURRENT_QUERIES = 4;
+	public static final int DEFAULT_CONCURRENT_QUERIES = 4;
+
+	private int concurrency;
+
+	public Pike13PageFetcher(int concurrency) {
+		// Clamp concurrency to Pike13 rate limit
+		if (concurrency < 1)
+			concurrency = 1;
+		else if (concurrency > MAX_CONCURRENT_QUERIES)
+			concurrency = MAX_CONCURRENT_QUERIES;
+		this.concurrency = concurrency;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public <T> ArrayList<T> fetchShards(String endPoint, List<Callable<ArrayList<T>>> shards) {
+		// All shards or nothing: a missing shard would leave a gap in the merged list,
+		// and the merges treat missing rows as removed from Pike13
+		ArrayList<T> rows = new ArrayList<T>();
+
+		// No need for a thread pool when there is nothing to run in parallel
+		if (shards.size() == 1 || concurrency == 1) {
+			for (Callable<ArrayList<T>> shard : shards) {
+				try {
+					rows.addAll(shard.call());
+
+				} catch (Exception e) {
+					throw shardFailed(endPoint, e);
+				}
+			}
+			return rows;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, shards.size()));
+		try {
+			// Merge shard results in the order the shards were created
+			List<Future<ArrayList<T>>> results = pool.invokeAll(shards);
+			for (Future<ArrayList<T>> result : results) {
+				try {
+					rows.addAll(result.get());
+
+				} catch (ExecutionException e) {
+					throw shardFailed(endPoint, e.getCause());
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw shardFailed(endPoint, e);
+
+		} finally {
+			pool.shutdownNow();
+		}
+		return rows;
+	}
+
+	public ArrayList<String[]> splitDateRange(String startDate, String endDate) {
+		// Split inclusive date range into one contiguous range per thread
+		ArrayList<String[]> ranges = new ArrayList<String[]>();
+		LocalDate start = LocalDate.parse(startDate);
+		LocalDate end = LocalDate.parse(endDate);
+		int numDays = Days.daysBetween(start, end).getDays() + 1;
+
+		if (numDays <= 1 || concurrency == 1) {
+			ranges.add(new String[] { startDate, endDate });
+			return ranges;
+		}
+
+		int numShards = Math.min(concurrency, numDays);
+		int daysPerShard = (numDays + numShards - 1) / numShards;
+		while (!start.isAfter(end)) {
+			LocalDate shardEnd = start.plusDays(daysPerShard - 1);
+			if (shardEnd.isAfter(end))
+				shardEnd = end;
+
+			ranges.add(new String[] { start.toString("yyyy-MM-dd"), shardEnd.toString("yyyy-MM-dd") });
+			start = shardEnd.plusDays(1);
+		}
+		return ranges;
+	}
+
+	private Pike13FetchException shardFailed(String endPoint, Throwable e) {
+		e.printStackTrace();
+		AsyncLogSink.insertLogData(LogDataModel.PIKE13_IMPORT_ERROR, new StudentNameModel("", "", false), 0,
+				" for '" + endPoint + "' shard: " + e.getMessage());
+		if (e instanceof Pike13FetchException)
+			return (Pike13FetchException) e;
+		return new Pike13FetchException("Pike13 '" + endPoint + "' shard failed: " + e.getMessage(), e);
+	}
+}
@@ -0,0 +1,101 @@
+package controller;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Pike13Row: One row of a Pike13 report page, filled in by the streaming
+ * parser. Cells are typed (int, string or null) so that callers don't need to
+ * convert JSON values back and forth through strings. A null cell reads as an
+ * empty string or 0.
+ *
+ * @author wavis
+ *
+ */
+public class Pike13Row {
+	private static final int CELL_NULL = 0;
+	private static final int CELL_STRING = 1;
+	private static final int CELL_INT = 2;
+	private static final int CELL_NUMBER = 3;
+
+	private int numCells;
+	private int[] types = new int[32];
+	private int[] ints = new int[32];
+	private String[] strings = new String[32];
+
+	void clear() {
+		numCells = 0;
+	}
+
+	void addNull() {
+		add(CELL_NULL, 0, null);
+	}
+
+	void addString(String value) {
+		add(CELL_STRING, 0, value);
+	}
+
+	void addInt(int value) {
+		add(CELL_INT, value, null);
+	}
+
+	void addNumber(String value) {
+		// Non-integral (or very large) numbers are kept as text
+		add(CELL_NUMBER, 0, value);
+	}
+
+	private void add(int type, int intValue, String stringValue) {
+		if (numCells == types.length) {
+			int newSize = types.length * 2;
+			types = Arrays.copyOf(types, newSize);
+			ints = Arrays.copyOf(ints, newSize);
+			strings = Arrays.copyOf(strings, newSize);
+		}
+		types[numCells] = type;
+		ints[numCells] = intValue;
+		strings[numCells] = stringValue;
+		numCells++;
+	}
+
+	public int size() {
+		return numCells;
+	}
+
+	public boolean isNull(int idx) {
+		return idx >= numCells || types[idx] == CELL_NULL;
+	}
+
+	public boolean isInt(int idx) {
+		return idx < numCells && types[idx] == CELL_INT;
+	}
+
+	public int getInt(int idx) {
+		if (idx >= numCells)
+			return 0;
+
+		switch (types[idx]) {
+		case CELL_INT:
+			return ints[idx];
+		case CELL_STRING:
+			return Integer.parseInt(strings[idx].trim());
+		case CELL_NUMBER:
+			return new BigDecimal(strings[idx]).intValue();
+		default:
+			return 0;
+		}
+	}
+
+	public String getString(int idx) {
+		if (idx >= numCells)
+			return "";
+
+		switch (types[idx]) {
+		case CELL_INT:
+			return Integer.toString(ints[idx]);
+		case CELL_NULL:
+			return "";
+		default:
+			return strings[idx];
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package controller;
+
+/**
+ * Pike13RowHandler: Callback for each row of a Pike13 report page as it is
+ * parsed. The row object is re-used for the next row, so copy out any values
+ * that need to be kept.
+ *
+ * @author wavis
+ *
+ */
+public interface Pike13RowHandler {
+	public void processRow(Pike13Row row);
+}
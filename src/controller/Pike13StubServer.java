@@ -0,0 +1,589 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import model.LocationModel;
+
+/**
+ * Pike13StubServer: Local HTTP server that stands in for the Pike13 tenant, so
+ * paging, retries and concurrency can be load tested offline. Run
+ * StudentDryRunImport against it (base URL argument or "Pike13BaseUrl"
+ * preference); the nightly StudentDataImport writes to the AWS database and
+ * always uses the live Pike13 tenant.
+ *
+ * Reporting queries (/desk/api/v3/reports/[name]/queries) replay the rows
+ * registered for that report, paged with has_more/last_key. The query's
+ * person_id and service_date filters (eq, ne, lt, lte, gt, gte, btw, combined
+ * with and/or) are applied to the rows, so sharded and date-ranged fetches
+ * see only their own rows; conditions on other fields always match. Rows
+ * registered with field names are returned in the query's field order and
+ * are filtered on any of their fields (also starts, emp and nemp), so one
+ * report can serve queries with different fields, as event_occurrences does
+ * for the schedule and the courses. Core API requests
+ * (/api/v2/desk/event_occurrences?ids=...) return the registered occurrences.
+ * Latency, page size and 429/5xx errors are programmable.
+ *
+ * @author wavis
+ *
+ */
+public class Pike13StubServer {
+	private static final String REPORTS_PATH = "/desk/api/v3/reports/";
+	private static final String CORE_PATH = "/api/v2/desk/";
+	private static final Pattern PAGE_LIMIT = Pattern.compile("\"limit\"\\s*:\\s*(\\d+)");
+	private static final Pattern STARTING_AFTER = Pattern.compile("\"starting_after\"\\s*:\\s*\"(\\d*)\"");
+	private static final int DEFAULT_PAGE_SIZE = 500;
+	private static final int NUM_SERVER_THREADS = 8;
+	private static final HashSet<String> FILTER_FIELDS = new HashSet<String>(
+			Arrays.asList("person_id", "service_date"));
+
+	// Synthetic data: students are 100000 + student number, classes match the schedule and locations
+	public static final int FIRST_CLIENT_ID = 100001;
+	static final String[] CLASS_NAMES = { "Java@CV Tue 4:00 Level 1", "Java@CV Sat 10:00 Level 2",
+			"Java@GV Mon 5:30 Level 3" };
+	private static final int[] CLASS_DAYS = { 2, 6, 1 };
+	private static final String[] CLASS_TIMES = { "16:00", "10:00", "17:30" };
+	static final String[] LOCATION_NAMES = { "Carmel Valley", "Gompers" };
+	private static final String[] SCHEDULE_FIELDS = { "service_day", "service_time", "duration_in_minutes",
+			"event_name", "event_occurrence_id", "service_category", "service_type" };
+	private static final String[] COURSE_FIELDS = { "event_id", "event_name", "enrollment_count",
+			"service_category", "service_type" };
+
+	private HttpServer server;
+	private HashMap<String, ArrayList<ReportRow>> reportRows = new HashMap<String, ArrayList<ReportRow>>();
+	private HashMap<Integer, String> eventOccurrences = new HashMap<Integer, String>();
+	private Random random = new Random();
+
+	// Programmable network conditions
+	private volatile int minLatencyMillis = 0;
+	private volatile int maxLatencyMillis = 0;
+	private volatile int pageSize = DEFAULT_PAGE_SIZE;
+	private volatile double rateLimitErrorRate = 0;
+	private volatile double serverErrorRate = 0;
+	private AtomicInteger forcedErrorsLeft = new AtomicInteger(0);
+	private volatile int forcedErrorCode = 503;
+
+	// Request statistics
+	private AtomicInteger numRequests = new AtomicInteger(0);
+	private AtomicInteger numErrors = new AtomicInteger(0);
+	private HashSet<Integer> clientPorts = new HashSet<Integer>();
+
+	public Pike13StubServer(int port) throws IOException {
+		// Port 0 picks any free port
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.setExecutor(Executors.newFixedThreadPool(NUM_SERVER_THREADS));
+		server.createContext(REPORTS_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleReportQuery(exchange);
+			}
+		});
+		server.createContext(CORE_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleCoreQuery(exchange);
+			}
+		});
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Usage: Pike13StubServer [port] [numStudents]
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8013;
+		int numStudents = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		final Pike13StubServer stub = new Pike13StubServer(port);
+		stub.addSyntheticStudents(numStudents);
+		stub.addSyntheticAttendance(numStudents, 20);
+		stub.addSyntheticSchedule();
+		stub.setLatency(50, 250);
+		stub.start();
+		System.out.println("Pike13 stub server running at " + stub.getBaseUrl());
+		System.out.println("Dry run import: StudentDryRunImport " + stub.getBaseUrl());
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				System.out.println("Pike13 stub: " + stub.getNumRequests() + " requests, " + stub.getNumErrors()
+						+ " errors injected, " + stub.getNumConnections() + " connections");
+				stub.stop();
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+	}
+
+	public String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public int getNumRequests() {
+		return numRequests.get();
+	}
+
+	public int getNumErrors() {
+		return numErrors.get();
+	}
+
+	public synchronized int getNumConnections() {
+		// Each client socket has its own port, so this shows how often connections were reused
+		return clientPorts.size();
+	}
+
+	/*
+	 * ------- Response data -------
+	 */
+	public synchronized void addReportRow(String report, String rowJson) {
+		// Row is a JSON array in the report's field order, e.g. [1234,"Jane Doe","2018-09-15"]
+		ArrayList<ReportRow> rows = reportRows.get(report);
+		if (rows == null) {
+			rows = new ArrayList<ReportRow>();
+			reportRows.put(report, rows);
+		}
+		rows.add(new ReportRow(rowJson, null));
+	}
+
+	public synchronized void addReportRow(String report, String[] fields, String rowJson) {
+		// Row values are in the given field order; queries get them in their own field order
+		ArrayList<ReportRow> rows = reportRows.get(report);
+		if (rows == null) {
+			rows = new ArrayList<ReportRow>();
+			reportRows.put(report, rows);
+		}
+		rows.add(new ReportRow(rowJson, fields));
+	}
+
+	public void loadReportRows(String report, String fileName) throws IOException {
+		// Recorded rows: one JSON array per line
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().equals(""))
+					addReportRow(report, line.trim());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public synchronized void addEventOccurrence(int id, String eventName, String room) {
+		eventOccurrences.put(id, "{\"id\":" + id + ",\"name\":\"" + eventName + "\",\"resources\":[{\"name\":\""
+				+ room + "\"}]}");
+	}
+
+	public void addSyntheticStudents(int numStudents) {
+		// Client fields: person_id, first_name, last_name, github, grad_year, gender, home_location_name,
+		// first_visit_date, future_visits, completed_visits, email, account_manager_emails, emergency email,
+		// phone, account_manager_phones, emergency phone, birthdate, current_level, last_exam_score
+		for (int student = 1; student <= numStudents; student++) {
+			int classIdx = student % CLASS_NAMES.length;
+			String location = CLASS_NAMES[classIdx].contains("@CV") ? LOCATION_NAMES[0] : LOCATION_NAMES[1];
+			addReportRow("clients", "[" + (FIRST_CLIENT_ID - 1 + student) + ",\"Student\",\"" + student
+					+ "\",\"student" + student + "\",\"" + (2025 + student % 8) + "\",\""
+					+ (student % 2 == 0 ? "Female" : "Male") + "\",\"" + location + "\",\"2017-09-"
+					+ (10 + student % 20) + "\",4," + (20 + student % 50) + ",\"student" + student
+					+ "@example.com\",\"parent" + student + "@example.com\",\"\",\"(858) 555-0100\","
+					+ "\"(858) 555-0101\",\"\",\"2008-05-" + (10 + student % 18) + "\",\"" + (classIdx + 1)
+					+ "\",\"\"]");
+
+			// Every tenth student is also a TA (staff_members: client ID, staff since date, past events)
+			if (student % 10 == 0)
+				addReportRow("staff_members", "[\"" + (FIRST_CLIENT_ID - 1 + student) + "\",\"2018-06-01\","
+						+ student + "]");
+		}
+	}
+
+	public void addSyntheticAttendance(int numStudents, int visitsPerStudent) {
+		// Enrollment fields: person_id, full_name, service_date, event_name, visit_id, instructor_names,
+		// service_category, state, service_time. Visits fall in the last 20 days, inside the import's date range.
+		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+		int visitID = 1;
+		for (int student = 1; student <= numStudents; student++) {
+			for (int visit = 0; visit < visitsPerStudent; visit++) {
+				int classIdx = student % CLASS_NAMES.length;
+				addReportRow("enrollments", "[" + (FIRST_CLIENT_ID - 1 + student) + ",\"Student " + student + "\",\""
+						+ today.minusDays(1 + visit % 20).toString("yyyy-MM-dd") + "\",\"" + CLASS_NAMES[classIdx]
+						+ "\"," + visitID++ + ",\"Teacher " + (student % 7) + "\",\"class java\",\"completed\",\""
+						+ CLASS_TIMES[classIdx] + "\"]");
+			}
+		}
+	}
+
+	public void addSyntheticSchedule() {
+		// Weekly classes with their rooms, plus two courses; both are event_occurrences queries
+		for (int i = 0; i < CLASS_NAMES.length; i++) {
+			int occurrenceID = 5000 + i;
+			addReportRow("event_occurrences", SCHEDULE_FIELDS, "[" + CLASS_DAYS[i] + ",\"" + CLASS_TIMES[i]
+					+ "\",90,\"" + CLASS_NAMES[i] + "\"," + occurrenceID + ",\"class java\",\"class\"]");
+			addEventOccurrence(occurrenceID, CLASS_NAMES[i], "Room " + (i + 1));
+		}
+		addReportRow("event_occurrences", COURSE_FIELDS,
+				"[7001,\"Summer Slam: Python\",12,\"course slam\",\"course\"]");
+		addReportRow("event_occurrences", COURSE_FIELDS,
+				"[7002,\"Workshop: Arduino\",8,\"course workshop\",\"course\"]");
+	}
+
+	public static ArrayList<LocationModel> getSyntheticLocations() {
+		// Locations normally come from the database; these match the synthetic clients
+		ArrayList<LocationModel> locations = new ArrayList<LocationModel>();
+		locations.add(new LocationModel(1, "CV", LOCATION_NAMES[0], LOCATION_NAMES[0], ""));
+		locations.add(new LocationModel(2, "GV", LOCATION_NAMES[1], LOCATION_NAMES[1], ""));
+		return locations;
+	}
+
+	/*
+	 * ------- Network conditions -------
+	 */
+	public void setLatency(int minMillis, int maxMillis) {
+		minLatencyMillis = minMillis;
+		maxLatencyMillis = Math.max(minMillis, maxMillis);
+	}
+
+	public void setPageSize(int pageSize) {
+		// Pages are the smaller of this and the query's own page limit
+		this.pageSize = Math.max(1, pageSize);
+	}
+
+	public void setErrorRates(double rateLimitErrorRate, double serverErrorRate) {
+		// Fraction of requests answered with 429 and 503
+		this.rateLimitErrorRate = rateLimitErrorRate;
+		this.serverErrorRate = serverErrorRate;
+	}
+
+	public void failNextRequests(int numRequests, int responseCode) {
+		forcedErrorCode = responseCode;
+		forcedErrorsLeft.set(numRequests);
+	}
+
+	/*
+	 * ------- Request handlers -------
+	 */
+	private void handleReportQuery(HttpExchange exchange) throws IOException {
+		String body = readRequestBody(exchange);
+		if (!simulateNetwork(exchange))
+			return;
+
+		// Path is /desk/api/v3/reports/[report]/queries
+		String report = exchange.getRequestURI().getPath().substring(REPORTS_PATH.length());
+		if (report.endsWith("/queries"))
+			report = report.substring(0, report.length() - "/queries".length());
+
+		int limit = pageSize;
+		Matcher matcher = PAGE_LIMIT.matcher(body);
+		if (matcher.find())
+			limit = Math.min(limit, Integer.parseInt(matcher.group(1)));
+
+		// The stub's last_key is simply the offset of the next row
+		int startIdx = 0;
+		matcher = STARTING_AFTER.matcher(body);
+		if (matcher.find() && !matcher.group(1).equals(""))
+			startIdx = Integer.parseInt(matcher.group(1));
+
+		// Field order in the query gives each filter field's column in the rows
+		JsonObject attributes;
+		try (JsonReader reader = Json.createReader(new StringReader(body))) {
+			attributes = reader.readObject().getJsonObject("data").getJsonObject("attributes");
+		} catch (JsonException | ClassCastException | NullPointerException e) {
+			sendResponse(exchange, 400, "{\"errors\":[\"Bad query\"]}");
+			return;
+		}
+		JsonArray fields = attributes.getJsonArray("fields");
+		JsonValue filter = attributes.get("filter");
+
+		StringBuilder response = new StringBuilder();
+		boolean hasMore;
+		synchronized (this) {
+			ArrayList<ReportRow> rows = filterRows(reportRows.get(report), fields, filter);
+			int numRows = rows.size();
+			int endIdx = Math.min(numRows, startIdx + limit);
+			hasMore = endIdx < numRows;
+
+			response.append("{\"data\":{\"type\":\"queries\",\"id\":\"stub\",\"attributes\":{\"rows\":[");
+			for (int i = startIdx; i < endIdx; i++) {
+				if (i > startIdx)
+					response.append(',');
+				response.append(rows.get(i).getJson(fields));
+			}
+			response.append("],\"has_more\":").append(hasMore);
+			if (hasMore)
+				response.append(",\"last_key\":\"").append(endIdx).append('"');
+			response.append(",\"fields\":[]}}}");
+		}
+		sendResponse(exchange, 200, response.toString());
+	}
+
+	private void handleCoreQuery(HttpExchange exchange) throws IOException {
+		readRequestBody(exchange);
+		if (!simulateNetwork(exchange))
+			return;
+
+		String path = exchange.getRequestURI().getPath().substring(CORE_PATH.length());
+		if (!path.equals("event_occurrences")) {
+			sendResponse(exchange, 404, "{\"errors\":[\"Not found\"]}");
+			return;
+		}
+
+		// Return the requested occurrences: ?ids=1,2,3
+		StringBuilder response = new StringBuilder("{\"event_occurrences\":[");
+		String query = exchange.getRequestURI().getQuery();
+		if (query != null && query.startsWith("ids=")) {
+			boolean first = true;
+			synchronized (this) {
+				for (String id : query.substring(4).split(",")) {
+					String occurrence;
+					try {
+						occurrence = eventOccurrences.get(Integer.parseInt(id.trim()));
+					} catch (NumberFormatException e) {
+						continue;
+					}
+					if (occurrence == null)
+						continue;
+					if (!first)
+						response.append(',');
+					response.append(occurrence);
+					first = false;
+				}
+			}
+		}
+		response.append("]}");
+		sendResponse(exchange, 200, response.toString());
+	}
+
+	/*
+	 * ------- Query filters -------
+	 */
+	private ArrayList<ReportRow> filterRows(ArrayList<ReportRow> rows, JsonArray fields, JsonValue filter) {
+		ArrayList<ReportRow> filteredRows = new ArrayList<ReportRow>();
+		if (rows == null)
+			return filteredRows;
+		if (filter == null || fields == null)
+			return rows;
+
+		HashMap<String, Integer> columns = new HashMap<String, Integer>();
+		for (int i = 0; i < fields.size(); i++) {
+			String field = fields.getString(i);
+			if (FILTER_FIELDS.contains(field))
+				columns.put(field, i);
+		}
+
+		for (ReportRow row : rows) {
+			// Named rows are filtered on any of their own fields
+			if (matchesFilter(row.values, row.columns != null ? row.columns : columns, filter))
+				filteredRows.add(row);
+		}
+		return filteredRows;
+	}
+
+	private boolean matchesFilter(JsonArray row, HashMap<String, Integer> columns, JsonValue filter) {
+		// Filter is [op, field, value] or [and/or, [filters]]
+		if (filter.getValueType() != JsonValue.ValueType.ARRAY)
+			return true;
+		JsonArray clause = (JsonArray) filter;
+		String op = clause.getString(0);
+
+		if (op.equals("and") || op.equals("or")) {
+			JsonArray subFilters = clause.getJsonArray(1);
+			for (JsonValue subFilter : subFilters) {
+				boolean match = matchesFilter(row, columns, subFilter);
+				if (op.equals("and") && !match)
+					return false;
+				if (op.equals("or") && match)
+					return true;
+			}
+			return op.equals("and");
+		}
+
+		// Only the filter fields are evaluated, and only if the query selects them
+		Integer column = clause.size() < 2 ? null : columns.get(clause.getString(1));
+		if (column == null || column >= row.size())
+			return true;
+		JsonValue value = row.get(column);
+		if (op.equals("emp") || op.equals("nemp")) {
+			boolean empty = value.getValueType() == JsonValue.ValueType.NULL || getText(value).equals("");
+			return op.equals("emp") == empty;
+		}
+		if (clause.size() < 3)
+			return true;
+
+		switch (op) {
+		case "eq":
+			return compareValues(value, clause.get(2)) == 0;
+		case "ne":
+			return compareValues(value, clause.get(2)) != 0;
+		case "lt":
+			return compareValues(value, clause.get(2)) < 0;
+		case "lte":
+			return compareValues(value, clause.get(2)) <= 0;
+		case "gt":
+			return compareValues(value, clause.get(2)) > 0;
+		case "gte":
+			return compareValues(value, clause.get(2)) >= 0;
+		case "starts":
+			return getText(value).toLowerCase().startsWith(getText(clause.get(2)).toLowerCase());
+		case "btw":
+			JsonArray range = clause.getJsonArray(2);
+			return compareValues(value, range.get(0)) >= 0 && compareValues(value, range.get(1)) <= 0;
+		default:
+			return true;
+		}
+	}
+
+	private int compareValues(JsonValue value, JsonValue filterValue) {
+		// IDs compare as numbers, dates as yyyy-MM-dd strings
+		if (value instanceof JsonNumber && filterValue instanceof JsonNumber)
+			return Long.compare(((JsonNumber) value).longValue(), ((JsonNumber) filterValue).longValue());
+		return getText(value).compareTo(getText(filterValue));
+	}
+
+	private String getText(JsonValue value) {
+		if (value instanceof JsonString)
+			return ((JsonString) value).getString();
+		return value.toString();
+	}
+
+	private boolean simulateNetwork(HttpExchange exchange) throws IOException {
+		numRequests.incrementAndGet();
+		synchronized (this) {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+		}
+
+		// Delay response
+		int latency = minLatencyMillis;
+		if (maxLatencyMillis > minLatencyMillis) {
+			synchronized (random) {
+				latency += random.nextInt(maxLatencyMillis - minLatencyMillis + 1);
+			}
+		}
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// Inject forced errors first, then random ones
+		int errorCode = 0;
+		if (forcedErrorsLeft.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0)
+			errorCode = forcedErrorCode;
+		else {
+			double draw;
+			synchronized (random) {
+				draw = random.nextDouble();
+			}
+			if (draw < rateLimitErrorRate)
+				errorCode = 429;
+			else if (draw < rateLimitErrorRate + serverErrorRate)
+				errorCode = 503;
+		}
+
+		if (errorCode != 0) {
+			numErrors.incrementAndGet();
+			if (errorCode == 429)
+				exchange.getResponseHeaders().set("Retry-After", "1");
+			sendResponse(exchange, errorCode, "{\"errors\":[\"Stub error " + errorCode + "\"]}");
+			return false;
+		}
+		return true;
+	}
+
+	private String readRequestBody(HttpExchange exchange) throws IOException {
+		InputStream inputStream = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int len;
+		while ((len = inputStream.read(buffer)) > 0)
+			body.write(buffer, 0, len);
+		inputStream.close();
+		return body.toString("UTF-8");
+	}
+
+	private void sendResponse(HttpExchange exchange, int responseCode, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+			gzipStream.write(bytes);
+			gzipStream.close();
+			bytes = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(responseCode, bytes.length);
+		OutputStream outputStream = exchange.getResponseBody();
+		outputStream.write(bytes);
+		outputStream.close();
+	}
+
+	private static class ReportRow {
+		private String json;
+		private JsonArray values;
+		private HashMap<String, Integer> columns; // Null if the row is in the query's field order
+
+		private ReportRow(String json, String[] fieldNames) {
+			this.json = json;
+			try (JsonReader reader = Json.createReader(new StringReader(json))) {
+				this.values = reader.readArray();
+			}
+			if (fieldNames != null) {
+				columns = new HashMap<String, Integer>();
+				for (int i = 0; i < fieldNames.length; i++)
+					columns.put(fieldNames[i], i);
+			}
+		}
+
+		private String getJson(JsonArray fields) {
+			if (columns == null || fields == null)
+				return json;
+
+			// Project the named values onto the query's fields; fields the row does not have are null
+			StringBuilder projected = new StringBuilder("[");
+			for (int i = 0; i < fields.size(); i++) {
+				if (i > 0)
+					projected.append(',');
+				Integer column = columns.get(fields.getString(i));
+				projected.append(column == null ? "null" : values.get(column).toString());
+			}
+			return projected.append(']').toString();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.RequestException;
+
+import model.ImportMetrics;
+
+/**
+ * RateLimitedGitHubClient: GitHub client that paces requests with a shared
+ * RateLimiter and retries GETs that hit the rate limit (after waiting for the
+ * reset) or fail with a server error (after a backoff). If given a response
+ * cache, GETs are sent with If-None-Match/If-Modified-Since and a 304 (which
+ * does not count against the rate limit, so its token is given back) is
+ * answered from the cache.
+ *
+ * @author wavis
+ *
+ */
+public class RateLimitedGitHubClient extends GitHubClient {
+	private static final int MAX_ATTEMPTS = 4;
+	private static final int RATE_LIMIT_BURST = 10;
+	private static final double RATE_LIMIT_PER_SECOND = 5000.0 / 3600;
+
+	private RateLimiter rateLimiter = new RateLimiter(RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND);
+	private GithubResponseCache cache;
+
+	public RateLimitedGitHubClient() {
+		this(null);
+	}
+
+	public RateLimitedGitHubClient(GithubResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public GitHubResponse get(GitHubRequest request) throws IOException {
+		for (int i = 0;; i++) {
+			long startTime = System.nanoTime();
+			try {
+				GitHubResponse response = (cache == null) ? super.get(request) : getConditional(request);
+				ImportMetrics.addTime("github.get", startTime);
+				return response;
+
+			} catch (RequestException e) {
+				ImportMetrics.addTime("github.get", startTime);
+				ImportMetrics.addCount("github.errors", 1);
+				if (i == MAX_ATTEMPTS - 1)
+					throw e;
+
+				if (isRateLimitError(e)) {
+					// Rate limiter is now paused until the reset time, so next request waits
+					System.out.println("Github rate limit exceeded, waiting for reset");
+				} else if (RateLimiter.isRetryable(e.getStatus())) {
+					if (!rateLimiter.backoff(i))
+						throw new InterruptedIOException(e.getMessage());
+				} else
+					throw e;
+			}
+		}
+	}
+
+	private GitHubResponse getConditional(GitHubRequest request) throws IOException {
+		// Same as GitHubClient.get, but conditional on the cached validators
+		String uri = request.generateUri();
+		HttpURLConnection httpRequest = createGet(uri);
+		String accept = request.getResponseContentType();
+		if (accept != null)
+			httpRequest.setRequestProperty("Accept", accept);
+
+		GithubResponseCache.CachedResponse cached = cache.get(uri);
+		if (cached != null) {
+			if (cached.getEtag() != null)
+				httpRequest.setRequestProperty("If-None-Match", cached.getEtag());
+			if (cached.getLastModified() != null)
+				httpRequest.setRequestProperty("If-Modified-Since", cached.getLastModified());
+		}
+
+		int code = httpRequest.getResponseCode();
+		updateRateLimits(httpRequest);
+		if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+			// Token was taken before sending; a 304 does not count against the limit
+			rateLimiter.refund();
+			cache.addResult(true);
+			return new CachedGitHubResponse(httpRequest,
+					getBody(request, new ByteArrayInputStream(cached.getBody())), cached.getLink());
+		}
+		if (isOk(code)) {
+			byte[] body = readBody(getStream(httpRequest));
+			String etag = httpRequest.getHeaderField("ETag");
+			String lastModified = httpRequest.getHeaderField("Last-Modified");
+			if (etag != null || lastModified != null)
+				cache.put(uri, etag, lastModified, httpRequest.getHeaderField("Link"), body);
+			cache.addResult(false);
+			return new GitHubResponse(httpRequest, getBody(request, new ByteArrayInputStream(body)));
+		}
+		if (isEmpty(code))
+			return new GitHubResponse(httpRequest, null);
+		throw createException(getStream(httpRequest), code, httpRequest.getResponseMessage());
+	}
+
+	private byte[] readBody(InputStream stream) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int numRead;
+		try {
+			while ((numRead = stream.read(buffer)) != -1)
+				body.write(buffer, 0, numRead);
+		} finally {
+			stream.close();
+		}
+		return body.toByteArray();
+	}
+
+	@Override
+	protected HttpURLConnection configureRequest(HttpURLConnection request) {
+		// Called once for every request, before it is sent; if interrupted while
+		// waiting, the interrupt status is kept and the request goes out anyway
+		rateLimiter.acquire();
+		return super.configureRequest(request);
+	}
+
+	@Override
+	protected GitHubClient updateRateLimits(HttpURLConnection request) {
+		rateLimiter.updateFromResponse(request);
+		return super.updateRateLimits(request);
+	}
+
+	private boolean isRateLimitError(RequestException e) {
+		return e.getStatus() == 429
+				|| (e.getStatus() == 403 && e.getMessage() != null && e.getMessage().contains("rate limit"));
+	}
+
+	private static class CachedGitHubResponse extends GitHubResponse {
+		// A 304 need not repeat the Link header, which paging depends on
+		private String link;
+
+		private CachedGitHubResponse(HttpURLConnection response, Object body, String link) {
+			super(response, body);
+			this.link = link;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			String value = super.getHeader(name);
+			if (value == null && "Link".equalsIgnoreCase(name))
+				return link;
+			return value;
+		}
+	}
+}
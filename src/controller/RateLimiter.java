@@ -0,0 +1,150 @@
+package controller;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RateLimiter: Token bucket shared by all threads talking to one API. Requests
+ * take a token before they are sent; the refill rate adapts to the
+ * X-RateLimit-Remaining/Reset headers so the rest of the budget is spread over
+ * the rest of the window, and Retry-After (or an exhausted budget) pauses
+ * everyone until the server is ready again.
+ *
+ * @author wavis
+ *
+ */
+public class RateLimiter {
+	private static final long BASE_BACKOFF_MSEC = 500;
+	private static final long MAX_BACKOFF_MSEC = 60000;
+	private static final double BUDGET_FRACTION = 0.9;
+
+	private double burstSize;
+	private double defaultRatePerMsec;
+	private double ratePerMsec;
+	private double tokens;
+	private long lastRefill;
+	private int numThrottled = 0;
+
+	public RateLimiter(int burstSize, double requestsPerSecond) {
+		this.burstSize = burstSize;
+		this.defaultRatePerMsec = requestsPerSecond / 1000;
+		this.ratePerMsec = defaultRatePerMsec;
+		this.tokens = burstSize;
+		this.lastRefill = System.currentTimeMillis();
+	}
+
+	public boolean acquire() {
+		// Returns false if interrupted while waiting for a token
+		long waitMsec = reserveToken();
+		if (waitMsec > 0)
+			return sleep(waitMsec);
+		return true;
+	}
+
+	public synchronized void refund() {
+		// Give back the token for a request the server did not count (e.g. a 304)
+		tokens = Math.min(burstSize, tokens + 1);
+	}
+
+	public boolean backoff(int attempt) {
+		// Wait before retrying this request; other threads are not held up
+		return sleep(getBackoffMsec(attempt));
+	}
+
+	public synchronized void updateFromResponse(HttpURLConnection conn) {
+		int responseCode;
+		try {
+			responseCode = conn.getResponseCode();
+		} catch (Exception e) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		refill(now);
+
+		// Retry-After is either delta seconds or an HTTP date
+		long retryAt = 0;
+		String retryAfter = conn.getHeaderField("Retry-After");
+		if (retryAfter != null) {
+			try {
+				retryAt = now + Long.parseLong(retryAfter.trim()) * 1000;
+			} catch (NumberFormatException e) {
+				retryAt = conn.getHeaderFieldDate("Retry-After", 0);
+			}
+		}
+
+		// Reset is either epoch seconds (GitHub) or seconds until reset
+		long resetAt = 0;
+		long reset = conn.getHeaderFieldLong("X-RateLimit-Reset", -1);
+		if (reset > 1000000000L)
+			resetAt = reset * 1000;
+		else if (reset >= 0)
+			resetAt = now + reset * 1000;
+
+		int remaining = conn.getHeaderFieldInt("X-RateLimit-Remaining", -1);
+		if (retryAt > now)
+			pauseUntil(retryAt);
+		else if (remaining == 0 && resetAt > now)
+			pauseUntil(resetAt);
+		else if (responseCode == 429)
+			// Throttled without saying for how long
+			pauseUntil(now + getBackoffMsec(numThrottled++));
+		else if (responseCode < 400)
+			numThrottled = 0;
+
+		if (remaining > 0 && resetAt > now) {
+			// Spread what is left of the budget over the rest of the window
+			ratePerMsec = Math.min(defaultRatePerMsec, remaining * BUDGET_FRACTION / (resetAt - now));
+			tokens = Math.min(tokens, Math.max(1, remaining * BUDGET_FRACTION));
+		} else if (remaining < 0)
+			ratePerMsec = defaultRatePerMsec;
+	}
+
+	public static boolean isRetryable(int responseCode) {
+		return responseCode == 429 || responseCode >= 500;
+	}
+
+	public long getBackoffMsec(int attempt) {
+		// Exponential backoff with jitter, so parallel retries don't line up
+		long backoff = Math.min(MAX_BACKOFF_MSEC, BASE_BACKOFF_MSEC << Math.min(attempt, 16));
+		return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	private synchronized long reserveToken() {
+		// Take a token now, even if that leaves the bucket in debt; the caller
+		// waits until the debt (and any pause) has been paid off.
+		long now = System.currentTimeMillis();
+		refill(now);
+		tokens--;
+
+		long waitMsec = Math.max(0, lastRefill - now);
+		if (tokens < 0)
+			waitMsec += (long) Math.ceil(-tokens / ratePerMsec);
+		return waitMsec;
+	}
+
+	private void pauseUntil(long time) {
+		// No refills until the pause ends, then a single request goes first
+		if (time > lastRefill) {
+			lastRefill = time;
+			tokens = Math.min(tokens, 1);
+		}
+	}
+
+	private void refill(long now) {
+		if (now > lastRefill) {
+			tokens = Math.min(burstSize, tokens + (now - lastRefill) * ratePerMsec);
+			lastRefill = now;
+		}
+	}
+
+	private boolean sleep(long msec) {
+		try {
+			Thread.sleep(msec);
+			return true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
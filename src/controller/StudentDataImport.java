@@ -3,18 +3,20 @@ package controller;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.prefs.Preferences;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 
+import model.AsyncLogSink;
+import model.ImportMetrics;
+import model.ImportWatermarkModel;
 import model.LocationLookup;
 import model.LogDataModel;
 import model.MySqlDatabase;
 import model.MySqlDbImports;
 import model.MySqlDbLogging;
-import model.StudentModel;
 import model.StudentNameModel;
 
 /**
@@ -26,8 +28,13 @@ import model.StudentNameModel;
  *
  */
 public class StudentDataImport {
-	private static final int ATTEND_NUM_DAYS_IN_PAST = 21;
+	static final int ATTEND_NUM_DAYS_IN_PAST = 21;
 	private static final int ATTEND_NUM_DAYS_IN_FUTURE = 120;
+	private static final int NUM_IMPORT_THREADS = 4;
+	private static final int SYNC_OVERLAP_DAYS = 3;
+	private static final int DEFAULT_FULL_SYNC_INTERVAL_DAYS = 7;
+	private static final String ATTEND_WATERMARK = "attendance";
+	private static final String COURSE_ATTEND_WATERMARK = "courseAttendance";
 	private MySqlDatabase sqlDb;
 
 	public static void main(String[] args) {
@@ -51,6 +58,13 @@ public class StudentDataImport {
 		String awsPassword = prefs.get("AWSPassword", "");
 		if (awsPassword.equals(""))
 			awsPassword = readFile("./awsPassword.txt");
+		String githubCacheFile = prefs.get("GithubCacheFile", "./githubCache.dat");
+		int pike13Concurrency = prefs.getInt("Pike13Concurrency", Pike13PageFetcher.DEFAULT_CONCURRENT_QUERIES);
+		int attendBatchSize = prefs.getInt("AttendanceBatchSize", MySqlDbImports.DEFAULT_ATTEND_BATCH_SIZE);
+		boolean incrementalSync = prefs.getBoolean("IncrementalSync", true);
+		int fullSyncInterval = prefs.getInt("FullSyncIntervalDays", DEFAULT_FULL_SYNC_INTERVAL_DAYS);
+		String metricsReportDir = prefs.get("MetricsReportDir", "./metrics");
+		boolean storeMetrics = prefs.getBoolean("StoreImportMetrics", false);
 
 		// Connect to database
 		sqlDb = new MySqlDatabase(awsPassword, MySqlDatabase.STUDENT_IMPORT_SSH_PORT);
@@ -61,45 +75,136 @@ public class StudentDataImport {
 		}
 
 		new MySqlDbLogging(sqlDb);
-		//MySqlDbLogging.insertLogData(LogDataModel.STARTING_TRACKER_IMPORT, new StudentNameModel("", "", false), 0,
+		//AsyncLogSink.insertLogData(LogDataModel.STARTING_TRACKER_IMPORT, new StudentNameModel("", "", false), 0,
 		//		" for " + today.toString("yyyy-MM-dd") + " ***");
 
 		DateTime startTime = new DateTime();
 		
 		MySqlDbImports sqlImportDb = new MySqlDbImports(sqlDb);
+		AsyncLogSink.start(sqlImportDb.getStatementCache());
+		sqlImportDb.setAttendanceBatchSize(attendBatchSize);
 		StudentImportEngine importer = new StudentImportEngine(sqlImportDb);
 		LocationLookup.setLocationData(sqlDb.getLocationList());
 		
 		// Remove log data older than 7 days
 		importer.removeOldLogData(7);
 		
-		// Connect to Pike13 and import data
-		Pike13Connect pike13Conn = new Pike13Connect(pike13Token);
-		Pike13DbImport pike13Api = new Pike13DbImport(sqlImportDb, pike13Conn);
-		importer.importStudentsFromPike13(pike13Api);
-		
-		// Now update active student list and continue imports
-		ArrayList<StudentModel> studentList = sqlImportDb.getActiveStudents();
-		importer.importAttendanceFromPike13(startDateString, pike13Api, studentList);
-		importer.importScheduleFromPike13(pike13Api, studentList);
-		importer.importCoursesFromPike13(pike13Api);
-		importer.importCourseAttendanceFromPike13(startDateString, courseEndDate, pike13Api, studentList);
-
-		// Connect to Github and import data
-		GithubApi githubApi = new GithubApi(sqlImportDb, githubToken);
-		importer.importGithubComments(startDateString, pike13Api, githubApi, studentList);
+		// Only re-fetch attendance since the last run, except when a full reconcile is due
+		String todayString = today.toString("yyyy-MM-dd");
+		ImportWatermarkModel attendMark = sqlImportDb.getImportWatermark(ATTEND_WATERMARK);
+		boolean attendFullSync = !incrementalSync || isFullSyncDue(attendMark, today, fullSyncInterval);
+		String attendSyncDate = attendFullSync ? startDateString : getSyncStartDate(attendMark, startDateString);
+
+		ImportWatermarkModel courseMark = sqlImportDb.getImportWatermark(COURSE_ATTEND_WATERMARK);
+		boolean courseFullSync = !incrementalSync || isFullSyncDue(courseMark, today, fullSyncInterval);
+		String courseSyncDate = courseFullSync ? startDateString : getSyncStartDate(courseMark, startDateString);
+
+		System.out.println("Attendance sync from " + attendSyncDate + (attendFullSync ? " (full)" : "")
+				+ ", course attendance sync from " + courseSyncDate + (courseFullSync ? " (full)" : ""));
+
+		// Connect to Pike13 and Github
+		// Always the live tenant: stub server runs go through StudentDryRunImport
+		Pike13Connect pike13Conn = new Pike13Connect(pike13Token, Pike13Connect.DEFAULT_BASE_URL, pike13Concurrency);
+		Pike13DbImport pike13Api = new Pike13DbImport(pike13Conn, pike13Concurrency);
+		GithubApi githubApi = new GithubApi(githubToken, githubCacheFile);
+
+		// Client ID ranges for the sharded student fetch; read before any phase uses the database
+		int maxClientID = sqlImportDb.getMaxClientID();
+
+		// Pike13 fetches run in parallel, with no database access; each database phase
+		// waits for the data it needs and makes no Pike13 requests.
+		ImportPhaseScheduler scheduler = new ImportPhaseScheduler(NUM_IMPORT_THREADS);
+		scheduler.addPhase("Fetch students", new String[] {}, new String[] { "pike13Students" }, false,
+				() -> importer.fetchStudentsFromPike13(pike13Api, maxClientID));
+		scheduler.addPhase("Import students", new String[] { "pike13Students" }, new String[] { "activeStudents" },
+				true, () -> importer.storeStudents());
+
+		scheduler.addPhase("Fetch attendance", new String[] {}, new String[] { "pike13Attendance" }, false,
+				() -> importer.fetchAttendanceFromPike13(attendSyncDate, pike13Api));
+		scheduler.addPhase("Import attendance", new String[] { "pike13Attendance", "activeStudents" },
+				new String[] { "newStudents" }, true, () -> importer.storeAttendance(attendSyncDate));
+		scheduler.addPhase("Fetch new student attendance", new String[] { "newStudents" },
+				new String[] { "pike13NewStudentAttend" }, false,
+				() -> importer.fetchNewStudentAttendFromPike13(startDateString, pike13Api));
+		scheduler.addPhase("Import new student attendance", new String[] { "pike13NewStudentAttend" },
+				new String[] { "attendance" }, true, () -> importer.storeNewStudentAttend(startDateString));
+		scheduler.addPhase("Save attendance watermark", new String[] { "attendance" }, new String[] {}, true,
+				() -> sqlImportDb.updateImportWatermark(ATTEND_WATERMARK, todayString, attendFullSync));
+
+		scheduler.addPhase("Fetch schedule", new String[] {}, new String[] { "pike13Schedule" }, false,
+				() -> importer.fetchScheduleFromPike13(pike13Api));
+		scheduler.addPhase("Build schedule", new String[] { "pike13Schedule", "activeStudents" },
+				new String[] { "schedule" }, false, () -> importer.buildSchedule(pike13Api));
+		scheduler.addPhase("Import schedule", new String[] { "schedule" }, new String[] {}, true,
+				() -> importer.storeSchedule());
+
+		scheduler.addPhase("Fetch courses", new String[] {}, new String[] { "pike13Courses" }, false,
+				() -> importer.fetchCoursesFromPike13(pike13Api));
+		scheduler.addPhase("Import courses", new String[] { "pike13Courses" }, new String[] {}, true,
+				() -> importer.storeCourses());
+
+		scheduler.addPhase("Fetch course attendance", new String[] {}, new String[] { "pike13CourseAttendance" },
+				false, () -> importer.fetchCourseAttendanceFromPike13(courseSyncDate, courseEndDate, pike13Api));
+		scheduler.addPhase("Import course attendance",
+				new String[] { "pike13CourseAttendance", "activeStudents", "attendance" },
+				new String[] { "courseAttendance" }, true,
+				() -> importer.storeCourseAttendance(courseSyncDate, courseEndDate));
+		scheduler.addPhase("Save course attendance watermark", new String[] { "courseAttendance" }, new String[] {},
+				true, () -> sqlImportDb.updateImportWatermark(COURSE_ATTEND_WATERMARK, todayString, courseFullSync));
+
+		scheduler.addPhase("Fetch incomplete attendance", new String[] {}, new String[] { "pike13IncompleteAttend" },
+				false, () -> importer.fetchIncompleteAttendFromPike13(startDateString, pike13Api));
+		scheduler.addPhase("Match pending github",
+				new String[] { "pike13IncompleteAttend", "activeStudents", "attendance", "courseAttendance" },
+				new String[] { "githubAttendance" }, true, () -> importer.matchPendingGithub(startDateString));
+		scheduler.addPhase("Fetch github comments", new String[] { "githubAttendance" },
+				new String[] { "githubComments" }, false,
+				() -> importer.fetchGithubComments(startDateString, githubApi));
+		scheduler.addPhase("Import github comments", new String[] { "githubComments" }, new String[] {}, true,
+				() -> importer.storeGithubComments());
+
+		scheduler.runPhases();
 
 		DateTime endTime = new DateTime();
 		System.out.println("Run time = " + (endTime.getMillis() - startTime.getMillis()) + " msecs");
+		ImportMetrics.addTimeNanos("run", (endTime.getMillis() - startTime.getMillis()) * 1000000);
+		System.out.println("Statement cache: " + sqlImportDb.getStatementCache().getHits() + " hits, "
+				+ sqlImportDb.getStatementCache().getMisses() + " misses");
+		System.out.print(pike13Conn.getMetrics().getSummary());
 		
-		MySqlDbLogging.insertLogData(LogDataModel.TRACKER_IMPORT_COMPLETE, new StudentNameModel("", "", false), 0,
+		AsyncLogSink.insertLogData(LogDataModel.TRACKER_IMPORT_COMPLETE, new StudentNameModel("", "", false), 0,
 				" for " + today.toString("yyyy-MM-dd") + " ***");
 
+		// Machine-readable timing report, optionally kept in the database for trends
+		ImportMetrics.writeReports(metricsReportDir, todayString);
+		if (storeMetrics)
+			sqlImportDb.storeImportMetrics(todayString, ImportMetrics.getMetrics());
+
+		// Write any log messages still queued before disconnecting
+		AsyncLogSink.shutdown();
+		sqlImportDb.getStatementCache().invalidate();
 		sqlDb.disconnectDatabase();
 		System.exit(0);
 	}
 
-	private String readFile(String filename) {
+	private boolean isFullSyncDue(ImportWatermarkModel watermark, DateTime today, int fullSyncInterval) {
+		// Never synced, or last full reconcile is too old
+		if (watermark.getLastSyncDate().equals("") || watermark.getLastFullSyncDate().equals(""))
+			return true;
+		return watermark.getLastFullSyncDate()
+				.compareTo(today.minusDays(fullSyncInterval).toString("yyyy-MM-dd")) <= 0;
+	}
+
+	private String getSyncStartDate(ImportWatermarkModel watermark, String fullStartDate) {
+		// Overlap the last run to pick up late state changes (e.g. registered -> completed)
+		String syncDate = new LocalDate(watermark.getLastSyncDate()).minusDays(SYNC_OVERLAP_DAYS)
+				.toString("yyyy-MM-dd");
+		if (syncDate.compareTo(fullStartDate) < 0)
+			return fullStartDate;
+		return syncDate;
+	}
+
+	static String readFile(String filename) {
 		try {
 			File file = new File(filename);
 			FileInputStream fis = new FileInputStream(file);
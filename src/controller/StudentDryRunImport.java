@@ -0,0 +1,94 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.prefs.Preferences;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import model.AsyncLogSink;
+import model.AttendanceEventModel;
+import model.InMemoryTrackerStore;
+import model.LocationLookup;
+import model.MySqlDbImports;
+import model.StudentImportModel;
+import model.StudentIndex;
+import model.StudentModel;
+import model.TrackerStore;
+
+/**
+ * The Student Dry Run Import class runs the Pike13 import merges (students,
+ * attendance, schedule and courses) against an InMemoryTrackerStore instead of
+ * the AWS Tracker Database, so nothing is written to the database. Log messages
+ * are printed to the console. This is the entry point for imports against the
+ * Pike13 stub server.
+ *
+ * Usage: StudentDryRunImport [pike13BaseUrl]
+ *
+ * @author wavis
+ *
+ */
+public class StudentDryRunImport {
+	public static void main(String[] args) {
+		Preferences prefs = Preferences.userRoot();
+		String pike13BaseUrl = args.length > 0 ? args[0] : prefs.get("Pike13BaseUrl", Pike13Connect.DEFAULT_BASE_URL);
+		new StudentDryRunImport().importStudentTrackerData(pike13BaseUrl);
+	}
+
+	public void importStudentTrackerData(String pike13BaseUrl) {
+		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+		String startDateString = today.minusDays(StudentDataImport.ATTEND_NUM_DAYS_IN_PAST).toString("yyyy-MM-dd");
+
+		// Retrieve token; no database password is needed
+		Preferences prefs = Preferences.userRoot();
+		String pike13Token = prefs.get("Pike13Token", "");
+		if (pike13Token.equals(""))
+			pike13Token = StudentDataImport.readFile("./pike13Token.txt");
+		int pike13Concurrency = prefs.getInt("Pike13Concurrency", Pike13PageFetcher.DEFAULT_CONCURRENT_QUERIES);
+
+		// Merges run on the in-memory store; log messages go to the console.
+		// Locations are kept in the database, so use the stub server's.
+		AsyncLogSink.startConsole();
+		LocationLookup.setLocationData(Pike13StubServer.getSyntheticLocations());
+		TrackerStore store = new InMemoryTrackerStore();
+		MySqlDbImports sqlImportDb = new MySqlDbImports(store);
+		StudentImportEngine importer = new StudentImportEngine(sqlImportDb);
+
+		System.out.println("Dry run import from " + pike13BaseUrl);
+		DateTime startTime = new DateTime();
+
+		Pike13Connect pike13Conn = new Pike13Connect(pike13Token, pike13BaseUrl, pike13Concurrency);
+		Pike13DbImport pike13Api = new Pike13DbImport(pike13Conn, pike13Concurrency);
+
+		// Students: store starts empty, so the client fetch is not sharded
+		ArrayList<StudentImportModel> pike13Students = pike13Api.getClients(sqlImportDb.getMaxClientID());
+		pike13Api.updateStudentTAData(pike13Students);
+		Collections.sort(pike13Students);
+		sqlImportDb.importStudents(pike13Students);
+		ArrayList<StudentModel> activeStudents = sqlImportDb.getActiveStudents();
+		StudentIndex<StudentModel> activeStudentIndex = StudentIndex.ofStudents(activeStudents);
+
+		// Attendance
+		ArrayList<AttendanceEventModel> pike13Attendance = pike13Api.getAttendance(startDateString);
+		sqlImportDb.importAttendance(startDateString, pike13Attendance, activeStudentIndex, true);
+
+		// Class schedule & courses
+		importer.fetchScheduleFromPike13(pike13Api);
+		importer.storeSchedule();
+		importer.fetchCoursesFromPike13(pike13Api);
+		importer.storeCourses();
+
+		DateTime endTime = new DateTime();
+		System.out.println(pike13Students.size() + " students, " + pike13Attendance.size()
+				+ " attendance records imported from Pike13");
+		System.out.println("Store: " + activeStudents.size() + " active students, "
+				+ store.getAllEvents(startDateString).size() + " attendance, " + store.getClassSchedule().size()
+				+ " classes, " + store.getCourseSchedule().size() + " courses");
+		System.out.println("Run time = " + (endTime.getMillis() - startTime.getMillis()) + " msecs");
+		System.out.print(pike13Conn.getMetrics().getSummary());
+
+		AsyncLogSink.shutdown();
+		System.exit(0);
+	}
+}
@@ -2,17 +2,20 @@ package controller;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import model.AttendanceEventModel;
 import model.CoursesModel;
+import model.GithubCommentModel;
 import model.MySqlDbImports;
 import model.MySqlDbLogging;
 import model.PendingGithubModel;
 import model.ScheduleModel;
 import model.StudentImportModel;
+import model.StudentIndex;
 import model.StudentModel;
 
 public class StudentImportEngine {
@@ -24,6 +27,23 @@ public class StudentImportEngine {
 
 	MySqlDbImports sqlImportDb;
 
+	// Data handed from each Pike13 fetch phase to its database phase
+	private ArrayList<StudentImportModel> pike13Students;
+	private ArrayList<StudentModel> activeStudents;
+	private StudentIndex<StudentModel> activeStudentIndex;
+	private ArrayList<AttendanceEventModel> pike13Attendance;
+	private ArrayList<AttendanceEventModel> pike13CourseAttendance;
+	private ArrayList<AttendanceEventModel> pike13IncompleteAttend;
+	private ArrayList<StudentModel> newStudents;
+	private ArrayList<AttendanceEventModel> pike13NewStudentAttend;
+	private ArrayList<StudentModel> caughtUpStudents;
+	private ArrayList<ScheduleModel> pike13Schedule;
+	private ArrayList<CoursesModel> pike13Courses;
+	private int numPendingGithubProcessed;
+	private ArrayList<AttendanceEventModel> githubAttendList;
+	private ArrayList<GithubCommentModel> githubCommentUpdates;
+	private ArrayList<GithubCommentModel> githubEmptyUpdates;
+
 	public StudentImportEngine(MySqlDbImports sqlImportDb) {
 		this.sqlImportDb = sqlImportDb;
 	}
@@ -32,64 +52,88 @@ public class StudentImportEngine {
 		MySqlDbLogging.removeOldLogData(numDays);
 	}
 
-	public void importStudentsFromPike13(Pike13DbImport pike13Api) {
+	public void fetchStudentsFromPike13(Pike13DbImport pike13Api, int maxClientID) {
 		// Get data from Pike13, then update student TA data from Staff DB
-		ArrayList<StudentImportModel> studentList = pike13Api.getClients();
-		pike13Api.updateStudentTAData(studentList);
+		pike13Students = pike13Api.getClients(maxClientID);
+		pike13Api.updateStudentTAData(pike13Students);
+		Collections.sort(pike13Students);
+	}
+
+	public void storeStudents() {
 		sqlImportDb.updateMissingCurrentClass();
 		sqlImportDb.updateRegisteredClass();
-		Collections.sort(studentList);
 
 		// Update changes in database
-		if (studentList.size() > 0) {
-			sqlImportDb.importStudents(studentList);
-			System.out.println(studentList.size() + " students imported from Pike13");
+		if (pike13Students.size() > 0) {
+			sqlImportDb.importStudents(pike13Students);
+			System.out.println(pike13Students.size() + " students imported from Pike13");
 		}
+
+		// Now update active student list for the remaining imports
+		activeStudents = sqlImportDb.getActiveStudents();
+		activeStudentIndex = StudentIndex.ofStudents(activeStudents);
 	}
 
-	public void importAttendanceFromPike13(String startDate, Pike13DbImport pike13Api, ArrayList<StudentModel> studentList) {
+	public void fetchAttendanceFromPike13(String startDate, Pike13DbImport pike13Api) {
 		// Get attendance data from Pike13 for all students
-		ArrayList<AttendanceEventModel> eventList = pike13Api.getAttendance(startDate);
+		pike13Attendance = pike13Api.getAttendance(startDate);
+	}
 
-		// Update changes in database
-		if (eventList.size() > 0) {
+	public void storeAttendance(String syncStartDate) {
+		// Update changes in database; only the synced window is compared
+		if (pike13Attendance.size() > 0) {
 			// Import attendance and then re-sort attendance list
-			sqlImportDb.importAttendance(startDate, eventList, studentList, true);
+			sqlImportDb.importAttendance(syncStartDate, pike13Attendance, activeStudentIndex, true);
 			sqlImportDb.createSortedAttendanceList();
-			System.out.println(eventList.size() + " attendance records imported from Pike13");
+			System.out.println(pike13Attendance.size() + " attendance records imported from Pike13");
 		}
 
+		// New and returned students need their 'missing' attendance caught up
+		newStudents = sqlImportDb.getStudentsUsingFlag("NewStudent");
+	}
+
+	public void fetchNewStudentAttendFromPike13(String startDate, Pike13DbImport pike13Api) {
 		// Get 'missing' attendance for new and returned students
-		ArrayList<StudentModel> newStudents = sqlImportDb.getStudentsUsingFlag("NewStudent");
-		if (newStudents.size() > 0) {
-			eventList = pike13Api.getMissingAttendance(startDate, newStudents);
-			if (eventList.size() > 0) {
-				sqlImportDb.importAttendance(startDate, eventList, studentList, false);
-				System.out.println(eventList.size() + " new student attendance records imported from Pike13");
-			}
+		caughtUpStudents = new ArrayList<StudentModel>();
+		if (newStudents.size() > 0)
+			pike13NewStudentAttend = pike13Api.getMissingAttendance(startDate, newStudents, caughtUpStudents);
+		else
+			pike13NewStudentAttend = new ArrayList<AttendanceEventModel>();
+	}
+
+	public void storeNewStudentAttend(String startDate) {
+		if (pike13NewStudentAttend.size() > 0) {
+			sqlImportDb.importAttendance(startDate, pike13NewStudentAttend, activeStudentIndex, false);
+			System.out.println(pike13NewStudentAttend.size() + " new student attendance records imported from Pike13");
 		}
 
+		// Set 'NewStudent' flag back to false for all students caught up
+		if (caughtUpStudents.size() > 0)
+			sqlImportDb.updateStudentFlags(caughtUpStudents, "NewStudent", 0);
+
 		// Delete 'registered' attendance that has expired
-		eventList = sqlImportDb.getExpiredEvents(startDate);
+		ArrayList<AttendanceEventModel> eventList = sqlImportDb.getExpiredEvents(startDate);
 		if (eventList.size() > 0) {
 			sqlImportDb.deleteExpiredAttendance(eventList);
 			System.out.println(eventList.size() + " expired attendance records removed");
 		}
 	}
 
-	public void importCourseAttendanceFromPike13(String startDate, String endDate, Pike13DbImport pike13Api, ArrayList<StudentModel> studentList) {
+	public void fetchCourseAttendanceFromPike13(String startDate, String endDate, Pike13DbImport pike13Api) {
 		// Get course attendance data from Pike13 for all students
-		ArrayList<AttendanceEventModel> eventList = pike13Api.getCourseAttendance(startDate, endDate);
+		pike13CourseAttendance = pike13Api.getCourseAttendance(startDate, endDate);
+	}
 
+	public void storeCourseAttendance(String startDate, String endDate) {
 		// Update changes in database
-		if (eventList.size() > 0) {
-			sqlImportDb.importAttendance(startDate, eventList, studentList, false);
-			System.out.println(eventList.size() + " course attendance records imported from Pike13, " + startDate
-					+ " to " + endDate);
+		if (pike13CourseAttendance.size() > 0) {
+			sqlImportDb.importAttendance(startDate, pike13CourseAttendance, activeStudentIndex, false);
+			System.out.println(pike13CourseAttendance.size() + " course attendance records imported from Pike13, "
+					+ startDate + " to " + endDate);
 		}
 	}
 
-	public void importScheduleFromPike13(Pike13DbImport pike13Api, ArrayList<StudentModel> studentList) {
+	public void fetchScheduleFromPike13(Pike13DbImport pike13Api) {
 		String startDate = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"))
 				.minusDays(SCHEDULE_DAYS_IN_PAST).toString("yyyy-MM-dd");
 
@@ -108,93 +152,71 @@ public class StudentImportEngine {
 			}
 			filteredList.add(lastUpdate);
 		}
+		pike13Schedule = filteredList;
+	}
 
+	public void buildSchedule(Pike13DbImport pike13Api) {
 		// Update student age fields and count
-		updateScheduleData(filteredList, pike13Api, studentList);
+		updateScheduleData(pike13Schedule, pike13Api, activeStudents);
+	}
 
+	public void storeSchedule() {
 		// Update changes in database
-		if (filteredList.size() > 0) {
-			sqlImportDb.importSchedule(filteredList);
-			System.out.println(filteredList.size() + " schedule records imported from Pike13");
+		if (pike13Schedule.size() > 0) {
+			sqlImportDb.importSchedule(pike13Schedule);
+			System.out.println(pike13Schedule.size() + " schedule records imported from Pike13");
 		}
 	}
 
 	private void updateScheduleData(ArrayList<ScheduleModel> schedule, Pike13DbImport pike13Api, ArrayList<StudentModel> students) {
+		// Create an empty aggregate for each class name in the schedule
+		HashMap<String, ClassAggregate> classAggregates = new HashMap<String, ClassAggregate>();
+		for (ScheduleModel sched : schedule)
+			classAggregates.putIfAbsent(sched.getClassName().trim(), new ClassAggregate());
+
+		// Single pass over students, adding each to its current and registered class
+		for (StudentModel stud : students) {
+			// Only process students who are in levels 0 through 8
+			if (!stud.getCurrentLevel().equals("") && stud.getCurrentLevel().charAt(0) > '8')
+				continue;
+
+			ClassAggregate currClass = classAggregates.get(stud.getCurrentClass().trim());
+			ClassAggregate regClass = classAggregates.get(stud.getRegisterClass().trim());
+			if (currClass != null)
+				currClass.addStudent(stud);
+			if (regClass != null && regClass != currClass)
+				regClass.addStudent(stud);
+		}
+
+		// Look up rooms for every class with students in a few bulk queries
+		ArrayList<Integer> roomScheduleIds = new ArrayList<Integer>();
+		for (ScheduleModel sched : schedule) {
+			if (classAggregates.get(sched.getClassName().trim()).attCount > 0)
+				roomScheduleIds.add(sched.getScheduleID());
+		}
+		pike13Api.getRoomFields(roomScheduleIds);
+
 		// Update the age fields and the attendance count for each class in schedule
 		for (ScheduleModel sched : schedule) {
 			String className = sched.getClassName().trim();
-			int attCount = 0, ageCount = 0;
-			Double ageMin = 0.0, ageMax = 0.0, ageAvg = 0.0, ageTot = 0.0;
-			int[][] moduleCnt = new int[MAX_CLASS_LEVEL + 1][10]; // Curr count by levels 0-8, for modules 0-9
-			int[] levelCnt = new int[MAX_CLASS_LEVEL + 1];        // Student count by level for this class
-
-			for (StudentModel stud : students) {
-				// Only process students who are in levels 0 through 8
-				if (!stud.getCurrentLevel().equals("") && stud.getCurrentLevel().charAt(0) > '8')
-					continue;
-
-				// Update for each student in this class
-				if (className.equals(stud.getCurrentClass().trim()) || className.equals(stud.getRegisterClass().trim())) {
-					attCount++; // Update attendance for this class
-
-					// Increment count for current level
-					int level = 0;
-					if (!stud.getCurrentLevel().equals(""))
-						level = Integer.parseInt(stud.getCurrentLevel());
-					levelCnt[level]++;
-
-					// Update min, max age
-					if (stud.getAge() > 0) {
-						ageCount++;
-						ageTot += stud.getAge();
-						if (ageMin == 0 || stud.getAge() < ageMin)
-							ageMin = stud.getAge();
-						if (stud.getAge() > ageMax)
-							ageMax = stud.getAge();
-					}
-
-					// Update count per level & module
-					if (stud.getCurrentModule() != null && !stud.getCurrentModule().equals("")
-							&& stud.getCurrentModule().charAt(0) >= '0' && stud.getCurrentModule().charAt(0) <= '9')
-						moduleCnt[level][stud.getCurrentModule().charAt(0) - '0']++;
-				}
-			}
+			ClassAggregate agg = classAggregates.get(className);
 
 			// If any students in this scheduled class, update the class level field
-			if (attCount > 0) {
-				String levelString = "";
-				for (int i = 0; i < levelCnt.length; i++) { // Loop thru each level
-					if (levelCnt[i] > 0) {
-						String moduleString = "";
-						for (int j = 0; j < 10; j++) { // Loop thru each model for this level
-							if (moduleCnt[i][j] > 0) {
-								if (moduleString.equals(""))
-									moduleString = " (Mod ";
-								else
-									moduleString += ", ";
-								moduleString += j;
-							}
-						}
-						if (!moduleString.equals(""))
-							moduleString += ")";
-						if (!levelString.equals(""))
-							levelString += ", ";
-						levelString += levelCnt[i] + "@L" + i + moduleString;
-					}
-				}
+			if (agg.attCount > 0) {
+				String levelString = agg.getLevelString();
 				
 				// Update room field
 				String room = getRoomFromScheduleID(sched.getScheduleID(), pike13Api);
 				boolean roomMismatch = checkRoomMismatch(className, room, levelString);
 
 				// Update schedule with attendance and level info
-				if (ageCount > 0) {
-					ageAvg = ageTot / ageCount;
-					sched.setMiscSchedFields(attCount, ageMin.toString().substring(0, 4),
-							ageMax.toString().substring(0, 4), ageAvg.toString().substring(0, 4), levelString, 
+				if (agg.ageCount > 0) {
+					Double ageAvg = agg.ageTot / agg.ageCount;
+					sched.setMiscSchedFields(agg.attCount, agg.ageMin.toString().substring(0, 4),
+							agg.ageMax.toString().substring(0, 4), ageAvg.toString().substring(0, 4), levelString, 
 							room, roomMismatch);
 				} else
-					sched.setMiscSchedFields(attCount, "", "", "", levelString, room, roomMismatch);
+					sched.setMiscSchedFields(agg.attCount, "", "", "", levelString, room, roomMismatch);
 				
 			} else {
 				sched.setMiscSchedFields(0, "", "", "", "", "", false);
@@ -202,6 +224,62 @@ public class StudentImportEngine {
 		}
 	}
 
+	private static class ClassAggregate {
+		private int attCount = 0, ageCount = 0;
+		private Double ageMin = 0.0, ageMax = 0.0, ageTot = 0.0;
+		private int[][] moduleCnt = new int[MAX_CLASS_LEVEL + 1][10]; // Curr count by levels 0-8, for modules 0-9
+		private int[] levelCnt = new int[MAX_CLASS_LEVEL + 1];        // Student count by level for this class
+
+		private void addStudent(StudentModel stud) {
+			attCount++; // Update attendance for this class
+
+			// Increment count for current level
+			int level = 0;
+			if (!stud.getCurrentLevel().equals(""))
+				level = Integer.parseInt(stud.getCurrentLevel());
+			levelCnt[level]++;
+
+			// Update min, max age
+			if (stud.getAge() > 0) {
+				ageCount++;
+				ageTot += stud.getAge();
+				if (ageMin == 0 || stud.getAge() < ageMin)
+					ageMin = stud.getAge();
+				if (stud.getAge() > ageMax)
+					ageMax = stud.getAge();
+			}
+
+			// Update count per level & module
+			if (stud.getCurrentModule() != null && !stud.getCurrentModule().equals("")
+					&& stud.getCurrentModule().charAt(0) >= '0' && stud.getCurrentModule().charAt(0) <= '9')
+				moduleCnt[level][stud.getCurrentModule().charAt(0) - '0']++;
+		}
+
+		private String getLevelString() {
+			String levelString = "";
+			for (int i = 0; i < levelCnt.length; i++) { // Loop thru each level
+				if (levelCnt[i] > 0) {
+					String moduleString = "";
+					for (int j = 0; j < 10; j++) { // Loop thru each model for this level
+						if (moduleCnt[i][j] > 0) {
+							if (moduleString.equals(""))
+								moduleString = " (Mod ";
+							else
+								moduleString += ", ";
+							moduleString += j;
+						}
+					}
+					if (!moduleString.equals(""))
+						moduleString += ")";
+					if (!levelString.equals(""))
+						levelString += ", ";
+					levelString += levelCnt[i] + "@L" + i + moduleString;
+				}
+			}
+			return levelString;
+		}
+	}
+
 	private String getRoomFromScheduleID (int scheduleID, Pike13DbImport pike13Api) {
 		String roomName = pike13Api.getRoomField(scheduleID);
 		
@@ -228,44 +306,77 @@ public class StudentImportEngine {
 		return false;
 	}
 
-	public void importCoursesFromPike13(Pike13DbImport pike13Api) {
+	public void fetchCoursesFromPike13(Pike13DbImport pike13Api) {
 		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
 		String startDate = today.minusDays(COURSE_DAYS_IN_PAST).toString("yyyy-MM-dd");
 		String endDate = today.plusDays(COURSE_DAYS_IN_FUTURE).toString("yyyy-MM-dd");
 
 		// Get data from Pike13
-		ArrayList<CoursesModel> coursesList = pike13Api.getCourses(startDate, endDate);
+		pike13Courses = pike13Api.getCourses(startDate, endDate);
+	}
 
+	public void storeCourses() {
 		// Update changes in database
-		if (coursesList.size() > 0) {
-			sqlImportDb.importCourses(coursesList);
-			System.out.println(coursesList.size() + " course records imported from Pike13");
+		if (pike13Courses.size() > 0) {
+			sqlImportDb.importCourses(pike13Courses);
+			System.out.println(pike13Courses.size() + " course records imported from Pike13");
 		}
 	}
 
-	public void importGithubComments(String startDate, Pike13DbImport pike13Api, GithubApi githubApi, ArrayList<StudentModel> studentList) {
+	public void fetchIncompleteAttendFromPike13(String startDate, Pike13DbImport pike13Api) {
+		pike13IncompleteAttend = pike13Api.getIncompleteAttend(startDate);
+		System.out.println(pike13IncompleteAttend.size() + " incomplete attendance records imported from Pike13");
+	}
+
+	public void matchPendingGithub(String startDate) {
 		// Update github comments from "pending github" table.
 		// This table is populated each time a student commits to a league github classroom.
 		ArrayList<PendingGithubModel> githubList = sqlImportDb.getPendingGithubEvents();
 		ArrayList<AttendanceEventModel> attendList = sqlImportDb.getEventsWithNoComments(startDate, 0, true);
-		ArrayList<AttendanceEventModel> incompAttendList = pike13Api.getIncompleteAttend(startDate);
-		System.out.println(incompAttendList.size() + " incomplete attendance records imported from Pike13");
+		sqlImportDb.loadStudentLevels();
+
+		try {
+			int origGithubListSize = githubList.size();
+			if (attendList.size() > 0)
+				sqlImportDb.updatePendingGithubComments(githubList, startDate, attendList, pike13IncompleteAttend,
+						activeStudentIndex);
+			numPendingGithubProcessed = origGithubListSize - githubList.size();
+
+			// Get list of events with missing comments, for the Github fetch
+			githubAttendList = sqlImportDb.getEventsWithNoComments(startDate, 0, false);
 
-		int origGithubListSize = githubList.size();
-		if (attendList.size() > 0)
-			sqlImportDb.updatePendingGithubComments(githubList, startDate, attendList, incompAttendList, studentList);
+		} finally {
+			sqlImportDb.clearStudentLevels();
+		}
+	}
+
+	public void fetchGithubComments(String startDate, GithubApi githubApi) {
+		// Import Github comments that are not in git classroom
+		githubCommentUpdates = new ArrayList<GithubCommentModel>();
+		githubEmptyUpdates = new ArrayList<GithubCommentModel>();
+		if (githubAttendList.size() > 0) {
+			githubCommentUpdates = githubApi.fetchGitComments(startDate, githubAttendList);
+
+			// Remaining null comments are marked to show event was processed
+			githubEmptyUpdates = githubApi.getEmptyCommentUpdates(githubAttendList);
+		}
+	}
 
-		// Get list of events with missing comments
-		attendList = sqlImportDb.getEventsWithNoComments(startDate, 0, false);
+	public void storeGithubComments() {
+		if (githubAttendList.size() == 0)
+			return;
 
-		if (attendList.size() > 0) {
-			// Import Github comments that are not in git classroom
-			githubApi.importGitComments(startDate, attendList);
+		sqlImportDb.loadStudentLevels();
+		try {
+			if (githubCommentUpdates.size() > 0)
+				sqlImportDb.appendAttendanceComments(githubCommentUpdates);
+			if (githubEmptyUpdates.size() > 0)
+				sqlImportDb.updateAttendanceComments(githubEmptyUpdates);
 
-			// Update any remaining null comments to show event was processed
-			githubApi.updateEmptyGithubComments(attendList);
+			System.out.println((githubAttendList.size() + numPendingGithubProcessed) + " github records processed");
 
-			System.out.println((attendList.size() + (origGithubListSize - githubList.size())) + " github records processed");
+		} finally {
+			sqlImportDb.clearStudentLevels();
 		}
 	}
 }
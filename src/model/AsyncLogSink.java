@@ -0,0 +1,228 @@
+package model;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.mysql.jdbc.exceptions.jdbc4.CommunicationsException;
+import com.mysql.jdbc.exceptions.jdbc4.MySQLNonTransientConnectionException;
+
+/**
+ * AsyncLogSink: Non-blocking replacement for MySqlDbLogging.insertLogData.
+ * Log rows go into a bounded queue and a background writer inserts them in
+ * batches, so error paths in the import loops never wait on the database.
+ *
+ * Identical messages (same type, student and text) are only written once per
+ * run. When the queue is full, new messages are dropped and counted rather
+ * than blocking the caller. Until start() is called, messages are written
+ * directly through MySqlDbLogging as before. Runs without a database (such as
+ * dry runs on InMemoryTrackerStore) use startConsole(), which prints each
+ * message instead.
+ *
+ * @author wavis
+ *
+ */
+public class AsyncLogSink {
+	public static final int QUEUE_CAPACITY = 10000;
+	private static final int MAX_BATCH_SIZE = 500;
+	private static final int LOG_APPEND_WIDTH = 120;
+	private static final long SHUTDOWN_WAIT_MSEC = 30000;
+
+	private static volatile AsyncLogSink sink = null;
+
+	private static final String INSERT_LOG_SQL = "INSERT INTO LogData (ClientID, LogType, StudentName, AppendedString, "
+			+ "LogDate) VALUES (?, ?, ?, ?, ?);";
+
+	private PreparedStatementCache stmtCache;
+	private ArrayBlockingQueue<LogEntry> queue = new ArrayBlockingQueue<LogEntry>(QUEUE_CAPACITY);
+	private ConcurrentHashMap<String, Boolean> messagesSeen = new ConcurrentHashMap<String, Boolean>();
+	private AtomicInteger numCoalesced = new AtomicInteger(0);
+	private AtomicInteger numDropped = new AtomicInteger(0);
+	private volatile boolean stopping = false;
+	private Thread writer;
+
+	private AsyncLogSink(PreparedStatementCache stmtCache) {
+		this.stmtCache = stmtCache;
+		writer = new Thread("AsyncLogSink") {
+			public void run() {
+				writeEntries();
+			}
+		};
+		writer.setDaemon(true);
+	}
+
+	public static synchronized void start(PreparedStatementCache stmtCache) {
+		// Shares the import's connection, and its reconnects, through the statement cache
+		if (sink == null) {
+			sink = new AsyncLogSink(stmtCache);
+			sink.writer.start();
+		}
+	}
+
+	public static synchronized void startConsole() {
+		// No database: messages are printed rather than inserted into LogData
+		start(null);
+	}
+
+	public static synchronized void shutdown() {
+		// Write everything still queued, then go back to writing directly
+		if (sink == null)
+			return;
+
+		AsyncLogSink oldSink = sink;
+		sink = null;
+		oldSink.stopping = true;
+		try {
+			oldSink.writer.join(SHUTDOWN_WAIT_MSEC);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (oldSink.numCoalesced.get() > 0 || oldSink.numDropped.get() > 0)
+			System.out.println("Log sink: " + oldSink.numCoalesced.get() + " duplicate messages skipped, "
+					+ oldSink.numDropped.get() + " messages dropped (queue full)");
+	}
+
+	public static void insertLogData(int logType, StudentNameModel studentNameModel, int clientID,
+			String appendedString) {
+		AsyncLogSink currSink = sink;
+		if (currSink == null)
+			MySqlDbLogging.insertLogData(logType, studentNameModel, clientID, appendedString);
+		else
+			currSink.enqueue(logType, studentNameModel, clientID, appendedString);
+	}
+
+	private void enqueue(int logType, StudentNameModel studentNameModel, int clientID, String appendedString) {
+		String studentName = (studentNameModel == null) ? null : studentNameModel.toString();
+		if (appendedString == null)
+			appendedString = "";
+		else if (appendedString.length() >= LOG_APPEND_WIDTH)
+			appendedString = appendedString.substring(0, LOG_APPEND_WIDTH);
+
+		// Coalesce identical messages for the rest of the run
+		String key = logType + "|" + clientID + "|" + studentName + "|" + appendedString;
+		if (messagesSeen.putIfAbsent(key, Boolean.TRUE) != null) {
+			numCoalesced.incrementAndGet();
+			return;
+		}
+
+		// Overflow policy: drop the new message rather than stall the import
+		LogEntry entry = new LogEntry(logType, studentName, clientID, appendedString,
+				new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd HH:mm:ss"));
+		if (!queue.offer(entry)) {
+			messagesSeen.remove(key);
+			numDropped.incrementAndGet();
+		}
+	}
+
+	private void writeEntries() {
+		ArrayList<LogEntry> batch = new ArrayList<LogEntry>();
+		while (true) {
+			try {
+				LogEntry first = queue.poll(1, TimeUnit.SECONDS);
+				if (first != null)
+					batch.add(first);
+
+			} catch (InterruptedException e) {
+				// Writer is only stopped through shutdown()
+			}
+
+			queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+			if (batch.size() > 0) {
+				insertBatch(batch);
+				batch.clear();
+			} else if (stopping)
+				return;
+		}
+	}
+
+	private void insertBatch(ArrayList<LogEntry> batch) {
+		if (stmtCache == null) {
+			for (LogEntry entry : batch)
+				System.out.println("Log " + entry.logType + ": " + (entry.studentName == null ? "" : entry.studentName)
+						+ " (" + entry.clientID + ")" + entry.appendedString);
+			return;
+		}
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement insertLogStmt = stmtCache.prepare(INSERT_LOG_SQL);
+				for (LogEntry entry : batch) {
+					setLogFields(insertLogStmt, entry);
+					insertLogStmt.addBatch();
+				}
+
+				insertLogStmt.executeBatch();
+				return;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("AsyncLogSink: " + e1.getMessage());
+					stmtCache.reconnectDatabase();
+				}
+
+			} catch (BatchUpdateException e2) {
+				// Batch is sent as one multi-row insert, so one bad row fails them all
+				insertRows(batch);
+				return;
+
+			} catch (SQLException | NullPointerException e3) {
+				e3.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	private void insertRows(ArrayList<LogEntry> batch) {
+		// Rows that fail on their own (such as duplicate entries) are skipped
+		for (LogEntry entry : batch) {
+			try {
+				PreparedStatement insertLogStmt = stmtCache.prepare(INSERT_LOG_SQL);
+				setLogFields(insertLogStmt, entry);
+				insertLogStmt.executeUpdate();
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				System.out.println("AsyncLogSink: " + e1.getMessage());
+				return;
+
+			} catch (SQLException e2) {
+				// Skip this row only
+			}
+		}
+	}
+
+	private void setLogFields(PreparedStatement insertLogStmt, LogEntry entry) throws SQLException {
+		int col = 1;
+		insertLogStmt.setInt(col++, entry.clientID);
+		insertLogStmt.setInt(col++, entry.logType);
+		insertLogStmt.setString(col++, entry.studentName);
+		insertLogStmt.setString(col++, entry.appendedString);
+		insertLogStmt.setString(col++, entry.logDate);
+	}
+
+	private static class LogEntry {
+		private int logType;
+		private String studentName;
+		private int clientID;
+		private String appendedString;
+		private String logDate;
+
+		private LogEntry(int logType, String studentName, int clientID, String appendedString, String logDate) {
+			this.logType = logType;
+			this.studentName = studentName;
+			this.clientID = clientID;
+			this.appendedString = appendedString;
+			this.logDate = logDate;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package model;
+
+/**
+ * AttendanceWriteModel: This class contains one queued attendance insert or
+ *        update, waiting to be written to the tracker store with the next batch.
+ *
+ * @author wavis
+ *
+ */
+public class AttendanceWriteModel {
+	private boolean isInsert;
+	private boolean addLevel;
+	private AttendanceEventModel importEvent;
+	private String teacherNames;
+	private String classLevel;
+	private StudentModel student;
+
+	public AttendanceWriteModel(boolean isInsert, boolean addLevel, AttendanceEventModel importEvent,
+			String teacherNames, StudentModel student) {
+		this.isInsert = isInsert;
+		this.addLevel = addLevel;
+		this.importEvent = importEvent;
+		this.teacherNames = teacherNames;
+		this.classLevel = student.getCurrentLevel();
+		this.student = student;
+	}
+
+	public boolean isInsert() {
+		return isInsert;
+	}
+
+	public boolean isAddLevel() {
+		return addLevel;
+	}
+
+	public AttendanceEventModel getImportEvent() {
+		return importEvent;
+	}
+
+	public String getTeacherNames() {
+		return teacherNames;
+	}
+
+	public String getClassLevel() {
+		return classLevel;
+	}
+
+	public StudentModel getStudent() {
+		return student;
+	}
+}
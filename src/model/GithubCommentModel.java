@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * GithubCommentModel: This class contains one github comment update for an
+ *        attendance record, queued by the github import threads and written
+ *        by a single database writer.
+ *
+ * @author wavis
+ *
+ */
+public class GithubCommentModel {
+	private int clientID;
+	private StudentNameModel nameModel;
+	private String serviceDate;
+	private String eventName;
+	private String repoName;
+	private String comments;
+	private String gitDescription;
+
+	public GithubCommentModel(int clientID, StudentNameModel nameModel, String serviceDate, String eventName,
+			String repoName, String comments, String gitDescription) {
+		this.clientID = clientID;
+		this.nameModel = nameModel;
+		this.serviceDate = serviceDate;
+		this.eventName = eventName;
+		this.repoName = repoName;
+		this.comments = comments;
+		this.gitDescription = gitDescription;
+	}
+
+	public int getClientID() {
+		return clientID;
+	}
+
+	public StudentNameModel getNameModel() {
+		return nameModel;
+	}
+
+	public String getServiceDate() {
+		return serviceDate;
+	}
+
+	public String getEventName() {
+		return eventName;
+	}
+
+	public String getRepoName() {
+		return repoName;
+	}
+
+	public String getComments() {
+		return comments;
+	}
+
+	public String getGitDescription() {
+		return gitDescription;
+	}
+}
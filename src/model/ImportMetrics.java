@@ -0,0 +1,209 @@
+package model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * ImportMetrics: Latency histograms and counters for one import run, keyed by
+ * name (such as "phase:Import students", "pike13.page:enrollments",
+ * "db:UPDATE Attendance" or "rows.updated:Attendance"). Any thread can record;
+ * at the end of the run the totals are written as a JSON and CSV report and
+ * can be stored in the ImportMetrics table for trends.
+ *
+ * @author wavis
+ *
+ */
+public class ImportMetrics {
+	public static final String TYPE_TIMER = "timer";
+	public static final String TYPE_COUNTER = "counter";
+
+	private static ConcurrentHashMap<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+	private static ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	public static void addTime(String name, long startNanos) {
+		// Elapsed time since startNanos (from System.nanoTime)
+		addTimeNanos(name, System.nanoTime() - startNanos);
+	}
+
+	public static void addTimeNanos(String name, long nanos) {
+		Histogram histogram = timers.get(name);
+		if (histogram == null) {
+			timers.putIfAbsent(name, new Histogram());
+			histogram = timers.get(name);
+		}
+		histogram.add(nanos);
+	}
+
+	public static void addCount(String name, long count) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new AtomicLong());
+			counter = counters.get(name);
+		}
+		counter.addAndGet(count);
+	}
+
+	public static void reset() {
+		timers.clear();
+		counters.clear();
+	}
+
+	public static ArrayList<Metric> getMetrics() {
+		// Timers then counters, each sorted by name
+		ArrayList<Metric> metrics = new ArrayList<Metric>();
+		for (String name : new TreeMap<String, Histogram>(timers).keySet())
+			metrics.add(timers.get(name).toMetric(name));
+		for (String name : new TreeMap<String, AtomicLong>(counters).keySet())
+			metrics.add(new Metric(name, TYPE_COUNTER, counters.get(name).get(), 0, 0, 0, 0, 0));
+		return metrics;
+	}
+
+	public static String toJson(String runDate) {
+		JsonArrayBuilder metricArray = Json.createArrayBuilder();
+		for (Metric metric : getMetrics()) {
+			JsonObjectBuilder object = Json.createObjectBuilder().add("name", metric.name).add("type", metric.type)
+					.add("count", metric.count);
+			if (metric.type.equals(TYPE_TIMER))
+				object.add("totalMsec", metric.totalMsec).add("p50Msec", metric.p50Msec)
+						.add("p95Msec", metric.p95Msec).add("p99Msec", metric.p99Msec).add("maxMsec", metric.maxMsec);
+			metricArray.add(object);
+		}
+		return Json.createObjectBuilder().add("runDate", runDate).add("metrics", metricArray).build().toString();
+	}
+
+	public static String toCsv() {
+		StringBuilder csv = new StringBuilder("name,type,count,totalMsec,p50Msec,p95Msec,p99Msec,maxMsec\n");
+		for (Metric metric : getMetrics()) {
+			csv.append("\"").append(metric.name.replace("\"", "\"\"")).append("\",").append(metric.type).append(",")
+					.append(metric.count).append(",").append(metric.totalMsec).append(",").append(metric.p50Msec)
+					.append(",").append(metric.p95Msec).append(",").append(metric.p99Msec).append(",")
+					.append(metric.maxMsec).append("\n");
+		}
+		return csv.toString();
+	}
+
+	public static void writeReports(String reportDir, String runDate) {
+		// importMetrics-[date].json and .csv; re-running on the same day overwrites
+		File dir = new File(reportDir);
+		if (!dir.exists())
+			dir.mkdirs();
+
+		writeFile(new File(dir, "importMetrics-" + runDate + ".json"), toJson(runDate));
+		writeFile(new File(dir, "importMetrics-" + runDate + ".csv"), toCsv());
+	}
+
+	private static void writeFile(File file, String contents) {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.write(contents);
+
+		} catch (IOException e) {
+			System.out.println("Failed to write metrics report '" + file.getPath() + "': " + e.getMessage());
+		}
+	}
+
+	public static class Metric {
+		private String name;
+		private String type;
+		private long count;
+		private double totalMsec, p50Msec, p95Msec, p99Msec, maxMsec;
+
+		private Metric(String name, String type, long count, double totalMsec, double p50Msec, double p95Msec,
+				double p99Msec, double maxMsec) {
+			this.name = name;
+			this.type = type;
+			this.count = count;
+			this.totalMsec = totalMsec;
+			this.p50Msec = p50Msec;
+			this.p95Msec = p95Msec;
+			this.p99Msec = p99Msec;
+			this.maxMsec = maxMsec;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getTotalMsec() {
+			return totalMsec;
+		}
+
+		public double getP50Msec() {
+			return p50Msec;
+		}
+
+		public double getP95Msec() {
+			return p95Msec;
+		}
+
+		public double getP99Msec() {
+			return p99Msec;
+		}
+
+		public double getMaxMsec() {
+			return maxMsec;
+		}
+	}
+
+	private static class Histogram {
+		// Bucket i holds times below 2^i microseconds, so percentiles are within a factor of 2
+		private static final int NUM_BUCKETS = 40;
+
+		private long[] buckets = new long[NUM_BUCKETS];
+		private long count = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+
+		private synchronized void add(long nanos) {
+			if (nanos < 0)
+				nanos = 0;
+			long micros = nanos / 1000;
+			int bucket = (micros == 0) ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+			buckets[Math.min(bucket, NUM_BUCKETS - 1)]++;
+			count++;
+			totalNanos += nanos;
+			if (nanos > maxNanos)
+				maxNanos = nanos;
+		}
+
+		private synchronized Metric toMetric(String name) {
+			return new Metric(name, TYPE_TIMER, count, toMsec(totalNanos), getPercentile(0.50), getPercentile(0.95),
+					getPercentile(0.99), toMsec(maxNanos));
+		}
+
+		private double getPercentile(double fraction) {
+			// Upper bound of the bucket holding this percentile, but never above the max
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0)
+					return Math.min(toMsec((1L << i) * 1000), toMsec(maxNanos));
+			}
+			return toMsec(maxNanos);
+		}
+
+		private double toMsec(long nanos) {
+			return Math.round(nanos / 1000.0) / 1000.0;
+		}
+	}
+}
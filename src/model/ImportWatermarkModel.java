@@ -0,0 +1,33 @@
+package model;
+
+/**
+ * ImportWatermarkModel: This class contains the last successful sync dates for
+ *        one Pike13 import endpoint, used to decide between an incremental sync
+ *        and a full-window reconcile.
+ *        
+ * @author wavis
+ *
+ */
+public class ImportWatermarkModel {
+	private String endPoint;
+	private String lastSyncDate;
+	private String lastFullSyncDate;
+
+	public ImportWatermarkModel(String endPoint, String lastSyncDate, String lastFullSyncDate) {
+		this.endPoint = endPoint;
+		this.lastSyncDate = lastSyncDate;
+		this.lastFullSyncDate = lastFullSyncDate;
+	}
+
+	public String getEndPoint() {
+		return endPoint;
+	}
+
+	public String getLastSyncDate() {
+		return lastSyncDate;
+	}
+
+	public String getLastFullSyncDate() {
+		return lastFullSyncDate;
+	}
+}
@@ -0,0 +1,438 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+
+/**
+ * InMemoryTrackerStore: Tracker store held entirely in memory, for dry runs,
+ * replays and load tests of the import merges without the AWS database. Rows
+ * are indexed by ClientID (and ScheduleID/CourseID) in primitive-keyed maps,
+ * and follow the same insert/update rules as the database tables.
+ *
+ * @author wavis
+ *
+ */
+public class InMemoryTrackerStore implements TrackerStore {
+	private static final int CLASS_NAME_WIDTH = 40;
+
+	private IntKeyMap<StudentRow> students = new IntKeyMap<StudentRow>();
+	private IntKeyMap<ArrayList<AttendanceRow>> attendance = new IntKeyMap<ArrayList<AttendanceRow>>();
+	private IntKeyMap<ArrayList<GraduationModel>> graduations = new IntKeyMap<ArrayList<GraduationModel>>();
+	private IntKeyMap<ScheduleModel> schedule = new IntKeyMap<ScheduleModel>();
+	private IntKeyMap<CoursesModel> courses = new IntKeyMap<CoursesModel>();
+	private int nextScheduleID = 1;
+
+	/*
+	 * ------- Students -------
+	 */
+	public synchronized ArrayList<StudentImportModel> getAllStudentsAsImportData() {
+		ArrayList<StudentRow> rows = students.values();
+		Collections.sort(rows, new Comparator<StudentRow>() {
+			public int compare(StudentRow r1, StudentRow r2) {
+				return Integer.compare(r1.clientID, r2.clientID);
+			}
+		});
+
+		ArrayList<StudentImportModel> nameList = new ArrayList<StudentImportModel>(rows.size());
+		for (StudentRow r : rows) {
+			nameList.add(new StudentImportModel(r.clientID, r.lastName, r.firstName, r.githubName, r.gender,
+					r.startDate, r.location, r.gradYear, r.isInMasterDb, r.email, r.acctMgrEmail, r.emergencyEmail,
+					r.phone, r.acctMgrPhone, r.homePhone, r.emergencyPhone, r.birthdate, r.taSinceDate,
+					r.taPastEvents, r.currentLevel, r.currentClass, r.lastScore, r.registerClass));
+		}
+		return nameList;
+	}
+
+	public synchronized ArrayList<StudentModel> getActiveStudents() {
+		ArrayList<StudentModel> nameList = new ArrayList<StudentModel>();
+		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+		for (StudentRow r : students.values()) {
+			if (r.isInMasterDb == 0)
+				continue;
+
+			nameList.add(new StudentModel(r.clientID, new StudentNameModel(r.firstName, r.lastName, true),
+					getAge(today, r.birthdate), r.githubName, r.gender, toSqlDate(r.startDate), r.location, r.gradYear,
+					r.currentClass, r.email, r.acctMgrEmail, r.emergencyEmail, r.phone, r.acctMgrPhone, r.homePhone,
+					r.emergencyPhone, r.currentModule, r.currentLevel, r.registerClass, toSqlDate(r.lastVisitDate)));
+		}
+		Collections.sort(nameList, new Comparator<StudentModel>() {
+			public int compare(StudentModel s1, StudentModel s2) {
+				int compare = s1.getFirstName().compareTo(s2.getFirstName());
+				return compare != 0 ? compare : s1.getLastName().compareTo(s2.getLastName());
+			}
+		});
+		return nameList;
+	}
+
+	public synchronized int getMaxClientID() {
+		int maxClientID = 0;
+		for (StudentRow r : students.values())
+			maxClientID = Math.max(maxClientID, r.clientID);
+		return maxClientID;
+	}
+
+	private static Double getAge(DateTime today, String birthdate) {
+		// Same as MySqlDatabase.getAge: years since birthdate, 0 if unknown
+		if (birthdate == null || birthdate.equals(""))
+			return 0.0;
+		return Days.daysBetween(new DateTime(birthdate), today).getDays() / 365.25;
+	}
+
+	private static java.sql.Date toSqlDate(String date) {
+		if (date == null || date.equals(""))
+			return null;
+		return java.sql.Date.valueOf(date);
+	}
+
+	public synchronized void insertStudent(StudentImportModel student) {
+		// Student already exists, do nothing
+		if (students.containsKey(student.getClientID()))
+			return;
+
+		StudentRow row = new StudentRow(student.getClientID());
+		row.setImportFields(student);
+		row.newStudent = true;
+		students.put(student.getClientID(), row);
+	}
+
+	public synchronized void updateStudent(StudentImportModel student, List<String> changedColumns,
+			boolean newStudent) {
+		StudentRow row = students.get(student.getClientID());
+		if (row == null)
+			return;
+
+		// Unchanged columns already match, so copying all of them is the same
+		row.setImportFields(student);
+		row.lastScore = student.getLastExamScore();
+		row.newStudent = newStudent;
+	}
+
+	public synchronized void updateIsInMasterDb(StudentImportModel student, int isInMasterDb) {
+		StudentRow row = students.get(student.getClientID());
+		if (row != null)
+			row.isInMasterDb = isInMasterDb;
+	}
+
+	public synchronized void updateLastEventInfoByStudent(int clientID, String eventName, String lastVisitDate,
+			String module) {
+		StudentRow row = students.get(clientID);
+		if (row == null)
+			return;
+
+		if (eventName != null)
+			row.currentClass = eventName;
+		if (module != null)
+			row.currentModule = module.equals("NULL") ? null : module;
+		if (lastVisitDate != null)
+			row.lastVisitDate = lastVisitDate;
+	}
+
+	/*
+	 * ------- Attendance -------
+	 */
+	public synchronized ArrayList<AttendanceEventModel> getAllEvents(String startDate) {
+		ArrayList<AttendanceRow> rows = new ArrayList<AttendanceRow>();
+		for (ArrayList<AttendanceRow> clientRows : attendance.values()) {
+			for (AttendanceRow r : clientRows) {
+				if ((r.state.equals("completed") || r.state.equals("registered"))
+						&& r.serviceDate.compareTo(startDate) >= 0 && students.containsKey(r.clientID))
+					rows.add(r);
+			}
+		}
+
+		// Same order as the database query: ClientID, newest ServiceDate first, VisitID
+		Collections.sort(rows, new Comparator<AttendanceRow>() {
+			public int compare(AttendanceRow r1, AttendanceRow r2) {
+				if (r1.clientID != r2.clientID)
+					return Integer.compare(r1.clientID, r2.clientID);
+				if (!r1.serviceDate.equals(r2.serviceDate))
+					return r2.serviceDate.compareTo(r1.serviceDate);
+				return Integer.compare(r1.visitID, r2.visitID);
+			}
+		});
+
+		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>(rows.size());
+		for (AttendanceRow r : rows) {
+			StudentRow student = students.get(r.clientID);
+			eventList.add(new AttendanceEventModel(r.clientID, r.visitID, java.sql.Date.valueOf(r.serviceDate),
+					r.serviceTime, r.eventName, student.githubName.equals("") ? null : student.githubName,
+					r.repoName, r.comments, r.gitDescription,
+					new StudentNameModel(student.firstName, student.lastName, true), r.serviceCategory, r.state,
+					r.lastSFState, r.teacherNames, r.classLevel));
+		}
+		return eventList;
+	}
+
+	public synchronized boolean[] writeAttendance(ArrayList<AttendanceWriteModel> writes) {
+		boolean[] written = new boolean[writes.size()];
+
+		for (int j = 0; j < writes.size(); j++) {
+			AttendanceWriteModel write = writes.get(j);
+			AttendanceEventModel importEvent = write.getImportEvent();
+			ArrayList<AttendanceRow> clientRows = getAttendanceRows(importEvent.getClientID());
+
+			if (write.isInsert()) {
+				// Attendance data already exists, do nothing
+				if (findAttendanceRow(clientRows, importEvent.getVisitID()) != null)
+					continue;
+
+				AttendanceRow row = new AttendanceRow(importEvent.getClientID(), importEvent.getVisitID(),
+						importEvent.getServiceDateString());
+				row.serviceTime = importEvent.getServiceTime();
+				row.eventName = importEvent.getEventName().trim();
+				row.teacherNames = write.getTeacherNames();
+				row.serviceCategory = importEvent.getServiceCategory();
+				row.state = importEvent.getState();
+				if (write.isAddLevel())
+					row.classLevel = write.getClassLevel();
+				clientRows.add(row);
+
+			} else {
+				// The only fields that should be updated are the State & Teacher fields
+				for (AttendanceRow row : clientRows) {
+					if (row.visitID == importEvent.getVisitID()
+							&& row.serviceDate.equals(importEvent.getServiceDateString())
+							&& ("".equals(row.serviceTime) || row.serviceTime.equals(importEvent.getServiceTime()))) {
+						row.state = importEvent.getState();
+						row.teacherNames = write.getTeacherNames();
+						row.serviceTime = importEvent.getServiceTime();
+						if (write.isAddLevel())
+							row.classLevel = write.getClassLevel();
+						row.eventName = importEvent.getEventName().trim();
+					}
+				}
+			}
+			written[j] = true;
+		}
+		return written;
+	}
+
+	public synchronized void deleteFromAttendance(int clientID, int visitID, StudentNameModel studentModel) {
+		ArrayList<AttendanceRow> clientRows = attendance.get(clientID);
+		if (clientRows == null)
+			return;
+
+		for (int i = clientRows.size() - 1; i >= 0; i--) {
+			if (clientRows.get(i).visitID == visitID)
+				clientRows.remove(i);
+		}
+	}
+
+	public synchronized IntKeyMap<String[]> getFirstServiceDates() {
+		IntKeyMap<String[]> startDates = new IntKeyMap<String[]>();
+		for (ArrayList<AttendanceRow> clientRows : attendance.values()) {
+			for (AttendanceRow r : clientRows) {
+				if (!r.state.equals("completed"))
+					continue;
+
+				// Level events ("3@...") and the class level both count
+				if (r.eventName.length() > 1 && r.eventName.charAt(1) == '@')
+					addStartDate(startDates, r.clientID, r.eventName.substring(0, 1), r.serviceDate);
+				if (r.classLevel != null)
+					addStartDate(startDates, r.clientID, r.classLevel, r.serviceDate);
+			}
+		}
+		return startDates;
+	}
+
+	private void addStartDate(IntKeyMap<String[]> startDates, int clientID, String level, String serviceDate) {
+		if (level.length() != 1 || level.charAt(0) < '0' || level.charAt(0) >= '0' + NUM_START_DATE_LEVELS)
+			return;
+
+		String[] clientDates = startDates.get(clientID);
+		if (clientDates == null) {
+			clientDates = new String[NUM_START_DATE_LEVELS];
+			startDates.put(clientID, clientDates);
+		}
+		int levelIdx = level.charAt(0) - '0';
+		if (clientDates[levelIdx] == null || serviceDate.compareTo(clientDates[levelIdx]) < 0)
+			clientDates[levelIdx] = serviceDate;
+	}
+
+	public synchronized void loadAttendance(AttendanceEventModel event) {
+		// Seed an existing attendance record, such as from a database snapshot
+		AttendanceRow row = new AttendanceRow(event.getClientID(), event.getVisitID(), event.getServiceDateString());
+		row.serviceTime = event.getServiceTime();
+		row.eventName = event.getEventName().trim();
+		row.repoName = event.getRepoName();
+		row.comments = event.getGithubComments();
+		row.gitDescription = event.getGitDescription();
+		row.teacherNames = event.getTeacherNames();
+		row.serviceCategory = event.getServiceCategory();
+		row.state = event.getState();
+		row.lastSFState = event.getLastSFState();
+		row.classLevel = event.getClassLevel();
+		getAttendanceRows(event.getClientID()).add(row);
+	}
+
+	private ArrayList<AttendanceRow> getAttendanceRows(int clientID) {
+		ArrayList<AttendanceRow> clientRows = attendance.get(clientID);
+		if (clientRows == null) {
+			clientRows = new ArrayList<AttendanceRow>();
+			attendance.put(clientID, clientRows);
+		}
+		return clientRows;
+	}
+
+	private AttendanceRow findAttendanceRow(ArrayList<AttendanceRow> clientRows, int visitID) {
+		for (AttendanceRow r : clientRows) {
+			if (r.visitID == visitID)
+				return r;
+		}
+		return null;
+	}
+
+	/*
+	 * ------- Graduation -------
+	 */
+	public synchronized void addGraduationRecord(GraduationModel gradModel) {
+		ArrayList<GraduationModel> clientGrads = graduations.get(gradModel.getClientID());
+		if (clientGrads == null) {
+			clientGrads = new ArrayList<GraduationModel>();
+			graduations.put(gradModel.getClientID(), clientGrads);
+		}
+
+		for (int i = 0; i < clientGrads.size(); i++) {
+			GraduationModel dbGrad = clientGrads.get(i);
+			if (dbGrad.getGradLevel() == gradModel.getGradLevel()) {
+				// Record already exists, so update EndDate/Score/SkipLevel/Promoted and clear 'in SF'
+				clientGrads.set(i, new GraduationModel(dbGrad.getClientID(), dbGrad.getStudentName(),
+						dbGrad.getGradLevel(), gradModel.getScore().equals("") ? dbGrad.getScore() : gradModel.getScore(),
+						dbGrad.getCurrentClass(), dbGrad.getStartDate(), gradModel.getEndDate(), false,
+						dbGrad.isSkipLevel() || gradModel.isSkipLevel(), dbGrad.isPromoted() || gradModel.isPromoted()));
+				return;
+			}
+		}
+		clientGrads.add(gradModel);
+	}
+
+	public synchronized ArrayList<GraduationModel> getGraduationRecords() {
+		ArrayList<GraduationModel> gradList = new ArrayList<GraduationModel>();
+		for (ArrayList<GraduationModel> clientGrads : graduations.values())
+			gradList.addAll(clientGrads);
+		return gradList;
+	}
+
+	/*
+	 * ------- Class schedule & courses -------
+	 */
+	public synchronized ArrayList<ScheduleModel> getClassSchedule() {
+		ArrayList<ScheduleModel> scheduleList = schedule.values();
+		Collections.sort(scheduleList);
+		return scheduleList;
+	}
+
+	public synchronized void addClassToSchedule(ScheduleModel importEvent) {
+		String className = importEvent.getClassName();
+		if (className.length() >= CLASS_NAME_WIDTH)
+			className = className.substring(0, CLASS_NAME_WIDTH);
+
+		ScheduleModel dbEvent = new ScheduleModel(nextScheduleID, importEvent.getDayOfWeek(),
+				importEvent.getStartTime(), importEvent.getDuration(), className);
+
+		// Schedule data already exists, do nothing
+		for (ScheduleModel m : schedule.values()) {
+			if (m.compareTo(dbEvent) == 0)
+				return;
+		}
+
+		dbEvent.setMiscSchedFields(importEvent.getAttCount(), importEvent.getYoungest(), importEvent.getOldest(),
+				importEvent.getAverageAge(), importEvent.getModuleCount(), "", false);
+		schedule.put(nextScheduleID++, dbEvent);
+	}
+
+	public synchronized void updateClassInSchedule(ScheduleModel dbEvent, ScheduleModel pike13Event) {
+		ScheduleModel event = schedule.get(dbEvent.getScheduleID());
+		if (event != null)
+			event.setMiscSchedFields(pike13Event.getAttCount(), pike13Event.getYoungest(), pike13Event.getOldest(),
+					pike13Event.getAverageAge(), pike13Event.getModuleCount(), pike13Event.getRoom(),
+					pike13Event.getRoomMismatch());
+	}
+
+	public synchronized void removeClassFromSchedule(ScheduleModel model) {
+		schedule.remove(model.getScheduleID());
+	}
+
+	public synchronized ArrayList<CoursesModel> getCourseSchedule() {
+		ArrayList<CoursesModel> courseList = courses.values();
+		Collections.sort(courseList, new Comparator<CoursesModel>() {
+			public int compare(CoursesModel c1, CoursesModel c2) {
+				return Integer.compare(c1.getScheduleID(), c2.getScheduleID());
+			}
+		});
+		return courseList;
+	}
+
+	public synchronized void addCourseToSchedule(CoursesModel courseEvent) {
+		// Course already exists, do nothing
+		courses.putIfAbsent(courseEvent.getScheduleID(), new CoursesModel(courseEvent.getScheduleID(),
+				courseEvent.getEventName().trim(), courseEvent.getEnrollment()));
+	}
+
+	public synchronized void updateCourse(CoursesModel course) {
+		if (courses.containsKey(course.getScheduleID()))
+			courses.put(course.getScheduleID(),
+					new CoursesModel(course.getScheduleID(), course.getEventName().trim(), course.getEnrollment()));
+	}
+
+	public synchronized void removeCourseFromSchedule(CoursesModel course) {
+		courses.remove(course.getScheduleID());
+	}
+
+	private static class StudentRow {
+		private int clientID;
+		private String lastName, firstName, githubName, startDate, email, acctMgrEmail, emergencyEmail;
+		private String phone, acctMgrPhone, homePhone, emergencyPhone, birthdate, taSinceDate;
+		private int gender, location, gradYear, isInMasterDb, taPastEvents;
+		private String currentLevel, currentClass = "", currentModule, lastScore = "", registerClass = "";
+		private String lastVisitDate;
+		private boolean newStudent;
+
+		private StudentRow(int clientID) {
+			this.clientID = clientID;
+		}
+
+		private void setImportFields(StudentImportModel student) {
+			// Columns written by both insert and update
+			lastName = student.getLastName();
+			firstName = student.getFirstName();
+			githubName = student.getGithubName();
+			gender = student.getGender();
+			startDate = student.getStartDate() == null ? "" : student.getStartDate();
+			location = student.getHomeLocation();
+			gradYear = student.getGradYear();
+			isInMasterDb = 1;
+			email = student.getEmail();
+			acctMgrEmail = student.getAccountMgrEmails();
+			emergencyEmail = student.getEmergContactEmail();
+			phone = student.getPhone1();
+			acctMgrPhone = student.getAccountMgrPhones();
+			homePhone = student.getPhone2();
+			emergencyPhone = student.getEmergContactPhone();
+			birthdate = student.getBirthDate();
+			taSinceDate = student.getStaffSinceDate();
+			taPastEvents = student.getStaffPastEvents();
+			currentLevel = student.getCurrLevel();
+		}
+	}
+
+	private static class AttendanceRow {
+		private int clientID;
+		private int visitID;
+		private String serviceDate;
+		private String serviceTime = "", eventName = "", serviceCategory = "", state = "", teacherNames = "";
+		private String repoName, comments, gitDescription, lastSFState, classLevel;
+
+		private AttendanceRow(int clientID, int visitID, String serviceDate) {
+			this.clientID = clientID;
+			this.visitID = visitID;
+			this.serviceDate = serviceDate;
+		}
+	}
+}
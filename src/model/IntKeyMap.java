@@ -0,0 +1,142 @@
+package model;
+
+import java.util.ArrayList;
+
+/**
+ * IntKeyMap: Hash map with primitive int keys (open addressing, linear
+ * probing), so lookups by ClientID don't box an Integer for every event.
+ * Null values are not allowed.
+ *
+ * @author wavis
+ *
+ */
+public class IntKeyMap<V> {
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public IntKeyMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public IntKeyMap(int expectedSize) {
+		// Keep table at most half full
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int mask = keys.length - 1;
+		for (int idx = hash(key) & mask; values[idx] != null; idx = (idx + 1) & mask) {
+			if (keys[idx] == key)
+				return (V) values[idx];
+		}
+		return null;
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	public V put(int key, V value) {
+		return insert(key, value, true);
+	}
+
+	public V putIfAbsent(int key, V value) {
+		return insert(key, value, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int mask = keys.length - 1;
+		int idx = hash(key) & mask;
+		while (values[idx] != null && keys[idx] != key)
+			idx = (idx + 1) & mask;
+		if (values[idx] == null)
+			return null;
+
+		V oldValue = (V) values[idx];
+		values[idx] = null;
+		size--;
+
+		// Shift later entries of the probe run back so lookups don't stop at the gap
+		for (int next = (idx + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - idx) & mask)) {
+				keys[idx] = keys[next];
+				values[idx] = values[next];
+				values[next] = null;
+				idx = next;
+			}
+		}
+		return oldValue;
+	}
+
+	@SuppressWarnings("unchecked")
+	public ArrayList<V> values() {
+		// Table order, not insertion order
+		ArrayList<V> list = new ArrayList<V>(size);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null)
+				list.add((V) values[i]);
+		}
+		return list;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V insert(int key, V value, boolean replace) {
+		if (value == null)
+			throw new NullPointerException("IntKeyMap does not allow null values");
+
+		int mask = keys.length - 1;
+		int idx = hash(key) & mask;
+		for (; values[idx] != null; idx = (idx + 1) & mask) {
+			if (keys[idx] == key) {
+				V oldValue = (V) values[idx];
+				if (replace)
+					values[idx] = value;
+				return oldValue;
+			}
+		}
+
+		keys[idx] = key;
+		values[idx] = value;
+		if (++size * 2 > keys.length)
+			resize();
+		return null;
+	}
+
+	private void resize() {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == null)
+				continue;
+			int idx = hash(oldKeys[i]) & mask;
+			while (values[idx] != null)
+				idx = (idx + 1) & mask;
+			keys[idx] = oldKeys[i];
+			values[idx] = oldValues[i];
+		}
+	}
+
+	private static int hash(int key) {
+		// Spread sequential client ID's across the table
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
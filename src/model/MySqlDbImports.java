@@ -1,18 +1,24 @@
 package model;
 
+import java.sql.BatchUpdateException;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import com.mysql.jdbc.exceptions.jdbc4.CommunicationsException;
-import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationException;
 import com.mysql.jdbc.exceptions.jdbc4.MySQLNonTransientConnectionException;
 
 /**
@@ -26,67 +32,111 @@ import com.mysql.jdbc.exceptions.jdbc4.MySQLNonTransientConnectionException;
  */
 
 public class MySqlDbImports {
-	private static final int CLASS_NAME_WIDTH = 40;
 	private static final int COMMENT_WIDTH = 150;
 	private static final int REPO_NAME_WIDTH = 50;
+	private static final int METRIC_NAME_WIDTH = 100;
+	public static final int DEFAULT_ATTEND_BATCH_SIZE = 200;
+
+	// Comments are only written if they still start with what is in the database, so a
+	// comment appended by the webhook in the meantime is never overwritten
+	private static final String UPDATE_COMMENTS_SQL = "UPDATE Attendance SET Comments=?, RepoName=?, GitDescription=? "
+			+ "WHERE ClientID=? AND ServiceDate=? AND (Comments IS NULL OR LOCATE(BINARY Comments, ?) = 1);";
+
+	// Appends a commit summary (comments separated by " / ") unless already there; repo name is always written
+	private static final String APPEND_COMMENTS_SQL = "UPDATE Attendance SET "
+			+ "Comments=IF(Comments IS NULL OR Comments = '', ?, IF(LOCATE(BINARY ?, Comments) > 0, Comments, "
+			+ "LEFT(CONCAT(Comments, ' / ', ?), " + COMMENT_WIDTH + "))), "
+			+ "RepoName=?, GitDescription=IF(GitDescription IS NULL OR GitDescription = '', ?, GitDescription) "
+			+ "WHERE ClientID=? AND ServiceDate=?;";
+
+	// Webhook deliveries re-use the attendance and students read for matching until this old
+	private static final long GITHUB_MATCH_REFRESH_MSEC = 10 * 60 * 1000;
+
+	// Earliest event name in each group of attendance rows
+	private static final String FIRST_EVENT_NAME = "SUBSTRING_INDEX(GROUP_CONCAT(EventName ORDER BY ServiceDate ASC "
+			+ "SEPARATOR '\\n'), '\\n', 1)";
+
+	// Teachers & volunteers: their pending github records are removed
+	private static final HashSet<String> GITHUB_STAFF_USERS = new HashSet<String>(Arrays.asList(
+			"wavis421", "keithagroves", "davedleague", "sebastiantroncoso93", "codybsauer", "shacheeparikh",
+			"tylercwiltz", "colbyschexnayder",
+			"mwoguri",              // Michiyo
+			"jaleague",             // Jackie
+			"zaelix",               // Mike
+			"dencee",               // Daniel
+			"mjfre",                // Matt
+			"awasicek",             // Andrew
+			"dkunkler",             // David Kunkler, volunteer (parent of 3 students)
+			"bschurter",            // Bruce Schurter, limited staff member
+			"tsneuhaus",            // Tammy Neuhaus, limited staff member
+			"rey-rey"));            // Rey Fidel, volunteer teacher
 
 	private MySqlDatabase sqlDb;
+	private PreparedStatementCache stmtCache;
+	private TrackerStore store;
+	private boolean watermarkTableCreated = false;
+	private boolean metricsTableCreated = false;
+	private int attendBatchSize = DEFAULT_ATTEND_BATCH_SIZE;
+	private IntKeyMap<String[]> levelStartDates = null;
+	private IntKeyMap<StudentModel> studentLevels = null;
+	private ArrayList<AttendanceWriteModel> pendingAttendWrites = new ArrayList<AttendanceWriteModel>();
+	private ArrayList<AttendanceEventModel> githubMatchAttend = null;
+	private StudentIndex<StudentModel> githubMatchStudents = null;
+	private String githubMatchStartDate = null;
+	private long githubMatchLoadTime = 0;
 
 	public MySqlDbImports(MySqlDatabase sqlDb) {
 		this.sqlDb = sqlDb;
+		this.stmtCache = new PreparedStatementCache(sqlDb);
+		this.store = new MySqlTrackerStore(sqlDb, stmtCache);
 	}
 
-	/*
-	 * ------- Student Import Database Queries -------
-	 */
-	public ArrayList<StudentModel> getActiveStudents() {
-		ArrayList<StudentModel> nameList = new ArrayList<StudentModel>();
-		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+	public MySqlDbImports(TrackerStore store) {
+		// No database: only the import merges and the student queries run through
+		// the store; the database-only methods throw IllegalStateException
+		this.store = store;
+		AsyncLogSink.startConsole();
+	}
 
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT * FROM Students WHERE isInMasterDb ORDER BY FirstName, LastName;");
-				ResultSet result = selectStmt.executeQuery();
+	public TrackerStore getTrackerStore() {
+		return store;
+	}
 
-				while (result.next()) {
-					nameList.add(new StudentModel(result.getInt("ClientID"),
-							new StudentNameModel(result.getString("FirstName"), result.getString("LastName"),
-									result.getBoolean("isInMasterDb")),
-							sqlDb.getAge(today, result.getString("Birthdate")), result.getString("GithubName"),
-							result.getInt("Gender"), result.getDate("StartDate"), result.getInt("Location"),
-							result.getInt("GradYear"), result.getString("CurrentClass"), result.getString("Email"),
-							result.getString("AcctMgrEmail"), result.getString("EmergencyEmail"),
-							result.getString("Phone"), result.getString("AcctMgrPhone"), result.getString("HomePhone"),
-							result.getString("EmergencyPhone"), result.getString("CurrentModule"),
-							result.getString("CurrentLevel"), result.getString("RegisterClass"),
-							result.getDate("LastVisitDate")));
-				}
+	public PreparedStatementCache getStatementCache() {
+		requireDatabase("getStatementCache");
+		return stmtCache;
+	}
 
-				result.close();
-				selectStmt.close();
-				break;
+	private void requireDatabase(String methodName) {
+		if (stmtCache == null)
+			throw new IllegalStateException(methodName + ": no database for this import");
+	}
 
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("getActiveStudents: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
+	private void reconnectDatabase() {
+		// Shared with the other import threads and the log sink
+		stmtCache.reconnectDatabase();
+	}
 
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e2.getMessage());
-				break;
-			}
-		}
-		return nameList;
+	public void setAttendanceBatchSize(int batchSize) {
+		// Number of attendance inserts/updates sent to the database at once
+		if (batchSize < 1)
+			batchSize = 1;
+		attendBatchSize = batchSize;
+	}
+
+	/*
+	 * ------- Student Import Database Queries -------
+	 */
+	public ArrayList<StudentModel> getActiveStudents() {
+		return store.getActiveStudents();
+	}
+
+	public int getMaxClientID() {
+		return store.getMaxClientID();
 	}
 
 	public void importStudents(ArrayList<StudentImportModel> importList) {
-		ArrayList<StudentImportModel> dbList = getAllStudentsAsImportData();
+		ArrayList<StudentImportModel> dbList = store.getAllStudentsAsImportData();
 		int dbListIdx = 0;
 		int dbListSize = dbList.size();
 
@@ -115,7 +165,7 @@ public class MySqlDbImports {
 				while (dbListIdx < dbListSize && dbList.get(dbListIdx).getClientID() < importStudent.getClientID()) {
 					// Mark student as not in master DB
 					if (dbList.get(dbListIdx).getIsInMasterDb() == 1)
-						updateIsInMasterDb(dbList.get(dbListIdx), 0);
+						store.updateIsInMasterDb(dbList.get(dbListIdx), 0);
 					dbListIdx++;
 				}
 				if (dbListIdx < dbListSize) {
@@ -128,16 +178,16 @@ public class MySqlDbImports {
 						dbListIdx++;
 					} else {
 						// Import student is new, insert into DB
-						insertStudent(importStudent);
+						store.insertStudent(importStudent);
 					}
 				} else {
 					// Import student is new, insert into DB
-					insertStudent(importStudent);
+					store.insertStudent(importStudent);
 				}
 
 			} else if (compare == 1) {
 				// Insert new student into DB
-				insertStudent(importStudent);
+				store.insertStudent(importStudent);
 
 			} else {
 				// ClientID matches but data has changed
@@ -146,6 +196,9 @@ public class MySqlDbImports {
 				dbListIdx++;
 			}
 		}
+
+		// Level start dates were only needed for graduations in this import
+		levelStartDates = null;
 	}
 
 	private void checkMissingLevel(StudentImportModel dbStudent, StudentImportModel importStudent) {
@@ -154,7 +207,7 @@ public class MySqlDbImports {
 			String currLevel = "";
 			if (!dbStudent.getCurrLevel().equals(""))
 				currLevel = " (student level " + dbStudent.getCurrLevel() + ")";
-			MySqlDbLogging.insertLogData(LogDataModel.MISSING_CURRENT_LEVEL,
+			AsyncLogSink.insertLogData(LogDataModel.MISSING_CURRENT_LEVEL,
 					new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 					importStudent.getClientID(), currLevel);
 		}
@@ -170,358 +223,201 @@ public class MySqlDbImports {
 
 	private void logMissingStudentData(StudentImportModel importStudent) {
 		if (importStudent.getIsInMasterDb() == 1 && importStudent.getBirthDate().equals(""))
-			MySqlDbLogging.insertLogData(LogDataModel.MISSING_BIRTHDATE,
+			AsyncLogSink.insertLogData(LogDataModel.MISSING_BIRTHDATE,
 					new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 					importStudent.getClientID(), "");
 
 		if (importStudent.getGradYear() == 0)
-			MySqlDbLogging.insertLogData(LogDataModel.MISSING_GRAD_YEAR,
+			AsyncLogSink.insertLogData(LogDataModel.MISSING_GRAD_YEAR,
 					new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 					importStudent.getClientID(), "");
 
 		if (importStudent.getHomeLocation() == 0) {
 			if (importStudent.getHomeLocAsString().equals(""))
-				MySqlDbLogging.insertLogData(LogDataModel.MISSING_HOME_LOCATION,
+				AsyncLogSink.insertLogData(LogDataModel.MISSING_HOME_LOCATION,
 						new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 						importStudent.getClientID(), "");
 			else
-				MySqlDbLogging.insertLogData(LogDataModel.UNKNOWN_HOME_LOCATION,
+				AsyncLogSink.insertLogData(LogDataModel.UNKNOWN_HOME_LOCATION,
 						new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 						importStudent.getClientID(), " (" + importStudent.getHomeLocAsString() + ")");
 		}
 
 		if (importStudent.getGender() == GenderModel.getGenderUnknown())
-			MySqlDbLogging.insertLogData(LogDataModel.MISSING_GENDER,
+			AsyncLogSink.insertLogData(LogDataModel.MISSING_GENDER,
 					new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
 					importStudent.getClientID(), "");
 	}
 
-	private ArrayList<StudentImportModel> getAllStudentsAsImportData() {
-		ArrayList<StudentImportModel> nameList = new ArrayList<StudentImportModel>();
-
-		// Convert student data to import data format
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT * FROM Students ORDER BY ClientID;");
-				ResultSet result = selectStmt.executeQuery();
-
-				while (result.next()) {
-					String startDateString;
-					if (result.getDate("StartDate") == null)
-						startDateString = "";
-					else
-						startDateString = result.getDate("StartDate").toString();
-
-					nameList.add(new StudentImportModel(result.getInt("ClientID"), result.getString("LastName"),
-							result.getString("FirstName"), result.getString("GithubName"), result.getInt("Gender"),
-							startDateString, result.getInt("Location"), result.getInt("GradYear"),
-							result.getInt("isInMasterDb"), result.getString("Email"), result.getString("AcctMgrEmail"),
-							result.getString("EmergencyEmail"), result.getString("Phone"),
-							result.getString("AcctMgrPhone"), result.getString("HomePhone"),
-							result.getString("EmergencyPhone"), result.getString("Birthdate"),
-							result.getString("TASinceDate"), result.getInt("TAPastEvents"),
-							result.getString("CurrentLevel"), result.getString("CurrentClass"),
-							result.getString("LastScore"), result.getString("RegisterClass")));
-				}
-
-				result.close();
-				selectStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("getAllStudentsAsImportData: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e2.getMessage());
-				break;
-			}
-		}
-		return nameList;
-	}
-
-	private void insertStudent(StudentImportModel student) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement addStudentStmt = sqlDb.dbConnection.prepareStatement(
-						"INSERT INTO Students (ClientID, LastName, FirstName, GithubName, NewGithub, NewStudent, "
-								+ "Gender, StartDate, Location, GradYear, isInMasterDb, Email, EmergencyEmail, "
-								+ "AcctMgrEmail, Phone, AcctMgrPhone, HomePhone, EmergencyPhone, Birthdate, "
-								+ "TASinceDate, TAPastEvents, CurrentLevel) "
-								+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
-
-				int col = 1;
-				addStudentStmt.setInt(col++, student.getClientID());
-				addStudentStmt.setString(col++, student.getLastName());
-				addStudentStmt.setString(col++, student.getFirstName());
-				if (student.getGithubName().equals(""))
-					addStudentStmt.setString(col++, null);
-				else
-					addStudentStmt.setString(col++, student.getGithubName());
-				addStudentStmt.setInt(col++, 0);
-				addStudentStmt.setInt(col++, 1);
-				addStudentStmt.setInt(col++, student.getGender());
-				if (!student.getStartDate().equals(""))
-					addStudentStmt.setDate(col++, java.sql.Date.valueOf(student.getStartDate()));
-				else
-					addStudentStmt.setDate(col++, null);
-				addStudentStmt.setInt(col++, student.getHomeLocation());
-				addStudentStmt.setInt(col++, student.getGradYear());
-				addStudentStmt.setString(col++, student.getEmail());
-				addStudentStmt.setString(col++, student.getEmergContactEmail());
-				addStudentStmt.setString(col++, student.getAccountMgrEmails());
-				addStudentStmt.setString(col++, student.getPhone1());
-				addStudentStmt.setString(col++, student.getAccountMgrPhones());
-				addStudentStmt.setString(col++, student.getPhone2());
-				addStudentStmt.setString(col++, student.getEmergContactPhone());
-				addStudentStmt.setString(col++, student.getBirthDate());
-				addStudentStmt.setString(col++, student.getStaffSinceDate());
-				addStudentStmt.setInt(col++, student.getStaffPastEvents());
-				addStudentStmt.setString(col++, student.getCurrLevel());
-
-				addStudentStmt.executeUpdate();
-				addStudentStmt.close();
-
-				if (student.getGithubName() == null)
-					System.out.println("Added new student: " + student.getFirstName() + " " + student.getLastName());
-//					MySqlDbLogging.insertLogData(LogDataModel.ADD_NEW_STUDENT_NO_GITHUB,
-//							new StudentNameModel(student.getFirstName(), student.getLastName(), true),
-//							student.getClientID(), "");
-				else
-					System.out.println("Added new student (no Github): " + student.getFirstName() + " " + student.getLastName());
-//					MySqlDbLogging.insertLogData(LogDataModel.ADD_NEW_STUDENT,
-//							new StudentNameModel(student.getFirstName(), student.getLastName(), true),
-//							student.getClientID(), "");
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("insertStudent: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				StudentNameModel studentModel = new StudentNameModel(student.getFirstName(), student.getLastName(),
-						student.getIsInMasterDb() == 1 ? true : false);
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, studentModel, 0, ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
 	private void updateStudent(StudentImportModel importStudent, StudentImportModel dbStudent) {
-		for (int i = 0; i < 2; i++) {
-			// Before updating database, determine what fields have changed
-			String changedFields = getStudentChangedFields(importStudent, dbStudent);
-			boolean newStudent = false;
-
-			// If student added back to DB, mark as new
-			if (changedFields.contains("Added back"))
-				newStudent = true;
-
-			// If student level just changed, clear module field and graduate student
-			if (changedFields.contains("Current Level") || changedFields.contains("Exam Score")) {
-				updateLastEventInfoByStudent(dbStudent.getClientID(), null, null, "NULL");
-				graduateStudent(importStudent, dbStudent);
-			}
-
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection.prepareStatement(
-						"UPDATE Students SET LastName=?, FirstName=?, GithubName=?, NewGithub=?, NewStudent=?,"
-								+ "Gender=?, StartDate=?, Location=?, GradYear=?, isInMasterDb=?, Email=?,"
-								+ "EmergencyEmail=?, AcctMgrEmail=?, Phone=?, AcctMgrPhone=?, HomePhone=?, "
-								+ "EmergencyPhone=?, Birthdate=?, TASinceDate=?, TAPastEvents=?, CurrentLevel=?, "
-								+ "LastScore=? WHERE ClientID=?;");
-
-				int col = 1;
-				updateStudentStmt.setString(col++, importStudent.getLastName());
-				updateStudentStmt.setString(col++, importStudent.getFirstName());
-				if (importStudent.getGithubName().equals(""))
-					updateStudentStmt.setString(col++, null);
-				else
-					updateStudentStmt.setString(col++, importStudent.getGithubName());
-				updateStudentStmt.setInt(col++, 0);
-				updateStudentStmt.setInt(col++, newStudent ? 1 : 0);
-				updateStudentStmt.setInt(col++, importStudent.getGender());
-				if (importStudent.getStartDate() != null && !importStudent.getStartDate().equals(""))
-					updateStudentStmt.setDate(col++, java.sql.Date.valueOf(importStudent.getStartDate()));
-				else {
-					updateStudentStmt.setDate(col++, null);
-				}
-				updateStudentStmt.setInt(col++, importStudent.getHomeLocation());
-				updateStudentStmt.setInt(col++, importStudent.getGradYear());
-				updateStudentStmt.setInt(col++, 1); // is in master DB
-				updateStudentStmt.setString(col++, importStudent.getEmail());
-				updateStudentStmt.setString(col++, importStudent.getEmergContactEmail());
-				updateStudentStmt.setString(col++, importStudent.getAccountMgrEmails());
-				updateStudentStmt.setString(col++, importStudent.getPhone1());
-				updateStudentStmt.setString(col++, importStudent.getAccountMgrPhones());
-				updateStudentStmt.setString(col++, importStudent.getPhone2());
-				updateStudentStmt.setString(col++, importStudent.getEmergContactPhone());
-				updateStudentStmt.setString(col++, importStudent.getBirthDate());
-				updateStudentStmt.setString(col++, importStudent.getStaffSinceDate());
-				updateStudentStmt.setInt(col++, importStudent.getStaffPastEvents());
-				updateStudentStmt.setString(col++, importStudent.getCurrLevel());
-				updateStudentStmt.setString(col++, importStudent.getLastExamScore());
-				updateStudentStmt.setInt(col, importStudent.getClientID());
-
-				updateStudentStmt.executeUpdate();
-				updateStudentStmt.close();
-
-				if (!changedFields.equals(""))
-					System.out.println("Updated " + importStudent.getFirstName() + " " + importStudent.getLastName() 
-							+ " " + changedFields);
-//					MySqlDbLogging.insertLogData(LogDataModel.UPDATE_STUDENT_INFO,
-//							new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
-//							importStudent.getClientID(), changedFields);
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateStudent: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				StudentNameModel studentModel = new StudentNameModel(importStudent.getFirstName(),
-						importStudent.getLastName(), true);
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, studentModel, 0, ": " + e2.getMessage());
-				break;
-			}
-		}
+		// Before updating database, determine what fields have changed
+		ArrayList<String> changedColumns = new ArrayList<String>();
+		String changedFields = getStudentChangedFields(importStudent, dbStudent, changedColumns);
+		boolean newStudent = false;
+
+		// If student added back to DB, mark as new
+		if (changedFields.contains("Added back"))
+			newStudent = true;
+
+		// If student level just changed, clear module field and graduate student
+		if (changedFields.contains("Current Level") || changedFields.contains("Exam Score")) {
+			store.updateLastEventInfoByStudent(dbStudent.getClientID(), null, null, "NULL");
+			graduateStudent(importStudent, dbStudent);
+		}
+
+		// Only the changed columns are written
+		store.updateStudent(importStudent, changedColumns, newStudent);
+
+		if (!changedFields.equals(""))
+			System.out.println("Updated " + importStudent.getFirstName() + " " + importStudent.getLastName() 
+					+ " " + changedFields);
+//			AsyncLogSink.insertLogData(LogDataModel.UPDATE_STUDENT_INFO,
+//					new StudentNameModel(importStudent.getFirstName(), importStudent.getLastName(), true),
+//					importStudent.getClientID(), changedFields);
 	}
 
-	private String getStudentChangedFields(StudentImportModel importStudent, StudentImportModel dbStudent) {
+	private String getStudentChangedFields(StudentImportModel importStudent, StudentImportModel dbStudent,
+			ArrayList<String> changedColumns) {
+		// Returns the changes for display, and adds each changed Students column to changedColumns
 		String changes = "";
 
 		if (!importStudent.getFirstName().equals(dbStudent.getFirstName())) {
+			changedColumns.add("FirstName");
 			if (changes.equals(""))
 				changes += " (first name";
 			else
 				changes += ", first name";
 		}
 		if (!importStudent.getLastName().equals(dbStudent.getLastName())) {
+			changedColumns.add("LastName");
 			if (changes.equals(""))
 				changes += " (last name";
 			else
 				changes += ", last name";
 		}
 		if (importStudent.getGender() != dbStudent.getGender()) {
+			changedColumns.add("Gender");
 			if (changes.equals(""))
 				changes += " (gender";
 			else
 				changes += ", gender";
 		}
 		if (!importStudent.getGithubName().equals(dbStudent.getGithubName())) {
+			changedColumns.add("GithubName");
 			if (changes.equals(""))
 				changes += " (Github user";
 			else
 				changes += ", Github user";
 		}
 		if (importStudent.getGradYear() != dbStudent.getGradYear()) {
+			changedColumns.add("GradYear");
 			if (changes.equals(""))
 				changes += " (Grad year";
 			else
 				changes += ", Grad year";
 		}
 		if (importStudent.getHomeLocation() != dbStudent.getHomeLocation()) {
+			changedColumns.add("Location");
 			if (changes.equals(""))
 				changes += " (Home Location";
 			else
 				changes += ", Home Location";
 		}
 		if (!importStudent.getStartDate().equals(dbStudent.getStartDate())) {
+			changedColumns.add("StartDate");
 			if (changes.equals(""))
 				changes += " (Start Date";
 			else
 				changes += ", Start Date";
 		}
 		if (!importStudent.getPhone1().equals(dbStudent.getPhone1())) {
+			changedColumns.add("Phone");
 			if (changes.equals(""))
 				changes += " (Mobile phone";
 			else
 				changes += ", Mobile phone";
 		}
 		if (!importStudent.getAccountMgrPhones().equals(dbStudent.getAccountMgrPhones())) {
+			changedColumns.add("AcctMgrPhone");
 			if (changes.equals(""))
 				changes += " (Acct mgr phone";
 			else
 				changes += ", Acct mgr phone";
 		}
 		if (!importStudent.getPhone2().equals(dbStudent.getPhone2())) {
+			changedColumns.add("HomePhone");
 			if (changes.equals(""))
 				changes += " (Home phone";
 			else
 				changes += ", Home phone";
 		}
 		if (!importStudent.getEmergContactPhone().equals(dbStudent.getEmergContactPhone())) {
+			changedColumns.add("EmergencyPhone");
 			if (changes.equals(""))
 				changes += " (Emerg phone";
 			else
 				changes += ", Emerg phone";
 		}
 		if (!importStudent.getEmail().equals(dbStudent.getEmail())) {
+			changedColumns.add("Email");
 			if (changes.equals(""))
 				changes += " (Student email";
 			else
 				changes += ", Student email";
 		}
 		if (!importStudent.getAccountMgrEmails().equals(dbStudent.getAccountMgrEmails())) {
+			changedColumns.add("AcctMgrEmail");
 			if (changes.equals(""))
 				changes += " (Acct Mgr email";
 			else
 				changes += ", Acct Mgr email";
 		}
 		if (!importStudent.getEmergContactEmail().equals(dbStudent.getEmergContactEmail())) {
+			changedColumns.add("EmergencyEmail");
 			if (changes.equals(""))
 				changes += " (Emerg email";
 			else
 				changes += ", Emerg email";
 		}
 		if (importStudent.getIsInMasterDb() != dbStudent.getIsInMasterDb()) {
+			changedColumns.add("isInMasterDb");
 			if (changes.equals(""))
 				changes += " (Added back to Master DB";
 			else
 				changes += ", Added back to Master DB";
 		}
 		if (!importStudent.getBirthDate().equals(dbStudent.getBirthDate())) {
+			changedColumns.add("Birthdate");
 			if (changes.equals(""))
 				changes += " (Birthdate";
 			else
 				changes += ", Birthdate";
 		}
 		if (!importStudent.getStaffSinceDate().equals(dbStudent.getStaffSinceDate())) {
+			changedColumns.add("TASinceDate");
 			if (changes.equals(""))
 				changes += " (TA since date";
 			else
 				changes += ", TA since date";
 		}
 		if (!importStudent.getCurrLevel().equals(dbStudent.getCurrLevel())) {
+			changedColumns.add("CurrentLevel");
 			if (changes.equals(""))
 				changes += " (Current Level " + importStudent.getCurrLevel();
 			else
 				changes += ", Current Level " + importStudent.getCurrLevel();
 		}
 		if (!importStudent.getLastExamScore().equals(dbStudent.getLastExamScore())) {
+			changedColumns.add("LastScore");
 			if (changes.equals(""))
 				changes += " (Last Exam Score " + importStudent.getLastExamScore();
 			else
 				changes += ", Last Exam Score " + importStudent.getLastExamScore();
 		}
 
+		if (importStudent.getStaffPastEvents() != dbStudent.getStaffPastEvents())
+			changedColumns.add("TAPastEvents");
+
 		if (!changes.equals(""))
 			changes += ")";
 
@@ -529,14 +425,15 @@ public class MySqlDbImports {
 	}
 
 	public ArrayList<StudentModel> getStudentsUsingFlag(String flagName) {
+		requireDatabase("getStudentsUsingFlag");
 		ArrayList<StudentModel> studentList = new ArrayList<StudentModel>();
 		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
 
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT * FROM Students WHERE " + flagName + " = 1;");
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT * FROM Students WHERE " + flagName + " = 1;");
 
 				ResultSet result = selectStmt.executeQuery();
 				while (result.next()) {
@@ -554,19 +451,18 @@ public class MySqlDbImports {
 				}
 
 				result.close();
-				selectStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("getStudentsUsingFlag: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
 						": " + e2.getMessage());
 				break;
 			}
@@ -575,44 +471,56 @@ public class MySqlDbImports {
 	}
 
 	public void updateStudentFlags(StudentModel student, String flagName, int newFlagState) {
+		requireDatabase("updateStudentFlags");
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Students SET " + flagName + "=? WHERE ClientID=?;");
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students SET " + flagName + "=? WHERE ClientID=?;");
 
 				updateStudentStmt.setInt(1, newFlagState);
 				updateStudentStmt.setInt(2, student.getClientID());
 
 				updateStudentStmt.executeUpdate();
-				updateStudentStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateStudentFlags: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, student.getNameModel(),
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, student.getNameModel(),
 						student.getClientID(), ": " + e2.getMessage());
 				break;
 			}
 		}
 	}
 
-	private void updateIsInMasterDb(StudentImportModel student, int isInMasterDb) {
+	public void updateStudentFlags(List<StudentModel> students, String flagName, int newFlagState) {
+		requireDatabase("updateStudentFlags");
+		if (students.size() == 0)
+			return;
+
+		// Update flag for all students in a single statement
+		String idList = "";
+		for (int i = 0; i < students.size(); i++)
+			idList += (i == 0) ? "?" : ", ?";
+
 		for (int i = 0; i < 2; i++) {
 			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Students SET isInMasterDb=? WHERE ClientID=?;");
+				// If Database no longer connected, the exception code will re-connect.
+				// Size of the ID list changes each time, so this statement is not cached.
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepareUncached("UPDATE Students SET " + flagName + "=? WHERE ClientID IN (" + idList + ");");
 
-				updateStudentStmt.setInt(1, isInMasterDb);
-				updateStudentStmt.setInt(2, student.getClientID());
+				int col = 1;
+				updateStudentStmt.setInt(col++, newFlagState);
+				for (StudentModel student : students)
+					updateStudentStmt.setInt(col++, student.getClientID());
 
 				updateStudentStmt.executeUpdate();
 				updateStudentStmt.close();
@@ -621,16 +529,14 @@ public class MySqlDbImports {
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
-					System.out.println("updateIsInMasterDb: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					System.out.println("updateStudentFlags: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				StudentNameModel model = new StudentNameModel(student.getFirstName(), student.getLastName(),
-						(isInMasterDb == 1) ? true : false);
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, student.getClientID(),
-						": " + e2.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" updating " + flagName + " flags: " + e2.getMessage());
 				break;
 			}
 		}
@@ -643,7 +549,7 @@ public class MySqlDbImports {
 
 			// Report error if no current level (assume level 0)
 			if (student.getCurrentLevel().equals("")) {
-				MySqlDbLogging.insertLogData(LogDataModel.MISSING_CURRENT_LEVEL, student.getNameModel(),
+				AsyncLogSink.insertLogData(LogDataModel.MISSING_CURRENT_LEVEL, student.getNameModel(),
 						student.getClientID(), ", Assuming Level 0");
 			} else
 				levelChar = student.getCurrentLevel().charAt(0);
@@ -651,35 +557,82 @@ public class MySqlDbImports {
 			// Update student's current class and last visit time
 			if (student.getLastVisitDate() == null
 					|| student.getLastVisitDateString().compareTo(importEvent.getServiceDateString()) < 0) {
-				updateLastEventInfoByStudent(student.getClientID(), eventName, importEvent.getServiceDateString(),
+				store.updateLastEventInfoByStudent(student.getClientID(), eventName, importEvent.getServiceDateString(),
 						null);
 			}
 
 			// Check if attendance event matches student's current level
 			if (eventName.startsWith("Java") && (levelChar < '0' || levelChar > '8')) {
 				// Class mismatch
-				MySqlDbLogging.insertLogData(LogDataModel.CLASS_LEVEL_MISMATCH, student.getNameModel(),
+				AsyncLogSink.insertLogData(LogDataModel.CLASS_LEVEL_MISMATCH, student.getNameModel(),
 						importEvent.getClientID(), " for " + eventName + " on " + importEvent.getServiceDateString()
 								+ ", Pike13 Level = " + student.getCurrentLevel());
 			}
 			
 		} else if (student.getLastVisitDate() != null && student.getLastVisitDateString().compareTo(importEvent.getServiceDateString()) < 0) {
 			// Update last visit date for jslam, jlab, extra, and ee classes 
-			updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
+			store.updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
 		}
 		
 		else if (student.getLastVisitDate() == null && importEvent.getEventName().contains("CYBERSLAM")) {
 			// Set last-visit-date for students doing only CYBERSLAM, no workshop or classes
-			updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
+			store.updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
+		}
+	}
+
+	public void loadStudentLevels() {
+		requireDatabase("loadStudentLevels");
+		// Read current level and module for all students at once, so that github module
+		// updates do not query per student. Use clearStudentLevels() when done.
+		IntKeyMap<StudentModel> levels = new IntKeyMap<StudentModel>();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT ClientID, CurrentLevel, CurrentModule FROM Students;");
+				ResultSet result = selectStmt.executeQuery();
+
+				while (result.next()) {
+					int clientID = result.getInt("ClientID");
+					levels.put(clientID, new StudentModel(clientID, result.getString("CurrentLevel"),
+							result.getString("CurrentModule")));
+				}
+
+				result.close();
+				studentLevels = levels;
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("loadStudentLevels: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				// Fall back to reading each student's level
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
 		}
 	}
 
+	public void clearStudentLevels() {
+		studentLevels = null;
+	}
+
 	private StudentModel getStudentCurrentLevel(int clientID) {
+		if (studentLevels != null)
+			return studentLevels.get(clientID);
+
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT CurrentLevel, CurrentModule FROM Students WHERE ClientID=?;");
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT CurrentLevel, CurrentModule FROM Students WHERE ClientID=?;");
 				selectStmt.setInt(1, clientID);
 				ResultSet result = selectStmt.executeQuery();
 
@@ -689,19 +642,18 @@ public class MySqlDbImports {
 				}
 
 				result.close();
-				selectStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("getStudentCurrentLevel: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
 						": " + e2.getMessage());
 				break;
 			}
@@ -762,126 +714,179 @@ public class MySqlDbImports {
 					// Done parsing repo name; update student module if changed
 					if (student.getCurrentModule() == null || newModuleName.compareTo(student.getCurrentModule()) > 0 || newModuleName.equals("E")) {
 						System.out.println("Update module for " + clientID + " to [" + currLevel + "][" + newModuleName + "], repo = " + repoName);
-						updateLastEventInfoByStudent(clientID, null, null, newModuleName);
+						store.updateLastEventInfoByStudent(clientID, null, null, newModuleName);
+						if (studentLevels != null)
+							studentLevels.put(clientID, new StudentModel(clientID, currLevel, newModuleName));
 					}
 				}
 			}
 		}
 	}
 
-	private void updateLastEventInfoByStudent(int clientID, String eventName, String lastVisitDate, String module) {
-		boolean addModule = false;
-		String separator = "";
-		String updateFields = "";
-
-		if (eventName != null) {
-			updateFields = "CurrentClass=? ";
-			separator = ", ";
-		}
-		if (module != null) {
-			if (module.equals("NULL"))
-				// Module cleared due to new class level
-				updateFields += separator + "CurrentModule=NULL ";
-			else {
-				updateFields += separator + "CurrentModule=? ";
-				addModule = true;
-			}
-		}
-		if (lastVisitDate != null)
-			updateFields += separator + "LastVisitDate=? ";
+	/*
+	 * ------- Import Watermark Queries -------
+	 */
+	public ImportWatermarkModel getImportWatermark(String endPoint) {
+		requireDatabase("getImportWatermark");
+		// Empty dates mean this endpoint has never been synced
+		ImportWatermarkModel watermark = new ImportWatermarkModel(endPoint, "", "");
 
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Students SET " + updateFields + "WHERE ClientID=?;");
+				createWatermarkTable();
+				PreparedStatement selectStmt = stmtCache.prepare(
+						"SELECT LastSyncDate, LastFullSyncDate FROM ImportWatermarks WHERE Endpoint=?;");
+				selectStmt.setString(1, endPoint);
+				ResultSet result = selectStmt.executeQuery();
 
-				int col = 1;
-				if (eventName != null)
-					updateStudentStmt.setString(col++, eventName);
-				if (addModule)
-					updateStudentStmt.setString(col++, module);
-				if (lastVisitDate != null)
-					updateStudentStmt.setDate(col++, java.sql.Date.valueOf(lastVisitDate));
-				updateStudentStmt.setInt(col, clientID);
+				if (result.next()) {
+					Date lastSync = result.getDate("LastSyncDate");
+					Date lastFullSync = result.getDate("LastFullSyncDate");
+					watermark = new ImportWatermarkModel(endPoint, lastSync == null ? "" : lastSync.toString(),
+							lastFullSync == null ? "" : lastFullSync.toString());
+				}
 
-				updateStudentStmt.executeUpdate();
-				updateStudentStmt.close();
+				result.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
-					System.out.println("updateLastEventInfoByStudent: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					System.out.println("getImportWatermark: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
-						clientID, ": " + e2.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" getting " + endPoint + " watermark: " + e2.getMessage());
 				break;
 			}
 		}
+		return watermark;
 	}
 
-	/*
-	 * ------- Attendance Import Database Queries -------
-	 */
-	public ArrayList<AttendanceEventModel> getAllEvents(String startDate) {
-		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
-
+	public void updateImportWatermark(String endPoint, String syncDate, boolean fullSync) {
+		requireDatabase("updateImportWatermark");
 		for (int i = 0; i < 2; i++) {
 			try {
-				// Get attendance data from the DB for all students
-				PreparedStatement selectStmt = sqlDb.dbConnection.prepareStatement(
-						"SELECT * FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID "
-								+ "AND (State = 'completed' OR State = 'registered') AND ServiceDate >= ? "
-								+ "ORDER BY Attendance.ClientID ASC, ServiceDate DESC, VisitID ASC;");
-				selectStmt.setString(1, startDate);
-				ResultSet result = selectStmt.executeQuery();
+				// Full sync date only moves forward on a full-window reconcile
+				createWatermarkTable();
+				PreparedStatement updateStmt = stmtCache.prepare(
+						"INSERT INTO ImportWatermarks (Endpoint, LastSyncDate, LastFullSyncDate) VALUES (?, ?, ?) "
+								+ "ON DUPLICATE KEY UPDATE LastSyncDate=VALUES(LastSyncDate), "
+								+ "LastFullSyncDate=IFNULL(VALUES(LastFullSyncDate), LastFullSyncDate);");
+				updateStmt.setString(1, endPoint);
+				updateStmt.setDate(2, java.sql.Date.valueOf(syncDate));
+				if (fullSync)
+					updateStmt.setDate(3, java.sql.Date.valueOf(syncDate));
+				else
+					updateStmt.setNull(3, java.sql.Types.DATE);
 
-				while (result.next()) {
-					eventList
-							.add(new AttendanceEventModel(result.getInt("ClientID"), result.getInt("VisitID"),
-									result.getDate("ServiceDate"), result.getString("ServiceTime"),
-									result.getString("EventName"), result.getString("GithubName"),
-									result.getString("RepoName"), result.getString("Comments"), result.getString("GitDescription"),
-									new StudentNameModel(result.getString("FirstName"), result.getString("LastName"),
-											true),
-									result.getString("ServiceCategory"), result.getString("State"),
-									result.getString("LastSFState"), result.getString("TeacherNames"),
-									result.getString("ClassLevel")));
+				updateStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateImportWatermark: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
 				}
 
-				result.close();
-				selectStmt.close();
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" updating " + endPoint + " watermark: " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	private void createWatermarkTable() throws SQLException {
+		// Watermark table is owned by the importer, so create it on first use
+		if (watermarkTableCreated)
+			return;
+
+		PreparedStatement createStmt = stmtCache.prepareUncached(
+				"CREATE TABLE IF NOT EXISTS ImportWatermarks (Endpoint VARCHAR(40) NOT NULL, "
+						+ "LastSyncDate DATE, LastFullSyncDate DATE, PRIMARY KEY (Endpoint));");
+		createStmt.executeUpdate();
+		createStmt.close();
+		watermarkTableCreated = true;
+	}
+
+	/*
+	 * ------- Import Metrics -------
+	 */
+	public void storeImportMetrics(String runDate, List<ImportMetrics.Metric> metrics) {
+		requireDatabase("storeImportMetrics");
+		// One row per metric per run date; re-running on the same day replaces the rows
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				createMetricsTable();
+				PreparedStatement insertStmt = stmtCache.prepare(
+						"REPLACE INTO ImportMetrics (RunDate, Name, Type, Count, TotalMsec, P50Msec, P95Msec, P99Msec, MaxMsec) "
+								+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);");
+				for (ImportMetrics.Metric metric : metrics) {
+					int col = 1;
+					insertStmt.setDate(col++, java.sql.Date.valueOf(runDate));
+					insertStmt.setString(col++, metric.getName().length() > METRIC_NAME_WIDTH
+							? metric.getName().substring(0, METRIC_NAME_WIDTH) : metric.getName());
+					insertStmt.setString(col++, metric.getType());
+					insertStmt.setLong(col++, metric.getCount());
+					insertStmt.setDouble(col++, metric.getTotalMsec());
+					insertStmt.setDouble(col++, metric.getP50Msec());
+					insertStmt.setDouble(col++, metric.getP95Msec());
+					insertStmt.setDouble(col++, metric.getP99Msec());
+					insertStmt.setDouble(col++, metric.getMaxMsec());
+					insertStmt.addBatch();
+				}
+
+				insertStmt.executeBatch();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
-					System.out.println("getAllEvents: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					System.out.println("storeImportMetrics: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e2.getMessage());
+				// Metrics are optional, so just report it
+				System.out.println("Failed to store import metrics: " + e2.getMessage());
 				break;
 			}
 		}
-		return eventList;
 	}
 
+	private void createMetricsTable() throws SQLException {
+		// Metrics table is owned by the importer, so create it on first use
+		if (metricsTableCreated)
+			return;
+
+		PreparedStatement createStmt = stmtCache.prepareUncached(
+				"CREATE TABLE IF NOT EXISTS ImportMetrics (RunDate DATE NOT NULL, Name VARCHAR(" + METRIC_NAME_WIDTH
+						+ ") NOT NULL, Type VARCHAR(10), Count BIGINT, TotalMsec DOUBLE, P50Msec DOUBLE, "
+						+ "P95Msec DOUBLE, P99Msec DOUBLE, MaxMsec DOUBLE, PRIMARY KEY (RunDate, Name));");
+		createStmt.executeUpdate();
+		createStmt.close();
+		metricsTableCreated = true;
+	}
+
+	/*
+	 * ------- Attendance Import Database Queries -------
+	 */
 	public ArrayList<AttendanceEventModel> getExpiredEvents(String sinceDate) {
+		requireDatabase("getExpiredEvents");
 		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
 
 		for (int i = 0; i < 2; i++) {
 			try {
 				// Get expired (not completed) attendance data
-				PreparedStatement selectStmt = sqlDb.dbConnection.prepareStatement(
+				PreparedStatement selectStmt = stmtCache.prepare(
 						"SELECT * FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID "
 								+ "AND State = 'registered' AND ServiceDate < ?;");
 				selectStmt.setString(1, sinceDate);
@@ -903,19 +908,18 @@ public class MySqlDbImports {
 				}
 
 				result.close();
-				selectStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("getExpiredEvents: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
 						": " + e2.getMessage());
 				break;
 			}
@@ -924,9 +928,9 @@ public class MySqlDbImports {
 	}
 
 	public void importAttendance(String startDate, ArrayList<AttendanceEventModel> importList, 
-			                     ArrayList<StudentModel> studentList, boolean fullList) {
+			                     StudentIndex<StudentModel> studentIndex, boolean fullList) {
 		// Import attendance from Pike13 to the Tracker database
-		ArrayList<AttendanceEventModel> dbList = getAllEvents(startDate);
+		ArrayList<AttendanceEventModel> dbList = store.getAllEvents(startDate);
 		int dbListIdx = 0;
 		int dbListSize = dbList.size();
 		Collections.sort(importList);
@@ -1001,15 +1005,15 @@ public class MySqlDbImports {
 					dbListIdx++;
 
 				} else {
-					int idx = getClientIdxInStudentList(studentList, importEvent.getClientID());
-					if (idx >= 0) {
+					StudentModel student = studentIndex.getByClientID(importEvent.getClientID());
+					if (student != null) {
 						if (compare == 1)
-							addAttendance(importEvent, teachers, studentList.get(idx));
+							addAttendance(importEvent, teachers, student);
 						else // state field has changed, so update
-							updateAttendanceState(importEvent, dbAttendance, teachers, studentList.get(idx));
+							updateAttendanceState(importEvent, dbAttendance, teachers, student);
 
 					} else
-						MySqlDbLogging.insertLogData(LogDataModel.STUDENT_NOT_FOUND,
+						AsyncLogSink.insertLogData(LogDataModel.STUDENT_NOT_FOUND,
 								new StudentNameModel(importEvent.getStudentNameModel().getFirstName(), "", false),
 								importEvent.getClientID(),
 								": " + importEvent.getEventName().trim() + " on " + importEvent.getServiceDateString());
@@ -1017,18 +1021,18 @@ public class MySqlDbImports {
 
 			} else {
 				// Data does not match existing student
-				int idx = getClientIdxInStudentList(studentList, importEvent.getClientID());
+				StudentModel student = studentIndex.getByClientID(importEvent.getClientID());
 
-				if (idx >= 0) {
+				if (student != null) {
 					// Student exists in DB, so add attendance data for this student
 					if (compare == 1)
-						addAttendance(importEvent, teachers, studentList.get(idx));
+						addAttendance(importEvent, teachers, student);
 					else // state field has changed, so update
-						updateAttendanceState(importEvent, dbAttendance, teachers, studentList.get(idx));
+						updateAttendanceState(importEvent, dbAttendance, teachers, student);
 
 				} else {
 					// Student not found
-					MySqlDbLogging.insertLogData(LogDataModel.STUDENT_NOT_FOUND,
+					AsyncLogSink.insertLogData(LogDataModel.STUDENT_NOT_FOUND,
 							new StudentNameModel(importEvent.getStudentNameModel().getFirstName(), "", false),
 							importEvent.getClientID(),
 							": " + importEvent.getEventName().trim() + " on " + importEvent.getServiceDateString());
@@ -1036,12 +1040,15 @@ public class MySqlDbImports {
 			}
 		}
 
+		// Write any attendance still waiting in the batch
+		flushAttendanceWrites();
+
 		if (fullList) {
 			// Delete registered classes that were canceled
 			String today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd");
 			for (AttendanceEventModel m : dbList) {
 				if (m.isMarkForDeletion() && m.getServiceDateString().compareTo(today) >= 0) {
-					deleteFromAttendance(m.getClientID(), m.getVisitID(), m.getStudentNameModel());
+					store.deleteFromAttendance(m.getClientID(), m.getVisitID(), m.getStudentNameModel());
 				}
 			}
 		}
@@ -1049,31 +1056,20 @@ public class MySqlDbImports {
 
 	public void updateAttendance(int clientID, StudentNameModel nameModel, String serviceDate, String eventName,
 			String repoName, String comments, String gitDescription) {
+		requireDatabase("updateAttendance");
 		PreparedStatement updateAttendanceStmt;
 		for (int i = 0; i < 2; i++) {
 			try {
 				// The only fields that should be updated are the comments and repo name
-				updateAttendanceStmt = sqlDb.dbConnection.prepareStatement(
-						"UPDATE Attendance SET Comments=?, RepoName=?, GitDescription=? WHERE ClientID=? AND ServiceDate=?;");
-
-				int col = 1;
-				if (comments != null && comments.length() >= COMMENT_WIDTH)
-					comments = comments.substring(0, COMMENT_WIDTH);
-				updateAttendanceStmt.setString(col++, comments);
-				if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
-					repoName = repoName.substring(0, REPO_NAME_WIDTH);
-				updateAttendanceStmt.setString(col++, repoName);
-				if (gitDescription != null && gitDescription.length() >= COMMENT_WIDTH)
-					updateAttendanceStmt.setString(col++, gitDescription.substring(0, COMMENT_WIDTH));
-				else
-					updateAttendanceStmt.setString(col++, gitDescription);
-				updateAttendanceStmt.setInt(col++, clientID);
-				updateAttendanceStmt.setDate(col++, java.sql.Date.valueOf(serviceDate));
+				updateAttendanceStmt = stmtCache.prepare(
+						UPDATE_COMMENTS_SQL);
 
+				setCommentFields(updateAttendanceStmt, clientID, serviceDate, repoName, comments, gitDescription);
 				updateAttendanceStmt.executeUpdate();
-				updateAttendanceStmt.close();
 
 				// Now update student latest module using repo name
+				if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+					repoName = repoName.substring(0, REPO_NAME_WIDTH);
 				updateStudentModule(clientID, getStudentCurrentLevel(clientID), repoName);
 				return;
 
@@ -1081,60 +1077,246 @@ public class MySqlDbImports {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateAttendance: " + clientID + " " + serviceDate + ", " + eventName + ", " +  e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e) {
 				e.printStackTrace();
 				StudentNameModel studentModel = new StudentNameModel(nameModel.getFirstName(), nameModel.getLastName(),
 						nameModel.getIsInMasterDb());
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, studentModel, clientID,
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, studentModel, clientID,
 						": " + e.getMessage());
 			}
 		}
 	}
 
-	public void deleteExpiredAttendance(ArrayList<AttendanceEventModel> attendList) {
-		for (AttendanceEventModel a : attendList) {
-			deleteFromAttendance(a.getClientID(), a.getVisitID(), a.getStudentNameModel());
-		}
-	}
-
-	public void createSortedAttendanceList() {
+	public void updateAttendanceComments(List<GithubCommentModel> commentList) {
+		requireDatabase("updateAttendanceComments");
+		// Same as updateAttendance, but all comment updates are sent as one batch
+		int[] updateCounts = null;
 		for (int i = 0; i < 2; i++) {
 			try {
-				// Empty the sorted list
-				PreparedStatement truncateStmt = sqlDb.dbConnection
-						.prepareStatement("TRUNCATE TABLE SortedAttendance;");
-				truncateStmt.executeUpdate();
-				truncateStmt.close();
-
-				// Now re-sort in descending date order
-				PreparedStatement insertStmt = sqlDb.dbConnection.prepareStatement("INSERT INTO SortedAttendance "
-						+ "SELECT * FROM Attendance ORDER BY ClientID, ServiceDate DESC, EventName;");
-				insertStmt.executeUpdate();
-				insertStmt.close();
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateAttendanceStmt = stmtCache.prepare(
+						UPDATE_COMMENTS_SQL);
+				for (GithubCommentModel comment : commentList) {
+					setCommentFields(updateAttendanceStmt, comment.getClientID(), comment.getServiceDate(),
+							comment.getRepoName(), comment.getComments(), comment.getGitDescription());
+					updateAttendanceStmt.addBatch();
+				}
+
+				updateCounts = updateAttendanceStmt.executeBatch();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
-					System.out.println("createSortedAttendanceList: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					System.out.println("updateAttendanceComments: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
 				}
 
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
-						" sorting: " + e2.getMessage());
+			} catch (BatchUpdateException e2) {
+				// Counts show which rows were written
+				updateCounts = e2.getUpdateCounts();
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				// Fall through to writing rows one at a time, which logs errors per student
 				break;
 			}
 		}
-	}
 
-	public ArrayList<AttendanceEventModel> getEventsWithNoComments(String startDate, int clientID,
-			boolean includeEmpty) {
-		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
+		for (int j = 0; j < commentList.size(); j++) {
+			GithubCommentModel comment = commentList.get(j);
+			if (updateCounts != null && j < updateCounts.length && updateCounts[j] != Statement.EXECUTE_FAILED) {
+				// Now update student latest module using repo name
+				String repoName = comment.getRepoName();
+				if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+					repoName = repoName.substring(0, REPO_NAME_WIDTH);
+				updateStudentModule(comment.getClientID(), getStudentCurrentLevel(comment.getClientID()), repoName);
+
+			} else
+				updateAttendance(comment.getClientID(), comment.getNameModel(), comment.getServiceDate(),
+						comment.getEventName(), comment.getRepoName(), comment.getComments(),
+						comment.getGitDescription());
+		}
+	}
+
+	private void setCommentFields(PreparedStatement updateAttendanceStmt, int clientID, String serviceDate,
+			String repoName, String comments, String gitDescription) throws SQLException {
+		int col = 1;
+		if (comments != null && comments.length() >= COMMENT_WIDTH)
+			comments = comments.substring(0, COMMENT_WIDTH);
+		updateAttendanceStmt.setString(col++, comments);
+		if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+			repoName = repoName.substring(0, REPO_NAME_WIDTH);
+		updateAttendanceStmt.setString(col++, repoName);
+		if (gitDescription != null && gitDescription.length() >= COMMENT_WIDTH)
+			updateAttendanceStmt.setString(col++, gitDescription.substring(0, COMMENT_WIDTH));
+		else
+			updateAttendanceStmt.setString(col++, gitDescription);
+		updateAttendanceStmt.setInt(col++, clientID);
+		updateAttendanceStmt.setDate(col++, java.sql.Date.valueOf(serviceDate));
+		updateAttendanceStmt.setString(col++, comments == null ? "" : comments);
+	}
+
+	public void appendAttendanceComments(List<GithubCommentModel> commentList) {
+		requireDatabase("appendAttendanceComments");
+		// One conditional UPDATE per comment: the append happens in the database, so
+		// the nightly import and the webhook never overwrite each other's comments
+		int[] updateCounts = null;
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement appendStmt = stmtCache.prepare(APPEND_COMMENTS_SQL);
+				for (GithubCommentModel comment : commentList) {
+					setAppendFields(appendStmt, comment);
+					appendStmt.addBatch();
+				}
+
+				updateCounts = appendStmt.executeBatch();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("appendAttendanceComments: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (BatchUpdateException e2) {
+				// Counts show which rows were written
+				updateCounts = e2.getUpdateCounts();
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				// Fall through to writing rows one at a time, which logs errors per student
+				break;
+			}
+		}
+
+		for (int j = 0; j < commentList.size(); j++) {
+			GithubCommentModel comment = commentList.get(j);
+			if (updateCounts != null && j < updateCounts.length && updateCounts[j] != Statement.EXECUTE_FAILED) {
+				// Now update student latest module using repo name
+				String repoName = comment.getRepoName();
+				if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+					repoName = repoName.substring(0, REPO_NAME_WIDTH);
+				updateStudentModule(comment.getClientID(), getStudentCurrentLevel(comment.getClientID()), repoName);
+
+			} else
+				appendAttendanceComment(comment);
+		}
+	}
+
+	private void appendAttendanceComment(GithubCommentModel comment) {
+		// Same as appendAttendanceComments, for a single row
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement appendStmt = stmtCache.prepare(APPEND_COMMENTS_SQL);
+				setAppendFields(appendStmt, comment);
+				appendStmt.executeUpdate();
+
+				// Now update student latest module using repo name
+				String repoName = comment.getRepoName();
+				if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+					repoName = repoName.substring(0, REPO_NAME_WIDTH);
+				updateStudentModule(comment.getClientID(), getStudentCurrentLevel(comment.getClientID()), repoName);
+				return;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("appendAttendanceComment: " + comment.getClientID() + " "
+							+ comment.getServiceDate() + ", " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e) {
+				e.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, comment.getNameModel(),
+						comment.getClientID(), ": " + e.getMessage());
+				break;
+			}
+		}
+	}
+
+	private void setAppendFields(PreparedStatement appendStmt, GithubCommentModel comment) throws SQLException {
+		// Commit summary is the first line of the message, description is the rest
+		String message = comment.getComments().trim();
+		String summary = message, description = "";
+		int idx = message.indexOf('\n');
+		if (idx > -1) {
+			summary = message.substring(0, idx);
+			description = message.substring(idx).replaceFirst("^\n+", "");
+		}
+		if (summary.length() >= COMMENT_WIDTH)
+			summary = summary.substring(0, COMMENT_WIDTH);
+		if (description.length() >= COMMENT_WIDTH)
+			description = description.substring(0, COMMENT_WIDTH);
+		String repoName = comment.getRepoName();
+		if (repoName != null && repoName.length() >= REPO_NAME_WIDTH)
+			repoName = repoName.substring(0, REPO_NAME_WIDTH);
+
+		int col = 1;
+		appendStmt.setString(col++, summary);
+		appendStmt.setString(col++, summary);
+		appendStmt.setString(col++, summary);
+		appendStmt.setString(col++, repoName);
+		appendStmt.setString(col++, description);
+		appendStmt.setInt(col++, comment.getClientID());
+		appendStmt.setDate(col++, java.sql.Date.valueOf(comment.getServiceDate()));
+	}
+
+	public void deleteExpiredAttendance(ArrayList<AttendanceEventModel> attendList) {
+		for (AttendanceEventModel a : attendList) {
+			store.deleteFromAttendance(a.getClientID(), a.getVisitID(), a.getStudentNameModel());
+		}
+	}
+
+	public void createSortedAttendanceList() {
+		requireDatabase("createSortedAttendanceList");
+		// Build the sorted copy in a shadow table, then swap it in with a single
+		// RENAME so that readers never see an empty or partial SortedAttendance.
+		String[] rebuildSql = {
+				"DROP TABLE IF EXISTS SortedAttendance_new, SortedAttendance_old;",
+				"CREATE TABLE SortedAttendance_new LIKE SortedAttendance;",
+				"INSERT INTO SortedAttendance_new "
+						+ "SELECT * FROM Attendance ORDER BY ClientID, ServiceDate DESC, EventName;",
+				"RENAME TABLE SortedAttendance TO SortedAttendance_old, SortedAttendance_new TO SortedAttendance;",
+				"DROP TABLE SortedAttendance_old;" };
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// DDL runs once per night, so no need to cache these statements
+				for (String sql : rebuildSql) {
+					PreparedStatement sortStmt = stmtCache.prepareUncached(sql);
+					sortStmt.executeUpdate();
+					sortStmt.close();
+				}
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("createSortedAttendanceList: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" sorting: " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	public ArrayList<AttendanceEventModel> getEventsWithNoComments(String startDate, int clientID,
+			boolean includeEmpty) {
+		requireDatabase("getEventsWithNoComments");
+		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
 
 		// Can either filter on null comments or both null + empty comments.
 		// Null comments transition to empty comments to mark them as processed.
@@ -1151,7 +1333,7 @@ public class MySqlDbImports {
 			try {
 				// Get attendance data from the DB for all students that have a github user name
 				// and the comment field is blank
-				PreparedStatement selectStmt = sqlDb.dbConnection.prepareStatement(
+				PreparedStatement selectStmt = stmtCache.prepareUncached(
 						"SELECT * FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID AND "
 								+ clientIdFilter + " AND State = 'completed' AND (CurrentLevel = '' OR CurrentLevel <= '5') "
 								+ "AND GithubName IS NOT NULL AND ServiceDate >= ? ORDER BY GithubName;");
@@ -1179,12 +1361,12 @@ public class MySqlDbImports {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("getEventsWithNoComments: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
 						": " + e2.getMessage());
 				break;
 			}
@@ -1193,14 +1375,15 @@ public class MySqlDbImports {
 	}
 
 	public ArrayList<PendingGithubModel> getPendingGithubEvents() {
+		requireDatabase("getPendingGithubEvents");
 		ArrayList<PendingGithubModel> eventList = new ArrayList<PendingGithubModel>();
 
 		for (int i = 0; i < 2; i++) {
 			try {
 				// Get pending github event data from the DB. This data is populated by
 				// a Github "hook" each time a student commits to a github classroom.
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT * FROM PendingGithub ORDER BY GitUser;");
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT * FROM PendingGithub ORDER BY GitUser;");
 				ResultSet result = selectStmt.executeQuery();
 
 				while (result.next()) {
@@ -1214,19 +1397,18 @@ public class MySqlDbImports {
 				}
 
 				result.close();
-				selectStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("getPendingGithubEvents: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e) {
 				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
 						": " + e.getMessage());
 				break;
 			}
@@ -1234,107 +1416,232 @@ public class MySqlDbImports {
 		return eventList;
 	}
 
-	private void deletePendingGithubEvent(int primaryID) {
-		PreparedStatement deleteGithubStmt;
+	private void deletePendingGithubEvents(List<Integer> primaryIDs) {
+		// Delete all processed records in a single statement
+		updatePendingGithubByID("DELETE FROM PendingGithub", primaryIDs, " deleting records: ");
+	}
+
+	private void updatePendingGithubByID(String sql, List<Integer> primaryIDs, String errorMessage) {
+		if (primaryIDs.size() == 0)
+			return;
+
+		StringBuilder idList = new StringBuilder();
+		for (int i = 0; i < primaryIDs.size(); i++)
+			idList.append((i == 0) ? "?" : ", ?");
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect.
+				// Size of the ID list changes each time, so this statement is not cached.
+				PreparedStatement updateStmt = stmtCache
+						.prepareUncached(sql + " WHERE PrimaryID IN (" + idList + ");");
+
+				int col = 1;
+				for (int primaryID : primaryIDs)
+					updateStmt.setInt(col++, primaryID);
+
+				updateStmt.executeUpdate();
+				updateStmt.close();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updatePendingGithubByID: " + e1.getMessage());
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e) {
+				e.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
+						errorMessage + e.getMessage());
+				break;
+			}
+		}
+	}
+
+	public boolean addPendingGithubEvents(ArrayList<PendingGithubModel> commits, String startDate) {
+		requireDatabase("addPendingGithubEvents");
+		// Webhook commits are stored like the ones from the classroom hook, then matched
+		// right away. Commits without attendance yet stay pending for the nightly import.
+		if (sqlDb.dbConnection == null) {
+			// Never connected, or last reconnect failed
+			reconnectDatabase();
+			if (sqlDb.dbConnection == null)
+				return false;
+		}
+		ArrayList<PendingGithubModel> pendingList = insertPendingGithubEvents(commits);
+		if (pendingList == null)
+			return false;
+
+		// Attendance, students and levels are kept between deliveries
+		if (githubMatchStudents == null || !startDate.equals(githubMatchStartDate)
+				|| System.currentTimeMillis() - githubMatchLoadTime > GITHUB_MATCH_REFRESH_MSEC) {
+			githubMatchAttend = getEventsWithNoComments(startDate, 0, true);
+			githubMatchStudents = StudentIndex.ofStudents(getActiveStudents());
+			loadStudentLevels();
+			githubMatchStartDate = startDate;
+			githubMatchLoadTime = System.currentTimeMillis();
+		}
+
+		boolean matched = false;
+		try {
+			matchPendingGithubComments(pendingList, startDate, githubMatchAttend, new ArrayList<AttendanceEventModel>(),
+					githubMatchStudents);
+			matched = true;
+
+		} finally {
+			// Re-read everything on the next delivery if matching failed part way
+			if (!matched)
+				clearGithubMatchData();
+		}
+		return true;
+	}
+
+	private void clearGithubMatchData() {
+		githubMatchAttend = null;
+		githubMatchStudents = null;
+		clearStudentLevels();
+	}
+
+	private ArrayList<PendingGithubModel> insertPendingGithubEvents(ArrayList<PendingGithubModel> commits) {
+		// Returns commits with their new primary IDs, or null if they were not stored
 		for (int i = 0; i < 2; i++) {
 			try {
-				deleteGithubStmt = sqlDb.dbConnection.prepareStatement("DELETE FROM PendingGithub WHERE PrimaryID=?;");
-				deleteGithubStmt.setInt(1, primaryID);
-				deleteGithubStmt.executeUpdate();
-				deleteGithubStmt.close();
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement insertGithubStmt = stmtCache.prepareUncached(
+						"INSERT INTO PendingGithub (GitUser, RepoName, ServiceDate, Comments) VALUES (?, ?, ?, ?);",
+						Statement.RETURN_GENERATED_KEYS);
+				for (PendingGithubModel commit : commits) {
+					insertGithubStmt.setString(1, commit.getGitUser());
+					insertGithubStmt.setString(2, commit.getRepoName());
+					insertGithubStmt.setString(3, commit.getServiceDate());
+					insertGithubStmt.setString(4, commit.getComments());
+					insertGithubStmt.addBatch();
+				}
+				insertGithubStmt.executeBatch();
+
+				ArrayList<PendingGithubModel> pendingList = new ArrayList<PendingGithubModel>();
+				ResultSet keys = insertGithubStmt.getGeneratedKeys();
+				for (PendingGithubModel commit : commits) {
+					if (!keys.next())
+						break;
+					pendingList.add(new PendingGithubModel(keys.getInt(1), commit.getGitUser(), commit.getRepoName(),
+							commit.getServiceDate(), commit.getComments()));
+				}
+				keys.close();
+				insertGithubStmt.close();
+				return pendingList;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
-					System.out.println("deletePendingGithubEvent: " + e1.getMessage());
-					sqlDb.connectDatabase();
+					System.out.println("insertPendingGithubEvents: " + e1.getMessage());
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e) {
 				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
-						" deleting record: " + e.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" adding records: " + e.getMessage());
 				break;
 			}
 		}
+		return null;
 	}
 
 	public void updatePendingGithubComments(ArrayList<PendingGithubModel> githubList, String startDate,
-			ArrayList<AttendanceEventModel> attendList, ArrayList<AttendanceEventModel> incompAttendList, ArrayList<StudentModel> studentList) {
-		
-		int origSize = githubList.size();
+			ArrayList<AttendanceEventModel> attendList, ArrayList<AttendanceEventModel> incompAttendList, StudentIndex<StudentModel> studentIndex) {
+		requireDatabase("updatePendingGithubComments");
+		// Status is re-computed for the whole table
 		clearAllPendGithubStatus();
+		matchPendingGithubComments(githubList, startDate, attendList, incompAttendList, studentIndex);
+	}
+
+	private void matchPendingGithubComments(ArrayList<PendingGithubModel> githubList, String startDate,
+			ArrayList<AttendanceEventModel> attendList, ArrayList<AttendanceEventModel> incompAttendList, StudentIndex<StudentModel> studentIndex) {
 		
+		int origSize = githubList.size();
+
+		// Index completed attendance by (gitUser, date) and incomplete attendance by (clientID, date)
+		HashMap<String, ArrayList<AttendanceEventModel>> attendByGitUserDate = new HashMap<String, ArrayList<AttendanceEventModel>>();
+		for (AttendanceEventModel event : attendList) {
+			String key = event.getGithubName().trim().toLowerCase() + "|" + event.getServiceDateString();
+			ArrayList<AttendanceEventModel> events = attendByGitUserDate.get(key);
+			if (events == null) {
+				events = new ArrayList<AttendanceEventModel>();
+				attendByGitUserDate.put(key, events);
+			}
+			events.add(event);
+		}
+		HashMap<String, String> incompStateByClientDate = new HashMap<String, String>();
+		for (AttendanceEventModel att : incompAttendList)
+			incompStateByClientDate.put(att.getClientID() + "|" + att.getServiceDateString(), att.getState());
+
+		ArrayList<PendingGithubModel> remainingList = new ArrayList<PendingGithubModel>();
+		ArrayList<Integer> deleteIDs = new ArrayList<Integer>();
+		ArrayList<Integer> missingGitIDs = new ArrayList<Integer>();
+		LinkedHashMap<Integer, String> gitStatus = new LinkedHashMap<Integer, String>();
+		ArrayList<GithubCommentModel> commentUpdates = new ArrayList<GithubCommentModel>();
+
 		// Process all the pending commits
-		for (int i = 0; i < githubList.size(); i++) {
+		for (PendingGithubModel pendingGit : githubList) {
 			// Get commit date
-			PendingGithubModel pendingGit = githubList.get(i);
 			String gitUser = pendingGit.getGitUser().toLowerCase().trim();
 			String commitDate = pendingGit.getServiceDate().substring(0, 10);
 
 			// Record is out-of-date (attendance never updated!), or teacher, so remove
-			if (commitDate.compareTo(startDate) < 0 || gitUser.equals("wavis421") || gitUser.equals("keithagroves")
-					|| gitUser.equals("davedleague") || gitUser.equals("sebastiantroncoso93")
-					|| gitUser.equals("codybsauer") || gitUser.equals("shacheeparikh") || gitUser.equals("tylercwiltz")
-					|| gitUser.equals("colbyschexnayder")
-					|| gitUser.equals("mwoguri")      // Michiyo
-					|| gitUser.equals("jaleague")     // Jackie
-					|| gitUser.equals("zaelix")       // Mike
-					|| gitUser.equals("dencee")       // Daniel
-					|| gitUser.equals("mjfre")        // Matt
-					|| gitUser.equals("awasicek")     // Andrew
-					|| gitUser.equals("dkunkler")     // David Kunkler, volunteer (parent of 3 students)
-					|| gitUser.equals("bschurter")    // Bruce Schurter, limited staff member
-					|| gitUser.equals("tsneuhaus")    // Tammy Neuhaus, limited staff member
-					|| gitUser.equals("rey-rey"))     // Rey Fidel, volunteer teacher
-			{
-				deletePendingGithubEvent(pendingGit.getPrimaryID());
-				githubList.remove(i);
-				i--;
+			if (commitDate.compareTo(startDate) < 0 || GITHUB_STAFF_USERS.contains(gitUser)) {
+				deleteIDs.add(pendingGit.getPrimaryID());
 				continue;
 			}
 
 			// Find gituser & date match in event list; append multiple comments
-			boolean foundMatch = false;
-			for (int j = 0; j < attendList.size(); j++) {
-				AttendanceEventModel event = attendList.get(j);
-				if (commitDate.equals(event.getServiceDateString())
-						&& gitUser.equals(event.getGithubName().trim().toLowerCase())) {
-					// Update comments & repo name
-					event.setGithubComments(pendingGit.getComments());
-					updateAttendance(event.getClientID(), event.getStudentNameModel(), commitDate, event.getEventName().trim(),
-							pendingGit.getRepoName(), event.getGithubComments(), event.getGitDescription());
-					foundMatch = true;
+			ArrayList<AttendanceEventModel> events = attendByGitUserDate.get(gitUser + "|" + commitDate);
+			if (events != null) {
+				for (AttendanceEventModel event : events) {
+					// Commit message is appended to the comments in the database
+					commentUpdates.add(new GithubCommentModel(event.getClientID(), event.getStudentNameModel(),
+							commitDate, event.getEventName().trim(), pendingGit.getRepoName(),
+							pendingGit.getComments(), null));
 				}
-			}
-			if (foundMatch) {
+
 				// This pending github record has been processed, so remove!
-				deletePendingGithubEvent(pendingGit.getPrimaryID());
-				githubList.remove(i);
-				i--;
+				deleteIDs.add(pendingGit.getPrimaryID());
 			}
 			else {
+				remainingList.add(pendingGit);
+
 				// No completed attendance found for this GitUser; now check incomplete attendance
-				StudentModel stud = findGithubUser (studentList, gitUser);
+				StudentModel stud = studentIndex.getByGithubName(gitUser);
 				if (stud == null) {
 					// This GitUser is not attached to any student in the DB, so mark as missing
-					setMissingGithub (pendingGit);
+					missingGitIDs.add(pendingGit.getPrimaryID());
 				}
 				else {
 					// Found student, so search incomplete attendance and update state in pending Github table
-					for (AttendanceEventModel att : incompAttendList) {
-						if (commitDate.equals(att.getServiceDateString()) && att.getClientID() == stud.getClientID())
-							setGithubStatus (pendingGit, att.getState());
-					}
+					String state = incompStateByClientDate.get(stud.getClientID() + "|" + commitDate);
+					if (state != null)
+						gitStatus.put(pendingGit.getPrimaryID(), state);
 				}
 			}
 		}
+
+		// Write all changes in batches
+		if (commentUpdates.size() > 0)
+			appendAttendanceComments(commentUpdates);
+		deletePendingGithubEvents(deleteIDs);
+		setMissingGithub(missingGitIDs);
+		setGithubStatus(gitStatus);
+
+		githubList.clear();
+		githubList.addAll(remainingList);
 		
 		if (origSize > githubList.size())
 			System.out.println((origSize - githubList.size()) + " pending github processed");
 	}
 	
-	private int addAttendance(AttendanceEventModel importEvent, String teacherNames, StudentModel student) {
+	private void addAttendance(AttendanceEventModel importEvent, String teacherNames, StudentModel student) {
 		// Update class level if <= L8
 		boolean addLevel = false;
 		String today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd");
@@ -1349,61 +1656,11 @@ public class MySqlDbImports {
 			updateStudentLastVisit(student, importEvent);
 		}
 
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement addAttendanceStmt;
-				if (addLevel)
-					addAttendanceStmt = sqlDb.dbConnection.prepareStatement(
-							"INSERT INTO Attendance (ClientID, ServiceDate, ServiceTime, EventName, VisitID, TeacherNames, "
-									+ "ServiceCategory, State, ClassLevel) " + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);");
-				else
-					addAttendanceStmt = sqlDb.dbConnection.prepareStatement(
-							"INSERT INTO Attendance (ClientID, ServiceDate, ServiceTime, EventName, VisitID, TeacherNames, "
-									+ "ServiceCategory, State) " + "VALUES (?, ?, ?, ?, ?, ?, ?, ?);");
-
-				int col = 1;
-				addAttendanceStmt.setInt(col++, importEvent.getClientID());
-				addAttendanceStmt.setDate(col++, java.sql.Date.valueOf(importEvent.getServiceDateString()));
-				addAttendanceStmt.setString(col++, importEvent.getServiceTime());
-				addAttendanceStmt.setString(col++, importEvent.getEventName().trim());
-				addAttendanceStmt.setInt(col++, importEvent.getVisitID());
-				addAttendanceStmt.setString(col++, teacherNames);
-				addAttendanceStmt.setString(col++, importEvent.getServiceCategory());
-				addAttendanceStmt.setString(col++, importEvent.getState());
-				if (addLevel)
-					addAttendanceStmt.setString(col, student.getCurrentLevel());
-
-				addAttendanceStmt.executeUpdate();
-				addAttendanceStmt.close();
-
-				// Now update student's last visit date (if not already done)
-				if (!addLevel)
-					updateLastVisitDate(importEvent, student, today);
-				return 1;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("addAttendance: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLIntegrityConstraintViolationException e2) {
-				// Attendance data already exists, do nothing
-				break;
-
-			} catch (SQLException | NullPointerException e3) {
-				e3.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, student.getNameModel(),
-						importEvent.getClientID(), ": " + e3.getMessage());
-				break;
-			}
-		}
-		return 0;
+		// Insert is written to the database with the next batch
+		queueAttendanceWrite(new AttendanceWriteModel(true, addLevel, importEvent, teacherNames, student));
 	}
 
-	private int updateAttendanceState(AttendanceEventModel importEvent, AttendanceEventModel dbAttendance,
+	private void updateAttendanceState(AttendanceEventModel importEvent, AttendanceEventModel dbAttendance,
 			String teachers, StudentModel student) {
 		// When transitioning to completed, update current level for students <= L8.
 		// Only set level for Slams & Make-ups.
@@ -1419,53 +1676,31 @@ public class MySqlDbImports {
 			updateStudentLastVisit(student, importEvent);
 		}
 
-		PreparedStatement updateAttendanceStmt;
-		for (int i = 0; i < 2; i++) {
-			try {
-				// The only fields that should be updated are the State & Teacher fields
-				if (addLevel)
-					updateAttendanceStmt = sqlDb.dbConnection.prepareStatement(
-							"UPDATE Attendance SET State=?, TeacherNames=?, ServiceTime=?, ClassLevel=?, EventName=? "
-									+ "WHERE ClientID=? AND VisitID=? AND ServiceDate=? AND (ServiceTime='' OR ServiceTime=?);");
-				else
-					updateAttendanceStmt = sqlDb.dbConnection
-							.prepareStatement("UPDATE Attendance SET State=?, TeacherNames=?, ServiceTime=?, EventName=? "
-									+ "WHERE ClientID=? AND VisitID=? AND ServiceDate=? AND (ServiceTime='' OR ServiceTime=?);");
-				int col = 1;
-				updateAttendanceStmt.setString(col++, importEvent.getState());
-				updateAttendanceStmt.setString(col++, teachers);
-				updateAttendanceStmt.setString(col++, importEvent.getServiceTime());
-				if (addLevel)
-					updateAttendanceStmt.setString(col++, student.getCurrentLevel());
-				updateAttendanceStmt.setString(col++,  importEvent.getEventName().trim());
-				updateAttendanceStmt.setInt(col++, importEvent.getClientID());
-				updateAttendanceStmt.setInt(col++, importEvent.getVisitID());
-				updateAttendanceStmt.setDate(col++, java.sql.Date.valueOf(importEvent.getServiceDateString()));
-				updateAttendanceStmt.setString(col++, importEvent.getServiceTime());
+		// Update is written to the database with the next batch
+		queueAttendanceWrite(new AttendanceWriteModel(false, addLevel, importEvent, teachers, student));
+	}
 
-				updateAttendanceStmt.executeUpdate();
-				updateAttendanceStmt.close();
+	private void queueAttendanceWrite(AttendanceWriteModel write) {
+		pendingAttendWrites.add(write);
+		if (pendingAttendWrites.size() >= attendBatchSize)
+			flushAttendanceWrites();
+	}
 
-				// Now update student's last visit date (if not already done)
-				if (!addLevel)
-					updateLastVisitDate(importEvent, student, today);
-				return 1;
+	private void flushAttendanceWrites() {
+		if (pendingAttendWrites.size() == 0)
+			return;
 
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateAttendanceState: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
+		String today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd");
+		boolean[] written = store.writeAttendance(pendingAttendWrites);
 
-			} catch (SQLException | NullPointerException e) {
-				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, student.getNameModel(),
-						importEvent.getClientID(), ": " + e.getMessage());
-				break;
-			}
+		for (int j = 0; j < pendingAttendWrites.size(); j++) {
+			AttendanceWriteModel write = pendingAttendWrites.get(j);
+
+			// Now update student's last visit date (if not already done)
+			if (written[j] && !write.isAddLevel())
+				updateLastVisitDate(write.getImportEvent(), write.getStudent(), today);
 		}
-		return 0;
+		pendingAttendWrites.clear();
 	}
 
 	private void updateLastVisitDate(AttendanceEventModel importEvent, StudentModel student, String today) {
@@ -1478,66 +1713,37 @@ public class MySqlDbImports {
 				// For student on LOA, do not update last visit date but set current class to LOA
 				System.out.println("LOA: " + student.getClientID() + ", " + student.getFirstName() + " " + student.getLastName() 
 					+ ", " + importEvent.getServiceDateString() + ", " + importEvent.getEventName());
-				updateLastEventInfoByStudent(student.getClientID(), "LOA", null, null);
+				store.updateLastEventInfoByStudent(student.getClientID(), "LOA", null, null);
 			}
 			else
-				updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
-		}
-	}
-
-	private void deleteFromAttendance(int clientID, int visitID, StudentNameModel studentModel) {
-		PreparedStatement deleteAttendanceStmt;
-		for (int i = 0; i < 2; i++) {
-			try {
-				deleteAttendanceStmt = sqlDb.dbConnection
-						.prepareStatement("DELETE FROM Attendance WHERE ClientID=? AND VisitID=?;");
-
-				deleteAttendanceStmt.setInt(1, clientID);
-				deleteAttendanceStmt.setInt(2, visitID);
-
-				deleteAttendanceStmt.executeUpdate();
-				deleteAttendanceStmt.close();
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("deleteFromAttendance: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e) {
-				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, studentModel, clientID,
-						" removing registered attendance record: " + e.getMessage());
-				break;
-			}
+				store.updateLastEventInfoByStudent(student.getClientID(), null, importEvent.getServiceDateString(), null);
 		}
 	}
 
 	public void updateAttendLevelChanges(int visitID, String state) {
+		requireDatabase("updateAttendLevelChanges");
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateAttendanceStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Attendance SET LastSFState = ? WHERE VisitID = ?;");
+				PreparedStatement updateAttendanceStmt = stmtCache
+						.prepare("UPDATE Attendance SET LastSFState = ? WHERE VisitID = ?;");
 
 				updateAttendanceStmt.setString(1, state);
 				updateAttendanceStmt.setInt(2, visitID);
 
 				updateAttendanceStmt.executeUpdate();
-				updateAttendanceStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateAttendLevelChanges: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
 						" updating LastSFState: " + e2.getMessage());
 				break;
 			}
@@ -1548,31 +1754,31 @@ public class MySqlDbImports {
 	 * ------- Graduation Import Database Queries -------
 	 */
 	public void updateGradInSfField(int clientID, String studentName, String clientLevelKey, boolean newValue) {
+		requireDatabase("updateGradInSfField");
 		// Graduation records are uniquely identified by clientID & level pair.
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateGraduateStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Graduation SET InSalesForce=? WHERE ClientID=? AND GradLevel=?;");
+				PreparedStatement updateGraduateStmt = stmtCache
+						.prepare("UPDATE Graduation SET InSalesForce=? WHERE ClientID=? AND GradLevel=?;");
 
 				updateGraduateStmt.setInt(1, newValue ? 1 : 0);
 				updateGraduateStmt.setInt(2, clientID);
 				updateGraduateStmt.setInt(3, Integer.parseInt(clientLevelKey.substring(7)));  // Level is appended after 7-digit ClientID
 
 				updateGraduateStmt.executeUpdate();
-				updateGraduateStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateGradInSfField: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR,
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR,
 						new StudentNameModel("", "", false), clientID, " for Graduation: " + e2.getMessage());
 				break;
 			}
@@ -1645,7 +1851,7 @@ public class MySqlDbImports {
 					+ dbStudent.getCurrLevel() + ", Score " + score);
 					
 			} else {
-				MySqlDbLogging.insertLogData(LogDataModel.EXAM_SCORE_INVALID,
+				AsyncLogSink.insertLogData(LogDataModel.EXAM_SCORE_INVALID,
 						new StudentNameModel(dbStudent.getFirstName(), dbStudent.getLastName(), true),
 						dbStudent.getClientID(),
 						" for Level " + dbStudent.getCurrLevel() + ": " + importStudent.getLastExamScore());
@@ -1654,7 +1860,7 @@ public class MySqlDbImports {
 			}
 
 			// Add graduation record to database
-			addGraduationRecord(new GraduationModel(dbStudent.getClientID(), dbStudent.getFullName(), dbCurrLevelNum,
+			store.addGraduationRecord(new GraduationModel(dbStudent.getClientID(), dbStudent.getFullName(), dbCurrLevelNum,
 					score, dbStudent.getCurrClass(),
 					getStartDateByClientIdAndLevel(dbStudent.getClientID(), dbCurrLevelNum),
 					new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles")).toString("yyyy-MM-dd"), false,
@@ -1674,159 +1880,46 @@ public class MySqlDbImports {
 
 		// Graduate each level skipped, up to 'newLevel'
 		for (int i = 0; i < newLevel; i++) {
-			addGraduationRecord(new GraduationModel(dbStudent.getClientID(), dbStudent.getFullName(), i, "",
+			store.addGraduationRecord(new GraduationModel(dbStudent.getClientID(), dbStudent.getFullName(), i, "",
 					dbStudent.getCurrClass(), today, today, false, true, false));
 		}
 	}
 
-	public void addGraduationRecord(GraduationModel gradModel) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// Insert graduation record into database
-				String cmdString = "INSERT INTO Graduation (ClientID, GradLevel, SkipLevel, Promoted, EndDate, CurrentClass";
-				String values = ") VALUES (?, ?, ?, ?, ?, ?";
-
-				// Don't update dates or score if no data
-				if (!gradModel.getStartDate().equals("")) {
-					cmdString += ", StartDate";
-					values += ", ?";
-				}
-				if (!gradModel.getScore().equals("")) {
-					cmdString += ", Score";
-					values += ", ?";
-				}
-
-				// Now add graduation info to database
-				PreparedStatement addGrad = sqlDb.dbConnection.prepareStatement(cmdString + values + ");");
-
-				// Fill in the input fields
-				int col = 1;
-				addGrad.setInt(col++, gradModel.getClientID());
-				addGrad.setInt(col++, gradModel.getGradLevel());
-				addGrad.setBoolean(col++, gradModel.isSkipLevel());
-				addGrad.setBoolean(col++, gradModel.isPromoted());
-				addGrad.setDate(col++, java.sql.Date.valueOf(gradModel.getEndDate()));
-				addGrad.setString(col++, gradModel.getCurrentClass());
-				if (!gradModel.getStartDate().equals(""))
-					addGrad.setDate(col++, java.sql.Date.valueOf(gradModel.getStartDate()));
-				if (!gradModel.getScore().equals(""))
-					addGrad.setString(col++, gradModel.getScore());
-
-				// Execute update
-				addGrad.executeUpdate();
-				addGrad.close();
-				break;
-
-			} catch (MySQLIntegrityConstraintViolationException e0) {
-				// Record already exists in database, so update instead
-				updateGraduationRecord(gradModel);
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("addGraduationRecord: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
-						gradModel.getClientID(), " for Graduation: " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void updateGraduationRecord(GraduationModel gradModel) {
-		// Graduation records are uniquely identified by clientID & level pair.
-		// Update EndDate/Score/SkipLevel/Promoted. Set 'in SF' false to force update.
-		for (int i = 0; i < 2; i++) {
-			try {
-				// Update graduation record in database
-				String cmdString = "UPDATE Graduation SET EndDate=?, " + MySqlDatabase.GRAD_MODEL_IN_SF_FIELD + "=0";
-
-				// Only update fields if valid
-				if (!gradModel.getScore().equals(""))
-					cmdString += ", Score=?";
-				if (gradModel.isSkipLevel())
-					cmdString += ", SkipLevel=?";
-				if (gradModel.isPromoted())
-					cmdString += ", Promoted=?";
-
-				// Update database
-				PreparedStatement updateGraduateStmt = sqlDb.dbConnection
-						.prepareStatement(cmdString + " WHERE ClientID=? AND GradLevel=?;");
-
-				// Fill in the input fields
-				int col = 1;
-				updateGraduateStmt.setDate(col++, java.sql.Date.valueOf(gradModel.getEndDate()));
-				if (!gradModel.getScore().equals(""))
-					updateGraduateStmt.setString(col++, gradModel.getScore());
-				if (gradModel.isSkipLevel())
-					updateGraduateStmt.setBoolean(col++, true);
-				if (gradModel.isPromoted())
-					updateGraduateStmt.setBoolean(col++, true);
-				updateGraduateStmt.setInt(col++, gradModel.getClientID());
-				updateGraduateStmt.setInt(col++, gradModel.getGradLevel());
-
-				// Execute update
-				updateGraduateStmt.executeUpdate();
-				updateGraduateStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateGraduationRecord: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
-						gradModel.getClientID(), " for Graduation: " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
 	public void removeProcessedGraduations() {
+		requireDatabase("removeProcessedGraduations");
 		for (int i = 0; i < 2; i++) {
 			try {
 				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection.prepareStatement("SELECT * FROM Graduation;");
+				PreparedStatement selectStmt = stmtCache.prepare("SELECT * FROM Graduation;");
 				ResultSet result = selectStmt.executeQuery();
 
 				while (result.next()) {
 					// When "in salesforce" flag is true, record can be removed
 					if (result.getBoolean(MySqlDatabase.GRAD_MODEL_IN_SF_FIELD)) {
 						// Graduation record has been processed, so remove from DB
-						PreparedStatement deleteGradStmt = sqlDb.dbConnection
-								.prepareStatement("DELETE FROM Graduation WHERE ClientID=? AND GradLevel=?;");
+						PreparedStatement deleteGradStmt = stmtCache
+								.prepare("DELETE FROM Graduation WHERE ClientID=? AND GradLevel=?;");
 
 						// Delete student
 						deleteGradStmt.setInt(1, result.getInt("ClientID"));
 						deleteGradStmt.setInt(2, result.getInt("GradLevel"));
 						deleteGradStmt.executeUpdate();
-						deleteGradStmt.close();
 					}
 				}
 
 				result.close();
-				selectStmt.close();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("removeProcessedGraduations: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
 						" for Graduation: " + e2.getMessage());
 				break;
 			}
@@ -1834,61 +1927,26 @@ public class MySqlDbImports {
 	}
 
 	private String getStartDateByClientIdAndLevel(int clientID, int level) {
-		String levelString = ((Integer) level).toString();
-
 		// Start date doesn't apply to AP or Oracle exams
-		if (level > 8)
+		if (level < 0 || level >= TrackerStore.NUM_START_DATE_LEVELS)
 			return "";
-		
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT ServiceDate, EventName, ClassLevel FROM Attendance "
-								+ "WHERE ClientID = ? AND State = 'completed' ORDER BY ServiceDate ASC;");
-				selectStmt.setInt(1, clientID);
 
-				ResultSet result = selectStmt.executeQuery();
+		// First graduation in this import reads the start dates for all students
+		if (levelStartDates == null)
+			levelStartDates = store.getFirstServiceDates();
 
-				while (result.next()) {
-					String eventName = result.getString("EventName");
-					String classLevel = result.getString("ClassLevel");
-					if ((eventName.charAt(1) == '@' && eventName.startsWith(levelString))
-							|| classLevel.equals(levelString)) {
-						String startDate = result.getDate("ServiceDate").toString();
-						if (startDate.compareTo("2017-09-30") < 0)
-							return "";
-						else
-							return startDate;
-					}
-				}
-
-				result.close();
-				selectStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("getStartDateByClientIdAndLevel: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e2.getMessage());
-				break;
-			}
-		}
-		return "";
+		String[] clientDates = levelStartDates.get(clientID);
+		if (clientDates == null || clientDates[level] == null || clientDates[level].compareTo("2017-09-30") < 0)
+			return "";
+		else
+			return clientDates[level];
 	}
 
 	/*
 	 * ------- Class Schedule Import Database Queries -------
 	 */
 	public void importSchedule(ArrayList<ScheduleModel> importList) {
-		ArrayList<ScheduleModel> dbList = sqlDb.getClassSchedule();
+		ArrayList<ScheduleModel> dbList = store.getClassSchedule();
 		int dbListIdx = 0;
 		int dbListSize = dbList.size();
 
@@ -1905,17 +1963,17 @@ public class MySqlDbImports {
 			if (compare == 0) {
 				// Class data matches, check misc fields
 				if (!dbList.get(dbListIdx).miscSchedFieldsMatch(importEvent))
-					updateClassInSchedule(dbList.get(dbListIdx), importEvent);
+					store.updateClassInSchedule(dbList.get(dbListIdx), importEvent);
 				dbListIdx++;
 
 			} else if (compare > 0) {
 				// Insert new event into DB
-				addClassToSchedule(importEvent);
+				store.addClassToSchedule(importEvent);
 
 			} else {
 				// Extra event(s) in database, so delete them
 				while (compare < 0) {
-					removeClassFromSchedule(dbList.get(dbListIdx));
+					store.removeClassFromSchedule(dbList.get(dbListIdx));
 					dbListIdx++;
 
 					if (dbListIdx < dbListSize)
@@ -1929,287 +1987,92 @@ public class MySqlDbImports {
 				if (compare == 0) {
 					// Match, so check misc fields then continue through list
 					if (!dbList.get(dbListIdx).miscSchedFieldsMatch(importEvent))
-						updateClassInSchedule(dbList.get(dbListIdx), importEvent);
+						store.updateClassInSchedule(dbList.get(dbListIdx), importEvent);
 					dbListIdx++;
 
 				} else {
 					// Insert new event into DB
-					addClassToSchedule(importEvent);
+					store.addClassToSchedule(importEvent);
 				}
 			}
 		}
 
 		// Delete extra entries at end of dbList
 		while (dbListIdx < dbListSize) {
-			removeClassFromSchedule(dbList.get(dbListIdx));
+			store.removeClassFromSchedule(dbList.get(dbListIdx));
 			dbListIdx++;
 		}
 	}
 
 	public void updateMissingCurrentClass() {
+		requireDatabase("updateMissingCurrentClass");
 		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
 		DateTime endDate = today.plusDays(7);
 
 		for (int i = 0; i < 2; i++) {
 			try {
-				// Get next registered class for student
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT Students.ClientID, EventName "
-								+ "FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID "
-								+ "AND CurrentClass = '' AND State = 'registered' AND ServiceDate >= ? AND ServiceDate <= ? "
-								+ "ORDER BY Students.ClientID, ServiceDate ASC;");
-				selectStmt.setString(1, today.toString("yyyy-MM-dd"));
-				selectStmt.setString(2, endDate.toString("yyyy-MM-dd"));
-				ResultSet result = selectStmt.executeQuery();
-
-				String lastClientID = "";
-				while (result.next()) {
-					String thisClientID = result.getString("Students.ClientID");
-					if (thisClientID.equals(lastClientID))
-						continue;
+				// Set current class to the next registered class, for all students without one
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students JOIN (SELECT ClientID, " + FIRST_EVENT_NAME + " AS NextClass "
+								+ "FROM Attendance WHERE State = 'registered' AND ServiceDate >= ? AND ServiceDate <= ? "
+								+ "GROUP BY ClientID) AS Registered ON Students.ClientID = Registered.ClientID "
+								+ "SET Students.CurrentClass = Registered.NextClass WHERE Students.CurrentClass = '';");
+				updateStudentStmt.setString(1, today.toString("yyyy-MM-dd"));
+				updateStudentStmt.setString(2, endDate.toString("yyyy-MM-dd"));
 
-					lastClientID = thisClientID;
-					updateLastEventInfoByStudent(Integer.parseInt(thisClientID), result.getString("EventName"), null,
-							null);
-				}
-
-				result.close();
-				selectStmt.close();
+				updateStudentStmt.executeUpdate();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateMissingCurrentClass: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
 				StudentNameModel model = new StudentNameModel("", "", false);
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, 0, ": " + e2.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, 0, ": " + e2.getMessage());
 				break;
 			}
 		}
 	}
 
 	public void updateRegisteredClass() {
+		requireDatabase("updateRegisteredClass");
 		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
 		DateTime endDate = today.plusDays(7);
 
-		// First clear all currently registered classes
-		clearRegisteredClasses();
-
 		for (int i = 0; i < 2; i++) {
 			try {
-				// Get next registered class for student.
-				// A registered class is only updated when different from the current class.
-				PreparedStatement selectStmt = sqlDb.dbConnection
-						.prepareStatement("SELECT Students.ClientID, EventName "
-								+ "FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID "
-								+ "AND LEFT(EventName,4) = 'Java' "
-								+ "AND CurrentClass != EventName AND State = 'registered' "
-								+ "AND ServiceDate >= ? AND ServiceDate <= ? ORDER BY Students.ClientID, ServiceDate ASC;");
-				selectStmt.setString(1, today.toString("yyyy-MM-dd"));
-				selectStmt.setString(2, endDate.toString("yyyy-MM-dd"));
-				ResultSet result = selectStmt.executeQuery();
+				// Set registered class to the next registered Java class for every student,
+				// clearing it for students with none (updated daily).
+				// A registered class is only set when different from the current class.
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students LEFT JOIN (SELECT Attendance.ClientID, " + FIRST_EVENT_NAME
+								+ " AS NextClass FROM Attendance JOIN Students ON Attendance.ClientID = Students.ClientID "
+								+ "WHERE LEFT(EventName,4) = 'Java' AND CurrentClass != EventName AND State = 'registered' "
+								+ "AND ServiceDate >= ? AND ServiceDate <= ? GROUP BY Attendance.ClientID) AS Registered "
+								+ "ON Students.ClientID = Registered.ClientID "
+								+ "SET Students.RegisterClass = IFNULL(Registered.NextClass, '');");
+				updateStudentStmt.setString(1, today.toString("yyyy-MM-dd"));
+				updateStudentStmt.setString(2, endDate.toString("yyyy-MM-dd"));
 
-				String lastClientID = "";
-				while (result.next()) {
-					String thisClientID = result.getString("Students.ClientID");
-					if (thisClientID.equals(lastClientID))
-						continue;
-
-					lastClientID = thisClientID;
-					updateRegisteredClassByStudent(result.getInt("ClientID"), result.getString("EventName"));
-				}
-
-				result.close();
-				selectStmt.close();
+				updateStudentStmt.executeUpdate();
 				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("updateRegisteredClass: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e2) {
 				e2.printStackTrace();
 				StudentNameModel model = new StudentNameModel("", "", false);
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, 0, ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void updateRegisteredClassByStudent(int clientID, String eventName) {
-		// Update registered (future) class for a student
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Students SET RegisterClass=? WHERE ClientID=?;");
-				updateStudentStmt.setString(1, eventName);
-				updateStudentStmt.setInt(2, clientID);
-
-				updateStudentStmt.executeUpdate();
-				updateStudentStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateRegisteredClassByStudent: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
-						clientID, ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void clearRegisteredClasses() {
-		// Clear registered classes field for all students (updated daily)
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateStudentStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Students SET RegisterClass = '';");
-
-				updateStudentStmt.executeUpdate();
-				updateStudentStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("clearRegisteredClasses: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void removeClassFromSchedule(ScheduleModel model) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement deleteClassStmt = sqlDb.dbConnection
-						.prepareStatement("DELETE FROM Schedule WHERE ScheduleID=?;");
-
-				// Delete class from schedule
-				deleteClassStmt.setInt(1, model.getScheduleID());
-				deleteClassStmt.executeUpdate();
-				deleteClassStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("removeClassFromSchedule: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, null, 0, ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void addClassToSchedule(ScheduleModel importEvent) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement addScheduleStmt = sqlDb.dbConnection.prepareStatement(
-						"INSERT INTO Schedule (DayOfWeek, StartTime, Duration, ClassName, NumStudents, "
-								+ "Youngest, Oldest, AverageAge, ModuleCount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);");
-
-				int col = 1;
-				String className = importEvent.getClassName();
-
-				addScheduleStmt.setInt(col++, importEvent.getDayOfWeek());
-				addScheduleStmt.setString(col++, importEvent.getStartTime());
-				addScheduleStmt.setInt(col++, importEvent.getDuration());
-				if (className.length() >= CLASS_NAME_WIDTH)
-					className = className.substring(0, CLASS_NAME_WIDTH);
-				addScheduleStmt.setString(col++, className);
-				addScheduleStmt.setInt(col++, importEvent.getAttCount());
-				addScheduleStmt.setString(col++, importEvent.getYoungest());
-				addScheduleStmt.setString(col++, importEvent.getOldest());
-				addScheduleStmt.setString(col++, importEvent.getAverageAge());
-				addScheduleStmt.setString(col++, importEvent.getModuleCount());
-
-				addScheduleStmt.executeUpdate();
-				addScheduleStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("addClassToSchedule: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLIntegrityConstraintViolationException e2) {
-				// Schedule data already exists, do nothing
-				break;
-
-			} catch (SQLException | NullPointerException e3) {
-				e3.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e3.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void updateClassInSchedule(ScheduleModel dbEvent, ScheduleModel pike13Event) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateScheduleStmt = sqlDb.dbConnection.prepareStatement(
-						"UPDATE Schedule SET NumStudents=?, Youngest=?, Oldest=?, AverageAge=?, ModuleCount=?, "
-								+ "Room=?, RoomMismatch=? WHERE ScheduleID=?;");
-
-				int col = 1;
-				updateScheduleStmt.setInt(col++, pike13Event.getAttCount());
-				updateScheduleStmt.setString(col++, pike13Event.getYoungest());
-				updateScheduleStmt.setString(col++, pike13Event.getOldest());
-				updateScheduleStmt.setString(col++, pike13Event.getAverageAge());
-				updateScheduleStmt.setString(col++, pike13Event.getModuleCount());
-				updateScheduleStmt.setString(col++, pike13Event.getRoom());
-				updateScheduleStmt.setBoolean(col++, pike13Event.getRoomMismatch());
-				updateScheduleStmt.setInt(col, dbEvent.getScheduleID());
-
-				updateScheduleStmt.executeUpdate();
-				updateScheduleStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateClassInSchedule: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e3) {
-				e3.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e3.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, 0, ": " + e2.getMessage());
 				break;
 			}
 		}
@@ -2219,7 +2082,7 @@ public class MySqlDbImports {
 	 * ------- Courses Import Database Queries -------
 	 */
 	public void importCourses(ArrayList<CoursesModel> importList) {
-		ArrayList<CoursesModel> dbList = sqlDb.getCourseSchedule("CourseID");
+		ArrayList<CoursesModel> dbList = store.getCourseSchedule();
 		int dbListIdx = 0;
 		int dbListSize = dbList.size();
 		int lastCourseIdx = 0;
@@ -2245,17 +2108,17 @@ public class MySqlDbImports {
 
 			} else if (compare == 1) {
 				// Insert new event into DB
-				addCourseToSchedule(importEvent);
+				store.addCourseToSchedule(importEvent);
 
 			} else if (compare == 2) {
 				// Same record but content has changed, so update
-				updateCourse(importEvent);
+				store.updateCourse(importEvent);
 				dbListIdx++;
 
 			} else {
 				// Extra event(s) in database, so delete them
 				while (compare < 0) {
-					removeCourseFromSchedule(dbList.get(dbListIdx));
+					store.removeCourseFromSchedule(dbList.get(dbListIdx));
 					dbListIdx++;
 
 					compare = 1;
@@ -2270,11 +2133,11 @@ public class MySqlDbImports {
 
 				} else if (compare == 1) {
 					// Insert new event into DB
-					addCourseToSchedule(importEvent);
+					store.addCourseToSchedule(importEvent);
 
 				} else if (compare == 2) {
 					// Same record but content has changed, so update
-					updateCourse(importEvent);
+					store.updateCourse(importEvent);
 					dbListIdx++;
 				}
 			}
@@ -2282,197 +2145,73 @@ public class MySqlDbImports {
 
 		// Delete extra entries at end of dbList
 		while (dbListIdx < dbListSize) {
-			removeCourseFromSchedule(dbList.get(dbListIdx));
+			store.removeCourseFromSchedule(dbList.get(dbListIdx));
 			dbListIdx++;
 		}
 	}
 
-	private void addCourseToSchedule(CoursesModel courseEvent) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement addCourseStmt = sqlDb.dbConnection
-						.prepareStatement("INSERT INTO Courses (CourseID, EventName, Enrolled) " + "VALUES (?, ?, ?);");
-
-				int col = 1;
-				addCourseStmt.setInt(col++, courseEvent.getScheduleID());
-				addCourseStmt.setString(col++, courseEvent.getEventName().trim());
-				addCourseStmt.setInt(col, courseEvent.getEnrollment());
-
-				addCourseStmt.executeUpdate();
-				addCourseStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("addCourseToSchedule: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLIntegrityConstraintViolationException e2) {
-				// Schedule data already exists, do nothing
-				break;
-
-			} catch (SQLException | NullPointerException e3) {
-				e3.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.COURSES_DB_ERROR, new StudentNameModel("", "", false), 0,
-						": " + e3.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void updateCourse(CoursesModel course) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement updateCourseStmt = sqlDb.dbConnection
-						.prepareStatement("UPDATE Courses SET EventName=?, Enrolled=? WHERE CourseID=?;");
-
-				int col = 1;
-				updateCourseStmt.setString(col++, course.getEventName().trim());
-				updateCourseStmt.setInt(col++, course.getEnrollment());
-				updateCourseStmt.setInt(col, course.getScheduleID());
-
-				updateCourseStmt.executeUpdate();
-				updateCourseStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("updateCourse: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				StudentNameModel studentModel = new StudentNameModel("", "", true);
-				MySqlDbLogging.insertLogData(LogDataModel.COURSES_DB_ERROR, studentModel, 0,
-						" for " + course.getEventName().trim() + ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
-	private void removeCourseFromSchedule(CoursesModel course) {
-		for (int i = 0; i < 2; i++) {
-			try {
-				// If Database no longer connected, the exception code will re-connect
-				PreparedStatement deleteClassStmt = sqlDb.dbConnection
-						.prepareStatement("DELETE FROM Courses WHERE CourseID=?;");
-
-				// Delete class from schedule
-				deleteClassStmt.setInt(1, course.getScheduleID());
-				deleteClassStmt.executeUpdate();
-				deleteClassStmt.close();
-				break;
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("removeCourseFromSchedule: " + e1.getMessage() + ", " + e1);
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e2) {
-				e2.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.COURSES_DB_ERROR, null, 0, ": " + e2.getMessage());
-				break;
-			}
-		}
-	}
-
 	/*
 	 * ------- Github utilities -------
 	 */
-	private StudentModel findGithubUser (ArrayList<StudentModel> students, String gitUser)
-	{
-		// Find the Git User name in the student list
-		for (StudentModel s : students) {
-			if (s.getGithubName() != null && gitUser.equals(s.getGithubName().toLowerCase().trim()))
-				return s;
-		}
-		return null;
-	}
-	
 	private void clearAllPendGithubStatus ()
 	{
 		// Clear all the missed Git and Git state in the Pending Github table
 		PreparedStatement clrPendingGitStmt;
 		for (int i = 0; i < 2; i++) {
 			try {
-				clrPendingGitStmt = sqlDb.dbConnection.prepareStatement("UPDATE PendingGithub SET GotGit='', Status='';");
+				clrPendingGitStmt = stmtCache.prepare("UPDATE PendingGithub SET GotGit='', Status='';");
 				clrPendingGitStmt.executeUpdate();
-				clrPendingGitStmt.close();
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("clearAllGithubStatus: " + e1.getMessage());
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e) {
 				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
+				AsyncLogSink.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
 						" clearing git status: " + e.getMessage());
 				break;
 			}
 		}
 	}
 	
-	private void setMissingGithub (PendingGithubModel git)
+	private void setMissingGithub (List<Integer> primaryIDs)
 	{
-		// Set the GotGit field in the given Pending Github record
-		PreparedStatement setMissingGitStmt;
-		for (int i = 0; i < 2; i++) {
-			try {
-				setMissingGitStmt = sqlDb.dbConnection.prepareStatement("UPDATE PendingGithub SET GotGit='?' WHERE PrimaryID=?;");
-				setMissingGitStmt.setInt(1, git.getPrimaryID());
-				setMissingGitStmt.executeUpdate();
-				setMissingGitStmt.close();
-
-			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
-				if (i == 0) {
-					// First attempt to re-connect
-					System.out.println("setMissingGithub: " + e1.getMessage());
-					sqlDb.connectDatabase();
-				}
-
-			} catch (SQLException | NullPointerException e) {
-				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
-						" updating missing git in record: " + e.getMessage());
-				break;
-			}
-		}
+		// Set the GotGit field in the given Pending Github records
+		updatePendingGithubByID("UPDATE PendingGithub SET GotGit='?'", primaryIDs, " updating missing git in records: ");
 	}
-	
-	private void setGithubStatus (PendingGithubModel git, String status)
+	private void setGithubStatus (Map<Integer, String> gitStatus)
 	{
-		// Set the State field in the given Pending Github record
+		// Set the State field in the given Pending Github records
+		if (gitStatus.size() == 0)
+			return;
+
 		PreparedStatement setGitStatusStmt;
 		for (int i = 0; i < 2; i++) {
 			try {
-				setGitStatusStmt = sqlDb.dbConnection.prepareStatement("UPDATE PendingGithub SET Status=? WHERE PrimaryID=?;");
-				setGitStatusStmt.setString(1, status);
-				setGitStatusStmt.setInt(2, git.getPrimaryID());
-				setGitStatusStmt.executeUpdate();
-				setGitStatusStmt.close();
+				setGitStatusStmt = stmtCache.prepare("UPDATE PendingGithub SET Status=? WHERE PrimaryID=?;");
+				for (Map.Entry<Integer, String> entry : gitStatus.entrySet()) {
+					setGitStatusStmt.setString(1, entry.getValue());
+					setGitStatusStmt.setInt(2, entry.getKey());
+					setGitStatusStmt.addBatch();
+				}
+				setGitStatusStmt.executeBatch();
+				break;
 
 			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
 				if (i == 0) {
 					// First attempt to re-connect
 					System.out.println("setGithubStatus: " + e1.getMessage());
-					sqlDb.connectDatabase();
+					reconnectDatabase();
 				}
 
 			} catch (SQLException | NullPointerException e) {
 				e.printStackTrace();
-				MySqlDbLogging.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
-						" updating git status in record: " + e.getMessage());
+				AsyncLogSink.insertLogData(LogDataModel.GITHUB_DB_ERROR, new StudentNameModel("", "", false), 0,
+						" updating git status in records: " + e.getMessage());
 				break;
 			}
 		}
@@ -2514,11 +2253,4 @@ public class MySqlDbImports {
 		return teachers;
 	}
 
-	private int getClientIdxInStudentList(ArrayList<StudentModel> list, int clientID) {
-		for (int i = 0; i < list.size(); i++) {
-			if (list.get(i).getClientID() == clientID)
-				return i;
-		}
-		return -1;
-	}
 }
@@ -0,0 +1,1067 @@
+package model;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import com.mysql.jdbc.exceptions.jdbc4.CommunicationsException;
+import com.mysql.jdbc.exceptions.jdbc4.MySQLIntegrityConstraintViolationException;
+import com.mysql.jdbc.exceptions.jdbc4.MySQLNonTransientConnectionException;
+
+/**
+ * MySqlTrackerStore: Tracker store backed by the Student Tracker AWS Database.
+ * Shares the statement cache with MySqlDbImports so both re-connect together.
+ * 
+ * @author wavis
+ *
+ */
+public class MySqlTrackerStore implements TrackerStore {
+	private static final int CLASS_NAME_WIDTH = 40;
+
+	// Attendance insert & update statements, with and without class level
+	private static final String[] ATTEND_WRITE_SQL = {
+			"INSERT INTO Attendance (ClientID, ServiceDate, ServiceTime, EventName, VisitID, TeacherNames, "
+					+ "ServiceCategory, State) VALUES (?, ?, ?, ?, ?, ?, ?, ?);",
+			"INSERT INTO Attendance (ClientID, ServiceDate, ServiceTime, EventName, VisitID, TeacherNames, "
+					+ "ServiceCategory, State, ClassLevel) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);",
+			"UPDATE Attendance SET State=?, TeacherNames=?, ServiceTime=?, EventName=? "
+					+ "WHERE ClientID=? AND VisitID=? AND ServiceDate=? AND (ServiceTime='' OR ServiceTime=?);",
+			"UPDATE Attendance SET State=?, TeacherNames=?, ServiceTime=?, ClassLevel=?, EventName=? "
+					+ "WHERE ClientID=? AND VisitID=? AND ServiceDate=? AND (ServiceTime='' OR ServiceTime=?);" };
+
+	private MySqlDatabase sqlDb;
+	private PreparedStatementCache stmtCache;
+
+	public MySqlTrackerStore(MySqlDatabase sqlDb, PreparedStatementCache stmtCache) {
+		this.sqlDb = sqlDb;
+		this.stmtCache = stmtCache;
+	}
+
+	private void reconnectDatabase() {
+		// Shared with the other import threads and the log sink
+		stmtCache.reconnectDatabase();
+	}
+
+	/*
+	 * ------- Students -------
+	 */
+	public ArrayList<StudentImportModel> getAllStudentsAsImportData() {
+		ArrayList<StudentImportModel> nameList = new ArrayList<StudentImportModel>();
+
+		// Convert student data to import data format
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT * FROM Students ORDER BY ClientID;");
+				ResultSet result = selectStmt.executeQuery();
+
+				while (result.next()) {
+					String startDateString;
+					if (result.getDate("StartDate") == null)
+						startDateString = "";
+					else
+						startDateString = result.getDate("StartDate").toString();
+
+					nameList.add(new StudentImportModel(result.getInt("ClientID"), result.getString("LastName"),
+							result.getString("FirstName"), result.getString("GithubName"), result.getInt("Gender"),
+							startDateString, result.getInt("Location"), result.getInt("GradYear"),
+							result.getInt("isInMasterDb"), result.getString("Email"), result.getString("AcctMgrEmail"),
+							result.getString("EmergencyEmail"), result.getString("Phone"),
+							result.getString("AcctMgrPhone"), result.getString("HomePhone"),
+							result.getString("EmergencyPhone"), result.getString("Birthdate"),
+							result.getString("TASinceDate"), result.getInt("TAPastEvents"),
+							result.getString("CurrentLevel"), result.getString("CurrentClass"),
+							result.getString("LastScore"), result.getString("RegisterClass")));
+				}
+
+				result.close();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("getAllStudentsAsImportData: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
+		}
+		return nameList;
+	}
+
+	public ArrayList<StudentModel> getActiveStudents() {
+		ArrayList<StudentModel> nameList = new ArrayList<StudentModel>();
+		DateTime today = new DateTime().withZone(DateTimeZone.forID("America/Los_Angeles"));
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT * FROM Students WHERE isInMasterDb ORDER BY FirstName, LastName;");
+				ResultSet result = selectStmt.executeQuery();
+
+				while (result.next()) {
+					nameList.add(new StudentModel(result.getInt("ClientID"),
+							new StudentNameModel(result.getString("FirstName"), result.getString("LastName"),
+									result.getBoolean("isInMasterDb")),
+							sqlDb.getAge(today, result.getString("Birthdate")), result.getString("GithubName"),
+							result.getInt("Gender"), result.getDate("StartDate"), result.getInt("Location"),
+							result.getInt("GradYear"), result.getString("CurrentClass"), result.getString("Email"),
+							result.getString("AcctMgrEmail"), result.getString("EmergencyEmail"),
+							result.getString("Phone"), result.getString("AcctMgrPhone"), result.getString("HomePhone"),
+							result.getString("EmergencyPhone"), result.getString("CurrentModule"),
+							result.getString("CurrentLevel"), result.getString("RegisterClass"),
+							result.getDate("LastVisitDate")));
+				}
+
+				result.close();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("getActiveStudents: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
+		}
+		return nameList;
+	}
+
+	public int getMaxClientID() {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement selectStmt = stmtCache
+						.prepare("SELECT MAX(ClientID) AS MaxClientID FROM Students;");
+				ResultSet result = selectStmt.executeQuery();
+
+				int maxClientID = 0;
+				if (result.next())
+					maxClientID = result.getInt("MaxClientID");
+
+				result.close();
+				return maxClientID;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("getMaxClientID: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
+		}
+		return 0;
+	}
+
+	public void insertStudent(StudentImportModel student) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement addStudentStmt = stmtCache.prepare(
+						"INSERT INTO Students (ClientID, LastName, FirstName, GithubName, NewGithub, NewStudent, "
+								+ "Gender, StartDate, Location, GradYear, isInMasterDb, Email, EmergencyEmail, "
+								+ "AcctMgrEmail, Phone, AcctMgrPhone, HomePhone, EmergencyPhone, Birthdate, "
+								+ "TASinceDate, TAPastEvents, CurrentLevel) "
+								+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
+
+				int col = 1;
+				addStudentStmt.setInt(col++, student.getClientID());
+				addStudentStmt.setString(col++, student.getLastName());
+				addStudentStmt.setString(col++, student.getFirstName());
+				if (student.getGithubName().equals(""))
+					addStudentStmt.setString(col++, null);
+				else
+					addStudentStmt.setString(col++, student.getGithubName());
+				addStudentStmt.setInt(col++, 0);
+				addStudentStmt.setInt(col++, 1);
+				addStudentStmt.setInt(col++, student.getGender());
+				if (!student.getStartDate().equals(""))
+					addStudentStmt.setDate(col++, java.sql.Date.valueOf(student.getStartDate()));
+				else
+					addStudentStmt.setDate(col++, null);
+				addStudentStmt.setInt(col++, student.getHomeLocation());
+				addStudentStmt.setInt(col++, student.getGradYear());
+				addStudentStmt.setString(col++, student.getEmail());
+				addStudentStmt.setString(col++, student.getEmergContactEmail());
+				addStudentStmt.setString(col++, student.getAccountMgrEmails());
+				addStudentStmt.setString(col++, student.getPhone1());
+				addStudentStmt.setString(col++, student.getAccountMgrPhones());
+				addStudentStmt.setString(col++, student.getPhone2());
+				addStudentStmt.setString(col++, student.getEmergContactPhone());
+				addStudentStmt.setString(col++, student.getBirthDate());
+				addStudentStmt.setString(col++, student.getStaffSinceDate());
+				addStudentStmt.setInt(col++, student.getStaffPastEvents());
+				addStudentStmt.setString(col++, student.getCurrLevel());
+
+				addStudentStmt.executeUpdate();
+
+				if (student.getGithubName() == null)
+					System.out.println("Added new student: " + student.getFirstName() + " " + student.getLastName());
+//					AsyncLogSink.insertLogData(LogDataModel.ADD_NEW_STUDENT_NO_GITHUB,
+//							new StudentNameModel(student.getFirstName(), student.getLastName(), true),
+//							student.getClientID(), "");
+				else
+					System.out.println("Added new student (no Github): " + student.getFirstName() + " " + student.getLastName());
+//					AsyncLogSink.insertLogData(LogDataModel.ADD_NEW_STUDENT,
+//							new StudentNameModel(student.getFirstName(), student.getLastName(), true),
+//							student.getClientID(), "");
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("insertStudent: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				StudentNameModel studentModel = new StudentNameModel(student.getFirstName(), student.getLastName(),
+						student.getIsInMasterDb() == 1 ? true : false);
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, studentModel, 0, ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void updateStudent(StudentImportModel importStudent, List<String> changedColumns, boolean newStudent) {
+		// Flags are always reset; data columns only when they have changed
+		String updateFields = "NewGithub=?, NewStudent=?";
+		for (String column : changedColumns)
+			updateFields += ", " + column + "=?";
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students SET " + updateFields + " WHERE ClientID=?;");
+
+				int col = 1;
+				updateStudentStmt.setInt(col++, 0);
+				updateStudentStmt.setInt(col++, newStudent ? 1 : 0);
+				for (String column : changedColumns)
+					setStudentColumn(updateStudentStmt, col++, column, importStudent);
+				updateStudentStmt.setInt(col, importStudent.getClientID());
+
+				updateStudentStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateStudent: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				StudentNameModel studentModel = new StudentNameModel(importStudent.getFirstName(),
+						importStudent.getLastName(), true);
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, studentModel, 0, ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	private void setStudentColumn(PreparedStatement updateStudentStmt, int col, String column,
+			StudentImportModel importStudent) throws SQLException {
+		switch (column) {
+		case "LastName":
+			updateStudentStmt.setString(col, importStudent.getLastName());
+			break;
+		case "FirstName":
+			updateStudentStmt.setString(col, importStudent.getFirstName());
+			break;
+		case "GithubName":
+			if (importStudent.getGithubName().equals(""))
+				updateStudentStmt.setString(col, null);
+			else
+				updateStudentStmt.setString(col, importStudent.getGithubName());
+			break;
+		case "Gender":
+			updateStudentStmt.setInt(col, importStudent.getGender());
+			break;
+		case "StartDate":
+			if (importStudent.getStartDate() != null && !importStudent.getStartDate().equals(""))
+				updateStudentStmt.setDate(col, java.sql.Date.valueOf(importStudent.getStartDate()));
+			else
+				updateStudentStmt.setDate(col, null);
+			break;
+		case "Location":
+			updateStudentStmt.setInt(col, importStudent.getHomeLocation());
+			break;
+		case "GradYear":
+			updateStudentStmt.setInt(col, importStudent.getGradYear());
+			break;
+		case "isInMasterDb":
+			updateStudentStmt.setInt(col, 1);
+			break;
+		case "Email":
+			updateStudentStmt.setString(col, importStudent.getEmail());
+			break;
+		case "EmergencyEmail":
+			updateStudentStmt.setString(col, importStudent.getEmergContactEmail());
+			break;
+		case "AcctMgrEmail":
+			updateStudentStmt.setString(col, importStudent.getAccountMgrEmails());
+			break;
+		case "Phone":
+			updateStudentStmt.setString(col, importStudent.getPhone1());
+			break;
+		case "AcctMgrPhone":
+			updateStudentStmt.setString(col, importStudent.getAccountMgrPhones());
+			break;
+		case "HomePhone":
+			updateStudentStmt.setString(col, importStudent.getPhone2());
+			break;
+		case "EmergencyPhone":
+			updateStudentStmt.setString(col, importStudent.getEmergContactPhone());
+			break;
+		case "Birthdate":
+			updateStudentStmt.setString(col, importStudent.getBirthDate());
+			break;
+		case "TASinceDate":
+			updateStudentStmt.setString(col, importStudent.getStaffSinceDate());
+			break;
+		case "TAPastEvents":
+			updateStudentStmt.setInt(col, importStudent.getStaffPastEvents());
+			break;
+		case "CurrentLevel":
+			updateStudentStmt.setString(col, importStudent.getCurrLevel());
+			break;
+		case "LastScore":
+			updateStudentStmt.setString(col, importStudent.getLastExamScore());
+			break;
+		default:
+			throw new SQLException("Unknown Students column " + column);
+		}
+	}
+
+	public void updateIsInMasterDb(StudentImportModel student, int isInMasterDb) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students SET isInMasterDb=? WHERE ClientID=?;");
+
+				updateStudentStmt.setInt(1, isInMasterDb);
+				updateStudentStmt.setInt(2, student.getClientID());
+
+				updateStudentStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateIsInMasterDb: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				StudentNameModel model = new StudentNameModel(student.getFirstName(), student.getLastName(),
+						(isInMasterDb == 1) ? true : false);
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, model, student.getClientID(),
+						": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void updateLastEventInfoByStudent(int clientID, String eventName, String lastVisitDate, String module) {
+		boolean addModule = false;
+		String separator = "";
+		String updateFields = "";
+
+		if (eventName != null) {
+			updateFields = "CurrentClass=? ";
+			separator = ", ";
+		}
+		if (module != null) {
+			if (module.equals("NULL"))
+				// Module cleared due to new class level
+				updateFields += separator + "CurrentModule=NULL ";
+			else {
+				updateFields += separator + "CurrentModule=? ";
+				addModule = true;
+			}
+		}
+		if (lastVisitDate != null)
+			updateFields += separator + "LastVisitDate=? ";
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateStudentStmt = stmtCache
+						.prepare("UPDATE Students SET " + updateFields + "WHERE ClientID=?;");
+
+				int col = 1;
+				if (eventName != null)
+					updateStudentStmt.setString(col++, eventName);
+				if (addModule)
+					updateStudentStmt.setString(col++, module);
+				if (lastVisitDate != null)
+					updateStudentStmt.setDate(col++, java.sql.Date.valueOf(lastVisitDate));
+				updateStudentStmt.setInt(col, clientID);
+
+				updateStudentStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateLastEventInfoByStudent: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
+						clientID, ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	/*
+	 * ------- Attendance -------
+	 */
+	public ArrayList<AttendanceEventModel> getAllEvents(String startDate) {
+		ArrayList<AttendanceEventModel> eventList = new ArrayList<AttendanceEventModel>();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// Get attendance data from the DB for all students
+				PreparedStatement selectStmt = stmtCache.prepare(
+						"SELECT * FROM Attendance, Students WHERE Attendance.ClientID = Students.ClientID "
+								+ "AND (State = 'completed' OR State = 'registered') AND ServiceDate >= ? "
+								+ "ORDER BY Attendance.ClientID ASC, ServiceDate DESC, VisitID ASC;");
+				selectStmt.setString(1, startDate);
+				ResultSet result = selectStmt.executeQuery();
+
+				while (result.next()) {
+					eventList
+							.add(new AttendanceEventModel(result.getInt("ClientID"), result.getInt("VisitID"),
+									result.getDate("ServiceDate"), result.getString("ServiceTime"),
+									result.getString("EventName"), result.getString("GithubName"),
+									result.getString("RepoName"), result.getString("Comments"), result.getString("GitDescription"),
+									new StudentNameModel(result.getString("FirstName"), result.getString("LastName"),
+											true),
+									result.getString("ServiceCategory"), result.getString("State"),
+									result.getString("LastSFState"), result.getString("TeacherNames"),
+									result.getString("ClassLevel")));
+				}
+
+				result.close();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("getAllEvents: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
+		}
+		return eventList;
+	}
+
+	public boolean[] writeAttendance(ArrayList<AttendanceWriteModel> writes) {
+		boolean[] written = new boolean[writes.size()];
+
+		// Each statement variant (insert/update, with/without level) is sent as its own batch
+		for (int sqlIdx = 0; sqlIdx < ATTEND_WRITE_SQL.length; sqlIdx++) {
+			ArrayList<Integer> batch = new ArrayList<Integer>();
+			for (int j = 0; j < writes.size(); j++) {
+				if (getSqlIndex(writes.get(j)) == sqlIdx)
+					batch.add(j);
+			}
+			if (batch.size() > 0)
+				executeAttendanceBatch(ATTEND_WRITE_SQL[sqlIdx], writes, batch, written);
+		}
+		return written;
+	}
+
+	private void executeAttendanceBatch(String sql, ArrayList<AttendanceWriteModel> writes, ArrayList<Integer> batch,
+			boolean[] written) {
+		int[] updateCounts = null;
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				enableBatchRewrite();
+				PreparedStatement batchStmt = stmtCache.prepare(sql);
+				for (int writeIdx : batch) {
+					setAttendanceWriteFields(batchStmt, writes.get(writeIdx));
+					batchStmt.addBatch();
+				}
+
+				updateCounts = batchStmt.executeBatch();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("executeAttendanceBatch: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (BatchUpdateException e2) {
+				// Some rows failed (such as duplicate key); counts show which ones
+				updateCounts = e2.getUpdateCounts();
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				// Fall through to writing rows one at a time, which logs errors per student
+				break;
+			}
+		}
+
+		for (int j = 0; j < batch.size(); j++) {
+			int writeIdx = batch.get(j);
+			AttendanceWriteModel write = writes.get(writeIdx);
+			if (updateCounts != null && j < updateCounts.length && updateCounts[j] != Statement.EXECUTE_FAILED)
+				written[writeIdx] = true;
+			else if (write.isInsert())
+				written[writeIdx] = addAttendanceRow(write);
+			else
+				written[writeIdx] = updateAttendanceRow(write);
+		}
+	}
+
+	private void enableBatchRewrite() throws SQLException {
+		// Let the driver send each batch as multi-row statements instead of one round trip per row.
+		// Connection is re-created on reconnect, so check each time.
+		com.mysql.jdbc.Connection conn = sqlDb.dbConnection.unwrap(com.mysql.jdbc.Connection.class);
+		if (!conn.getRewriteBatchedStatements())
+			conn.setRewriteBatchedStatements(true);
+	}
+
+	private int getSqlIndex(AttendanceWriteModel write) {
+		// Index into ATTEND_WRITE_SQL
+		return (write.isInsert() ? 0 : 2) + (write.isAddLevel() ? 1 : 0);
+	}
+
+	private void setAttendanceWriteFields(PreparedStatement stmt, AttendanceWriteModel write) throws SQLException {
+		AttendanceEventModel importEvent = write.getImportEvent();
+		int col = 1;
+
+		if (write.isInsert()) {
+			stmt.setInt(col++, importEvent.getClientID());
+			stmt.setDate(col++, java.sql.Date.valueOf(importEvent.getServiceDateString()));
+			stmt.setString(col++, importEvent.getServiceTime());
+			stmt.setString(col++, importEvent.getEventName().trim());
+			stmt.setInt(col++, importEvent.getVisitID());
+			stmt.setString(col++, write.getTeacherNames());
+			stmt.setString(col++, importEvent.getServiceCategory());
+			stmt.setString(col++, importEvent.getState());
+			if (write.isAddLevel())
+				stmt.setString(col, write.getClassLevel());
+
+		} else {
+			// The only fields that should be updated are the State & Teacher fields
+			stmt.setString(col++, importEvent.getState());
+			stmt.setString(col++, write.getTeacherNames());
+			stmt.setString(col++, importEvent.getServiceTime());
+			if (write.isAddLevel())
+				stmt.setString(col++, write.getClassLevel());
+			stmt.setString(col++, importEvent.getEventName().trim());
+			stmt.setInt(col++, importEvent.getClientID());
+			stmt.setInt(col++, importEvent.getVisitID());
+			stmt.setDate(col++, java.sql.Date.valueOf(importEvent.getServiceDateString()));
+			stmt.setString(col++, importEvent.getServiceTime());
+		}
+	}
+
+	private boolean addAttendanceRow(AttendanceWriteModel write) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement addAttendanceStmt = stmtCache.prepare(ATTEND_WRITE_SQL[getSqlIndex(write)]);
+				setAttendanceWriteFields(addAttendanceStmt, write);
+
+				addAttendanceStmt.executeUpdate();
+				return true;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("addAttendance: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLIntegrityConstraintViolationException e2) {
+				// Attendance data already exists, do nothing
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				e3.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, write.getStudent().getNameModel(),
+						write.getImportEvent().getClientID(), ": " + e3.getMessage());
+				break;
+			}
+		}
+		return false;
+	}
+
+	private boolean updateAttendanceRow(AttendanceWriteModel write) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateAttendanceStmt = stmtCache.prepare(ATTEND_WRITE_SQL[getSqlIndex(write)]);
+				setAttendanceWriteFields(updateAttendanceStmt, write);
+
+				updateAttendanceStmt.executeUpdate();
+				return true;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateAttendanceState: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e) {
+				e.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, write.getStudent().getNameModel(),
+						write.getImportEvent().getClientID(), ": " + e.getMessage());
+				break;
+			}
+		}
+		return false;
+	}
+
+	public void deleteFromAttendance(int clientID, int visitID, StudentNameModel studentModel) {
+		PreparedStatement deleteAttendanceStmt;
+		for (int i = 0; i < 2; i++) {
+			try {
+				deleteAttendanceStmt = stmtCache
+						.prepare("DELETE FROM Attendance WHERE ClientID=? AND VisitID=?;");
+
+				deleteAttendanceStmt.setInt(1, clientID);
+				deleteAttendanceStmt.setInt(2, visitID);
+
+				deleteAttendanceStmt.executeUpdate();
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("deleteFromAttendance: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e) {
+				e.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, studentModel, clientID,
+						" removing registered attendance record: " + e.getMessage());
+				break;
+			}
+		}
+	}
+
+	public IntKeyMap<String[]> getFirstServiceDates() {
+		IntKeyMap<String[]> startDates = new IntKeyMap<String[]>();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				// A completed event counts for a level if it is a level event ("3@...") or was
+				// attended at that class level; take the earliest per client and level.
+				PreparedStatement selectStmt = stmtCache.prepare("SELECT ClientID, Level, MIN(ServiceDate) AS StartDate FROM ("
+						+ "SELECT ClientID, LEFT(EventName, 1) AS Level, ServiceDate FROM Attendance "
+						+ "WHERE State = 'completed' AND SUBSTRING(EventName, 2, 1) = '@' "
+						+ "UNION ALL SELECT ClientID, ClassLevel AS Level, ServiceDate FROM Attendance "
+						+ "WHERE State = 'completed' AND ClassLevel IS NOT NULL) AS LevelDates "
+						+ "WHERE Level IN ('0', '1', '2', '3', '4', '5', '6', '7', '8') GROUP BY ClientID, Level;");
+				ResultSet result = selectStmt.executeQuery();
+
+				while (result.next()) {
+					int clientID = result.getInt("ClientID");
+					String[] clientDates = startDates.get(clientID);
+					if (clientDates == null) {
+						clientDates = new String[NUM_START_DATE_LEVELS];
+						startDates.put(clientID, clientDates);
+					}
+					clientDates[result.getString("Level").charAt(0) - '0'] = result.getDate("StartDate").toString();
+				}
+
+				result.close();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("getFirstServiceDates: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.ATTENDANCE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e2.getMessage());
+				break;
+			}
+		}
+		return startDates;
+	}
+
+	/*
+	 * ------- Graduation -------
+	 */
+	public void addGraduationRecord(GraduationModel gradModel) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// Insert graduation record into database
+				String cmdString = "INSERT INTO Graduation (ClientID, GradLevel, SkipLevel, Promoted, EndDate, CurrentClass";
+				String values = ") VALUES (?, ?, ?, ?, ?, ?";
+
+				// Don't update dates or score if no data
+				if (!gradModel.getStartDate().equals("")) {
+					cmdString += ", StartDate";
+					values += ", ?";
+				}
+				if (!gradModel.getScore().equals("")) {
+					cmdString += ", Score";
+					values += ", ?";
+				}
+
+				// Now add graduation info to database
+				PreparedStatement addGrad = stmtCache.prepare(cmdString + values + ");");
+
+				// Fill in the input fields
+				int col = 1;
+				addGrad.setInt(col++, gradModel.getClientID());
+				addGrad.setInt(col++, gradModel.getGradLevel());
+				addGrad.setBoolean(col++, gradModel.isSkipLevel());
+				addGrad.setBoolean(col++, gradModel.isPromoted());
+				addGrad.setDate(col++, java.sql.Date.valueOf(gradModel.getEndDate()));
+				addGrad.setString(col++, gradModel.getCurrentClass());
+				if (!gradModel.getStartDate().equals(""))
+					addGrad.setDate(col++, java.sql.Date.valueOf(gradModel.getStartDate()));
+				if (!gradModel.getScore().equals(""))
+					addGrad.setString(col++, gradModel.getScore());
+
+				// Execute update
+				addGrad.executeUpdate();
+				break;
+
+			} catch (MySQLIntegrityConstraintViolationException e0) {
+				// Record already exists in database, so update instead
+				updateGraduationRecord(gradModel);
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("addGraduationRecord: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
+						gradModel.getClientID(), " for Graduation: " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	private void updateGraduationRecord(GraduationModel gradModel) {
+		// Graduation records are uniquely identified by clientID & level pair.
+		// Update EndDate/Score/SkipLevel/Promoted. Set 'in SF' false to force update.
+		for (int i = 0; i < 2; i++) {
+			try {
+				// Update graduation record in database
+				String cmdString = "UPDATE Graduation SET EndDate=?, " + MySqlDatabase.GRAD_MODEL_IN_SF_FIELD + "=0";
+
+				// Only update fields if valid
+				if (!gradModel.getScore().equals(""))
+					cmdString += ", Score=?";
+				if (gradModel.isSkipLevel())
+					cmdString += ", SkipLevel=?";
+				if (gradModel.isPromoted())
+					cmdString += ", Promoted=?";
+
+				// Update database
+				PreparedStatement updateGraduateStmt = stmtCache
+						.prepare(cmdString + " WHERE ClientID=? AND GradLevel=?;");
+
+				// Fill in the input fields
+				int col = 1;
+				updateGraduateStmt.setDate(col++, java.sql.Date.valueOf(gradModel.getEndDate()));
+				if (!gradModel.getScore().equals(""))
+					updateGraduateStmt.setString(col++, gradModel.getScore());
+				if (gradModel.isSkipLevel())
+					updateGraduateStmt.setBoolean(col++, true);
+				if (gradModel.isPromoted())
+					updateGraduateStmt.setBoolean(col++, true);
+				updateGraduateStmt.setInt(col++, gradModel.getClientID());
+				updateGraduateStmt.setInt(col++, gradModel.getGradLevel());
+
+				// Execute update
+				updateGraduateStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateGraduationRecord: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.STUDENT_DB_ERROR, new StudentNameModel("", "", false),
+						gradModel.getClientID(), " for Graduation: " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	/*
+	 * ------- Class schedule & courses -------
+	 */
+	public ArrayList<ScheduleModel> getClassSchedule() {
+		return sqlDb.getClassSchedule();
+	}
+
+	public void removeClassFromSchedule(ScheduleModel model) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement deleteClassStmt = stmtCache
+						.prepare("DELETE FROM Schedule WHERE ScheduleID=?;");
+
+				// Delete class from schedule
+				deleteClassStmt.setInt(1, model.getScheduleID());
+				deleteClassStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("removeClassFromSchedule: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, null, 0, ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void addClassToSchedule(ScheduleModel importEvent) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement addScheduleStmt = stmtCache.prepare(
+						"INSERT INTO Schedule (DayOfWeek, StartTime, Duration, ClassName, NumStudents, "
+								+ "Youngest, Oldest, AverageAge, ModuleCount) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?);");
+
+				int col = 1;
+				String className = importEvent.getClassName();
+
+				addScheduleStmt.setInt(col++, importEvent.getDayOfWeek());
+				addScheduleStmt.setString(col++, importEvent.getStartTime());
+				addScheduleStmt.setInt(col++, importEvent.getDuration());
+				if (className.length() >= CLASS_NAME_WIDTH)
+					className = className.substring(0, CLASS_NAME_WIDTH);
+				addScheduleStmt.setString(col++, className);
+				addScheduleStmt.setInt(col++, importEvent.getAttCount());
+				addScheduleStmt.setString(col++, importEvent.getYoungest());
+				addScheduleStmt.setString(col++, importEvent.getOldest());
+				addScheduleStmt.setString(col++, importEvent.getAverageAge());
+				addScheduleStmt.setString(col++, importEvent.getModuleCount());
+
+				addScheduleStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("addClassToSchedule: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLIntegrityConstraintViolationException e2) {
+				// Schedule data already exists, do nothing
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				e3.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e3.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void updateClassInSchedule(ScheduleModel dbEvent, ScheduleModel pike13Event) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateScheduleStmt = stmtCache.prepare(
+						"UPDATE Schedule SET NumStudents=?, Youngest=?, Oldest=?, AverageAge=?, ModuleCount=?, "
+								+ "Room=?, RoomMismatch=? WHERE ScheduleID=?;");
+
+				int col = 1;
+				updateScheduleStmt.setInt(col++, pike13Event.getAttCount());
+				updateScheduleStmt.setString(col++, pike13Event.getYoungest());
+				updateScheduleStmt.setString(col++, pike13Event.getOldest());
+				updateScheduleStmt.setString(col++, pike13Event.getAverageAge());
+				updateScheduleStmt.setString(col++, pike13Event.getModuleCount());
+				updateScheduleStmt.setString(col++, pike13Event.getRoom());
+				updateScheduleStmt.setBoolean(col++, pike13Event.getRoomMismatch());
+				updateScheduleStmt.setInt(col, dbEvent.getScheduleID());
+
+				updateScheduleStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateClassInSchedule: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e3) {
+				e3.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.SCHEDULE_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e3.getMessage());
+				break;
+			}
+		}
+	}
+
+	public ArrayList<CoursesModel> getCourseSchedule() {
+		return sqlDb.getCourseSchedule("CourseID");
+	}
+
+	public void addCourseToSchedule(CoursesModel courseEvent) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement addCourseStmt = stmtCache
+						.prepare("INSERT INTO Courses (CourseID, EventName, Enrolled) " + "VALUES (?, ?, ?);");
+
+				int col = 1;
+				addCourseStmt.setInt(col++, courseEvent.getScheduleID());
+				addCourseStmt.setString(col++, courseEvent.getEventName().trim());
+				addCourseStmt.setInt(col, courseEvent.getEnrollment());
+
+				addCourseStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("addCourseToSchedule: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLIntegrityConstraintViolationException e2) {
+				// Schedule data already exists, do nothing
+				break;
+
+			} catch (SQLException | NullPointerException e3) {
+				e3.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.COURSES_DB_ERROR, new StudentNameModel("", "", false), 0,
+						": " + e3.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void updateCourse(CoursesModel course) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement updateCourseStmt = stmtCache
+						.prepare("UPDATE Courses SET EventName=?, Enrolled=? WHERE CourseID=?;");
+
+				int col = 1;
+				updateCourseStmt.setString(col++, course.getEventName().trim());
+				updateCourseStmt.setInt(col++, course.getEnrollment());
+				updateCourseStmt.setInt(col, course.getScheduleID());
+
+				updateCourseStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("updateCourse: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				StudentNameModel studentModel = new StudentNameModel("", "", true);
+				AsyncLogSink.insertLogData(LogDataModel.COURSES_DB_ERROR, studentModel, 0,
+						" for " + course.getEventName().trim() + ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+
+	public void removeCourseFromSchedule(CoursesModel course) {
+		for (int i = 0; i < 2; i++) {
+			try {
+				// If Database no longer connected, the exception code will re-connect
+				PreparedStatement deleteClassStmt = stmtCache
+						.prepare("DELETE FROM Courses WHERE CourseID=?;");
+
+				// Delete class from schedule
+				deleteClassStmt.setInt(1, course.getScheduleID());
+				deleteClassStmt.executeUpdate();
+				break;
+
+			} catch (CommunicationsException | MySQLNonTransientConnectionException e1) {
+				if (i == 0) {
+					// First attempt to re-connect
+					System.out.println("removeCourseFromSchedule: " + e1.getMessage() + ", " + e1);
+					reconnectDatabase();
+				}
+
+			} catch (SQLException | NullPointerException e2) {
+				e2.printStackTrace();
+				AsyncLogSink.insertLogData(LogDataModel.COURSES_DB_ERROR, null, 0, ": " + e2.getMessage());
+				break;
+			}
+		}
+	}
+}
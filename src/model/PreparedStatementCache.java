@@ -0,0 +1,134 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PreparedStatementCache: Keeps prepared statements open for the life of the
+ * database connection, keyed by SQL text, so that per-row queries are only
+ * prepared once per run. Statements that cannot be cached are prepared through
+ * prepareUncached(), so that every statement is timed the same way.
+ * Statements are not thread-safe, so each import thread
+ * keeps its own copy in a ThreadLocal, which goes away with the thread.
+ *
+ * A thread's statements are only ever closed by that thread: when the
+ * connection changes or the cache is invalidated, each thread drops its old
+ * statements the next time it prepares one. A reconnect on one thread never
+ * closes a statement that another thread is executing. Reconnects from all
+ * threads (including the log sink) go through reconnectDatabase().
+ *
+ * @author wavis
+ *
+ */
+public class PreparedStatementCache {
+	private MySqlDatabase sqlDb;
+	private AtomicInteger generation = new AtomicInteger(0);
+	private ThreadLocal<ThreadStatements> statements = new ThreadLocal<ThreadStatements>();
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+
+	public PreparedStatementCache(MySqlDatabase sqlDb) {
+		this.sqlDb = sqlDb;
+	}
+
+	public PreparedStatement prepare(String sql) throws SQLException {
+		// Statements belong to the connection (and cache generation) they were prepared on
+		Connection connection = sqlDb.dbConnection;
+		ThreadStatements threadStatements = statements.get();
+		if (threadStatements == null || threadStatements.connection != connection
+				|| threadStatements.generation != generation.get()) {
+			if (threadStatements != null)
+				threadStatements.close();
+			threadStatements = new ThreadStatements(connection, generation.get());
+			statements.set(threadStatements);
+		}
+
+		PreparedStatement stmt = threadStatements.statements.get(sql);
+		if (stmt != null && !stmt.isClosed()) {
+			// Clear anything left over from the last use
+			hits.incrementAndGet();
+			stmt.clearParameters();
+			stmt.clearBatch();
+			return stmt;
+		}
+
+		misses.incrementAndGet();
+		// Executes are timed by statement type for the run report
+		stmt = TimedStatement.wrap(connection.prepareStatement(sql), sql);
+		threadStatements.statements.put(sql, stmt);
+		return stmt;
+	}
+
+	public PreparedStatement prepareUncached(String sql) throws SQLException {
+		// For statements whose SQL changes each time (IN lists, DDL); the caller closes it
+		return TimedStatement.wrap(sqlDb.dbConnection.prepareStatement(sql), sql);
+	}
+
+	public PreparedStatement prepareUncached(String sql, int autoGeneratedKeys) throws SQLException {
+		return TimedStatement.wrap(sqlDb.dbConnection.prepareStatement(sql, autoGeneratedKeys), sql);
+	}
+
+	public synchronized boolean reconnectDatabase() {
+		// All reconnects go through here, one at a time. If another thread already
+		// replaced the connection this thread last used, that new connection is kept.
+		ThreadStatements threadStatements = statements.get();
+		if (threadStatements != null && threadStatements.connection != null
+				&& threadStatements.connection != sqlDb.dbConnection && sqlDb.dbConnection != null) {
+			closeThreadStatements();
+			return true;
+		}
+
+		// Cached statements died with the old connection
+		invalidate();
+		return sqlDb.connectDatabase();
+	}
+
+	public void invalidate() {
+		// Other threads re-prepare on next use; this thread's statements are closed now
+		generation.incrementAndGet();
+		closeThreadStatements();
+	}
+
+	private void closeThreadStatements() {
+		ThreadStatements threadStatements = statements.get();
+		if (threadStatements != null) {
+			threadStatements.close();
+			statements.remove();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private static class ThreadStatements {
+		private Connection connection;
+		private int generation;
+		private HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+		private ThreadStatements(Connection connection, int generation) {
+			this.connection = connection;
+			this.generation = generation;
+		}
+
+		private void close() {
+			for (PreparedStatement stmt : statements.values()) {
+				try {
+					stmt.close();
+
+				} catch (SQLException e) {
+					// Connection is already gone, nothing to clean up
+				}
+			}
+			statements.clear();
+		}
+	}
+}
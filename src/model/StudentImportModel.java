@@ -1,6 +1,10 @@
 package model;
 
 public class StudentImportModel implements Comparable<StudentImportModel> {
+	// 64-bit FNV-1a
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
 	private int     clientID;
 	private String  lastName, firstName, githubName, startDate, homeLocString, currLevel;
 	private int     homeLocation, gender, gradYear, isInMasterDb;
@@ -18,6 +22,8 @@ public class StudentImportModel implements Comparable<StudentImportModel> {
 	private int     completedVisits, futureVisits, staffPastEvents;
 	private boolean signedWaiver, stopEmail, financialAid;
 	private Object  sfContact;
+	private long    fingerprint;
+	private boolean fingerprintValid = false;
 	
 	public String   relationToStudent, phone1_type, phone2_type, prefContactMethod, primaryLanguage;
 	public String   prefContactLang, emergRelationToStud, prefClassLoc, studAddrIfDiff;
@@ -274,6 +280,7 @@ public class StudentImportModel implements Comparable<StudentImportModel> {
 
 	public void setCurrLevel(String level) {
 		currLevel = level;
+		fingerprintValid = false;
 	}
 	
 	public String getCurrClass() {
@@ -403,6 +410,7 @@ public class StudentImportModel implements Comparable<StudentImportModel> {
 		// Set data for students who are TA's
 		this.staffSinceDate = staffSinceDate;
 		this.staffPastEvents = staffPastEvents;
+		fingerprintValid = false;
 	}
 
 	public void setSfContact(Object sfContact) {
@@ -417,19 +425,11 @@ public class StudentImportModel implements Comparable<StudentImportModel> {
 		else if (clientID > other.getClientID())
 			return 1;
 
-		// Client ID matches
-		else if (lastName.equals(other.getLastName()) && firstName.equals(other.getFirstName())
-				&& githubName.equals(other.getGithubName()) && startDate.equals(other.getStartDate())
-				&& homeLocation == other.getHomeLocation() && gender == other.getGender()
-				&& gradYear == other.getGradYear() && isInMasterDb == other.getIsInMasterDb()
-				&& email.equals(other.getEmail()) && emergContactEmail.equals(other.getEmergContactEmail())
-				&& accountMgrEmails.equals(other.getAccountMgrEmails()) && phone1.equals(other.getPhone1())
-				&& accountMgrPhones.equals(other.getAccountMgrPhones()) && phone2.equals(other.getPhone2())
-				&& emergContactPhone.equals(other.getEmergContactPhone()) && birthDate.equals(other.getBirthDate())
-				&& staffSinceDate.equals(other.getStaffSinceDate()) && staffPastEvents == other.getStaffPastEvents()
-				&& currLevel.equals(other.currLevel) && lastExamScore.equals(other.lastExamScore)) {
+		// Client ID matches: compare the data by fingerprint only. Two different
+		// records share a 64-bit FNV-1a hash with odds of about 1 in 2^64 per
+		// compare, in which case the change is missed until the next edit.
+		else if (getFingerprint() == other.getFingerprint())
 			return 0;
-		}
 
 		else {
 			// Client ID matches but data does not
@@ -437,6 +437,56 @@ public class StudentImportModel implements Comparable<StudentImportModel> {
 		}
 	}
 
+	public long getFingerprint() {
+		// Hash of the fields compared by compareTo, computed when first needed
+		if (!fingerprintValid) {
+			long hash = FNV_OFFSET_BASIS;
+			hash = addToFingerprint(hash, lastName);
+			hash = addToFingerprint(hash, firstName);
+			hash = addToFingerprint(hash, githubName);
+			hash = addToFingerprint(hash, startDate);
+			hash = addToFingerprint(hash, homeLocation);
+			hash = addToFingerprint(hash, gender);
+			hash = addToFingerprint(hash, gradYear);
+			hash = addToFingerprint(hash, isInMasterDb);
+			hash = addToFingerprint(hash, email);
+			hash = addToFingerprint(hash, emergContactEmail);
+			hash = addToFingerprint(hash, accountMgrEmails);
+			hash = addToFingerprint(hash, phone1);
+			hash = addToFingerprint(hash, accountMgrPhones);
+			hash = addToFingerprint(hash, phone2);
+			hash = addToFingerprint(hash, emergContactPhone);
+			hash = addToFingerprint(hash, birthDate);
+			hash = addToFingerprint(hash, staffSinceDate);
+			hash = addToFingerprint(hash, staffPastEvents);
+			hash = addToFingerprint(hash, currLevel);
+			hash = addToFingerprint(hash, lastExamScore);
+
+			fingerprint = hash;
+			fingerprintValid = true;
+		}
+		return fingerprint;
+	}
+
+	private static long addToFingerprint(long hash, String field) {
+		// Each field is followed by a separator so that "ab","c" and "a","bc" differ
+		if (field != null) {
+			for (int i = 0; i < field.length(); i++) {
+				char c = field.charAt(i);
+				hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+				hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+			}
+			hash = (hash ^ 0xff) * FNV_PRIME;
+		}
+		return (hash ^ 0xfe) * FNV_PRIME;
+	}
+
+	private static long addToFingerprint(long hash, int field) {
+		for (int shift = 0; shift < 32; shift += 8)
+			hash = (hash ^ ((field >>> shift) & 0xff)) * FNV_PRIME;
+		return hash;
+	}
+
 	public String displayAll() {
 		return (clientID + ": " + firstName + " " + lastName + " (" + gender + "), github: " + githubName + ", home: "
 				+ homeLocString + ", start: " + startDate + ", grad: " + gradYear + ", " + isInMasterDb);
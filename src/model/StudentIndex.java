@@ -0,0 +1,73 @@
+package model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * StudentIndex: Read-only index over a student list, built once per run, for
+ * lookup by ClientID, by Github user name (lower case) and by full name. If
+ * the same key appears more than once, the first student in the list wins,
+ * same as the linear searches this replaces. The full name map is only built
+ * on the first lookup by full name.
+ *
+ * @author wavis
+ *
+ */
+public class StudentIndex<T> {
+	private final IntKeyMap<T> byClientID;
+	private final HashMap<String, T> byGithubName;
+	private final List<T> students;
+	private final Function<T, String> fullName;
+	private HashMap<String, T> byFullName = null;
+
+	private StudentIndex(List<T> students, ToIntFunction<T> clientID, Function<T, String> githubName,
+			Function<T, String> fullName) {
+		byClientID = new IntKeyMap<T>(students.size());
+		byGithubName = new HashMap<String, T>(students.size() * 2);
+		this.students = students;
+		this.fullName = fullName;
+
+		for (T s : students) {
+			byClientID.putIfAbsent(clientID.applyAsInt(s), s);
+
+			String gitName = githubName.apply(s);
+			if (gitName != null)
+				byGithubName.putIfAbsent(gitName.toLowerCase().trim(), s);
+		}
+	}
+
+	public static StudentIndex<StudentModel> ofStudents(List<StudentModel> students) {
+		return new StudentIndex<StudentModel>(students, StudentModel::getClientID, StudentModel::getGithubName,
+				s -> s.getFirstName() + " " + s.getLastName());
+	}
+
+	public static StudentIndex<StudentImportModel> ofImportStudents(List<StudentImportModel> students) {
+		return new StudentIndex<StudentImportModel>(students, StudentImportModel::getClientID,
+				StudentImportModel::getGithubName, StudentImportModel::getFullName);
+	}
+
+	public int size() {
+		return byClientID.size();
+	}
+
+	public T getByClientID(int clientID) {
+		return byClientID.get(clientID);
+	}
+
+	public T getByGithubName(String gitUser) {
+		if (gitUser == null)
+			return null;
+		return byGithubName.get(gitUser.toLowerCase().trim());
+	}
+
+	public synchronized T getByFullName(String name) {
+		if (byFullName == null) {
+			byFullName = new HashMap<String, T>(students.size() * 2);
+			for (T s : students)
+				byFullName.putIfAbsent(fullName.apply(s), s);
+		}
+		return byFullName.get(name);
+	}
+}
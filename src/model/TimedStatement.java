@@ -0,0 +1,89 @@
+package model;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TimedStatement: Wraps a prepared statement so that each execute is recorded
+ * in ImportMetrics by statement type ("db:UPDATE Attendance"), along with the
+ * number of rows inserted, updated or deleted. All other calls go straight to
+ * the wrapped statement, and its exceptions are passed through unchanged.
+ *
+ * @author wavis
+ *
+ */
+public class TimedStatement implements InvocationHandler {
+	private static final Pattern TABLE_NAME = Pattern.compile(
+			"^\\s*(?:SELECT\\b.*?\\bFROM|INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|UPDATE|DELETE\\s+FROM"
+					+ "|CREATE\\s+TABLE(?:\\s+IF\\s+NOT\\s+EXISTS)?|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|RENAME\\s+TABLE)"
+					+ "\\s+`?(\\w+)",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private PreparedStatement stmt;
+	private String timerName;
+	private String rowsName;
+
+	private TimedStatement(PreparedStatement stmt, String sql) {
+		this.stmt = stmt;
+
+		// Statement type is the SQL verb plus the first table
+		String verb = sql.trim().split("\\s+", 2)[0].toUpperCase();
+		Matcher matcher = TABLE_NAME.matcher(sql);
+		String table = matcher.find() ? matcher.group(1) : "";
+		this.timerName = "db:" + verb + " " + table;
+
+		if (verb.equals("INSERT") || verb.equals("REPLACE"))
+			rowsName = "rows.inserted:" + table;
+		else if (verb.equals("UPDATE"))
+			rowsName = "rows.updated:" + table;
+		else if (verb.equals("DELETE"))
+			rowsName = "rows.deleted:" + table;
+	}
+
+	public static PreparedStatement wrap(PreparedStatement stmt, String sql) {
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new TimedStatement(stmt, sql));
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		boolean isExecute = method.getName().startsWith("execute");
+		long startTime = isExecute ? System.nanoTime() : 0;
+
+		Object result;
+		try {
+			result = method.invoke(stmt, args);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		}
+
+		if (isExecute) {
+			ImportMetrics.addTime(timerName, startTime);
+			if (rowsName != null)
+				ImportMetrics.addCount(rowsName, getRowCount(result));
+		}
+		return result;
+	}
+
+	private long getRowCount(Object result) {
+		// executeUpdate returns a count, executeBatch one count per row
+		if (result instanceof Integer)
+			return Math.max(0, (Integer) result);
+		if (result instanceof int[]) {
+			long rows = 0;
+			for (int count : (int[]) result) {
+				if (count > 0)
+					rows += count;
+				else if (count == Statement.SUCCESS_NO_INFO)
+					rows++;
+			}
+			return rows;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,80 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TrackerStore: Reads and writes used by the Pike13 import merges (students,
+ * attendance, schedule and courses). MySqlDbImports keeps the merge logic and
+ * calls this interface for storage, so the same merges can run against the AWS
+ * database (MySqlTrackerStore) or locally (InMemoryTrackerStore).
+ *
+ * @author wavis
+ *
+ */
+public interface TrackerStore {
+	/*
+	 * ------- Students -------
+	 */
+	// All students, ordered by ClientID
+	public ArrayList<StudentImportModel> getAllStudentsAsImportData();
+
+	// Students in the master DB, ordered by first & last name
+	public ArrayList<StudentModel> getActiveStudents();
+
+	// 0 if there are no students
+	public int getMaxClientID();
+
+	public void insertStudent(StudentImportModel student);
+
+	// Writes only the named Students columns (as found by MySqlDbImports), plus the new flags
+	public void updateStudent(StudentImportModel student, List<String> changedColumns, boolean newStudent);
+
+	public void updateIsInMasterDb(StudentImportModel student, int isInMasterDb);
+
+	// Null fields are left unchanged; module "NULL" clears the current module
+	public void updateLastEventInfoByStudent(int clientID, String eventName, String lastVisitDate, String module);
+
+	/*
+	 * ------- Attendance -------
+	 */
+	// Completed & registered events since start date, for students in the DB
+	public ArrayList<AttendanceEventModel> getAllEvents(String startDate);
+
+	// Returns which writes were applied; existing rows are not re-inserted
+	public boolean[] writeAttendance(ArrayList<AttendanceWriteModel> writes);
+
+	public void deleteFromAttendance(int clientID, int visitID, StudentNameModel studentModel);
+
+	// Earliest completed service date per client for levels 0-8, indexed by level (null if none)
+	public static final int NUM_START_DATE_LEVELS = 9;
+
+	public IntKeyMap<String[]> getFirstServiceDates();
+
+	/*
+	 * ------- Graduation -------
+	 */
+	// Updates the existing record if student already graduated this level
+	public void addGraduationRecord(GraduationModel gradModel);
+
+	/*
+	 * ------- Class schedule & courses -------
+	 */
+	// Ordered to match ScheduleModel compareTo
+	public ArrayList<ScheduleModel> getClassSchedule();
+
+	public void addClassToSchedule(ScheduleModel importEvent);
+
+	public void updateClassInSchedule(ScheduleModel dbEvent, ScheduleModel pike13Event);
+
+	public void removeClassFromSchedule(ScheduleModel model);
+
+	// Ordered by CourseID
+	public ArrayList<CoursesModel> getCourseSchedule();
+
+	public void addCourseToSchedule(CoursesModel courseEvent);
+
+	public void updateCourse(CoursesModel course);
+
+	public void removeCourseFromSchedule(CoursesModel course);
+}